@@ -5,7 +5,8 @@
  *
  * How to make (port) a Cartridge subclass (from a Stella class)
  *      1. Constructor 
- *            Use the copyImage(...) on the passed int array to copy the ROM's image
+ *            Use the shareImage(...) on the passed byte array to get the (shared) ROM image, and keep it in myImage
+ *            The image may be shared with other cartridges, so patch(...) must call unshareImage() before changing it
  *            If the ROM has RAM, it can be randomized by randomizeRAM(...) call 
  *      2. Add a serialVersionUID - this simply has to be an original (random) number that you make up; used for serialization (i.e. saved games)
  *      2. Install and Bank methods
@@ -105,13 +106,29 @@ public abstract class Cartridge implements IfcDevice, java.io.Serializable {
      */
     public String getMD5() { return myMD5; }
     public void setMD5(String aMD5) { myMD5=aMD5; }
+    /**
+     * Returns the type that the cartridge was created as (see create(byte[], String)), e.g. "F8SC".
+     * @return the cartridge type, or null if it isn't known (e.g. a cartridge from an old saved game)
+     */
+    public String getType() { return myType; }
+    /**
+     * Returns the ROM image.  The array is shared (see ROMStore), and must not be changed.
+     * @return the ROM image
+     */
+    public byte[] getROMImage() { return myImage; }
     
     protected JSSystem mySystem=null;
     protected boolean myBankLocked=false;
     protected String myMD5="";
-    //protected int[] myImage=null;
+    protected String myType=null;
+    /**
+     * The ROM image.  This is usually shared with other cartridges running the same
+     * game (see ROMStore), so it must not be changed without calling unshareImage() first.
+     * It is written to saved games separately (see writeObject(...)).
+     */
+    protected transient byte[] myImage=null;
     
-    protected abstract int[] getImage();
+    protected abstract byte[] getImage();
     protected abstract void setCurrentBank(int bank);
     protected abstract int getCurrentBank();
     protected abstract int bankCount();
@@ -124,6 +141,60 @@ public abstract class Cartridge implements IfcDevice, java.io.Serializable {
     
     public void systemCyclesReset() {    }
     
+    /**
+     * Writes the cartridge's state : whether the bank is locked, and the current bank.
+     * Cartridges with more to them (RAM, extra chips) override this, adding their own state
+     * after calling this one.
+     * @param aOut where to write the state
+     * @throws java.io.IOException if the output throws one
+     */
+    public void saveState(DataOutput aOut) throws IOException {
+        aOut.writeBoolean(myBankLocked);
+        aOut.writeInt(getCurrentBank());
+    }
+    
+    /**
+     * Puts back the state written by saveState(...), switching to the saved bank (unless
+     * it is already the current bank, since remapping the pages is most of the cost of
+     * loading a state).
+     * @param aIn where to read the state from
+     * @throws java.io.IOException if the input throws one
+     */
+    public void loadState(DataInput aIn) throws IOException {
+        boolean zLocked=aIn.readBoolean();
+        int zBank=aIn.readInt();
+        myBankLocked=false;
+        if (zBank!=getCurrentBank()) setCurrentBank(zBank);
+        myBankLocked=zLocked;
+    }
+    
+    private void writeObject(ObjectOutputStream out) throws IOException
+    {
+        out.defaultWriteObject();
+        out.writeObject(myImage);  // saved games carry the image, so that they can be loaded by themselves
+    }
+    
+    private void readObject(ObjectInputStream in)  throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        myImage=(byte[])in.readObject();
+    }
+    
+    /**
+     * Called after the cartridge has been loaded from a saved game, to exchange the image
+     * that was read from the stream for the shared copy of the same image (if another
+     * cartridge is already using it).
+     */
+    public void shareLoadedImage() {
+        if (myImage==null) return;
+        byte[] zShared=ROMStore.share(myImage);
+        if (zShared!=myImage) {
+            byte[] zOld=myImage;
+            myImage=zShared;
+            imageReplaced();
+            if (mySystem!=null) mySystem.replaceDirectMemory(this, zOld, zShared);
+        }//end : image replaced
+    }
+    
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
  
@@ -191,8 +262,7 @@ public abstract class Cartridge implements IfcDevice, java.io.Serializable {
         Cartridge cartridge = null;
         
        
-        String zType=detectTypeByMD5(zMD5);
-        if (zType==null) zType= detectTypeByImage(image);
+        String zType=detectType(image, zMD5);
         
         
         java.lang.System.out.println("JStella - detected cartridge type: " + zType);
@@ -204,24 +274,46 @@ public abstract class Cartridge implements IfcDevice, java.io.Serializable {
     
     
     public static Cartridge create(byte[] image, String aType)  throws JSException {
+        Cartridge cartridge=instantiate(image, aType);
+         String zMD5 = calculateMD5(image); //Calculate the MD5 based on the byte array 
+        cartridge.setMD5(zMD5);
+        cartridge.myType=aType;
+        return cartridge;
+    }
+    
+    /**
+     * Makes another cartridge of the same type, sharing this one's ROM image (see ROMStore), for
+     * JSConsole.fork().  The new cartridge is in its power-on state; the console copies the
+     * rest (the bank, any RAM) once the cartridge is in.
+     * @return the new cartridge
+     * @throws jstella.core.JSException if the cartridge type isn't known and can't be detected
+     */
+    public Cartridge fork() throws JSException {
+        if (myType==null) return create(myImage); //e.g. from an old saved game...detect the type again
+        Cartridge zReturn=instantiate(myImage, myType);
+        zReturn.myMD5=myMD5;
+        zReturn.myType=myType;
+        return zReturn;
+    }
+    
+    private static Cartridge instantiate(byte[] image, String aType)  throws JSException {
         Cartridge cartridge=null;
         String zUCType=aType.toUpperCase();
-         int[] zIntImage=toIntArray(image); //create an int array from the byte array
-        if(zUCType.equals(TYPE_2K.toUpperCase())) cartridge = new Cartridge2K(zIntImage);
-        else if(zUCType.equals(TYPE_4K.toUpperCase())) cartridge = new Cartridge4K(zIntImage);
-        else if(zUCType.equals(TYPE_F8.toUpperCase())) cartridge = new CartridgeF8(zIntImage, false);
-        else if(zUCType.equals(TYPE_F8SWAPPED.toUpperCase())) cartridge = new CartridgeF8(zIntImage, true);
-        else if(zUCType.equals(TYPE_F8SC.toUpperCase())) cartridge = new CartridgeF8SC(zIntImage);
-        else if(zUCType.equals(TYPE_F6.toUpperCase())) cartridge = new CartridgeF6(zIntImage);
-        else if(zUCType.equals(TYPE_F6SC.toUpperCase())) cartridge = new CartridgeF6SC(zIntImage);      
-        else if(zUCType.equals(TYPE_F4SC.toUpperCase())) cartridge = new CartridgeF4SC(zIntImage);
-        else if(zUCType.equals(TYPE_FE.toUpperCase())) cartridge = new CartridgeFE(zIntImage);
-        else if(zUCType.equals(TYPE_DPC.toUpperCase())) cartridge = new CartridgeDPC(zIntImage);
-        else if(zUCType.equals(TYPE_E0.toUpperCase())) cartridge = new CartridgeE0(zIntImage);
-         else if(zUCType.equals(TYPE_E7.toUpperCase())) cartridge = new CartridgeE7(zIntImage);
-         else if(zUCType.equals(TYPE_3F.toUpperCase())) cartridge = new Cartridge3F(zIntImage);
-         else if(zUCType.equals(TYPE_F4.toUpperCase())) cartridge = new CartridgeF4(zIntImage);
-         else if(zUCType.equals(TYPE_FASC.toUpperCase()))  cartridge = new CartridgeFASC(zIntImage);
+        if(zUCType.equals(TYPE_2K.toUpperCase())) cartridge = new Cartridge2K(image);
+        else if(zUCType.equals(TYPE_4K.toUpperCase())) cartridge = new Cartridge4K(image);
+        else if(zUCType.equals(TYPE_F8.toUpperCase())) cartridge = new CartridgeF8(image, false);
+        else if(zUCType.equals(TYPE_F8SWAPPED.toUpperCase())) cartridge = new CartridgeF8(image, true);
+        else if(zUCType.equals(TYPE_F8SC.toUpperCase())) cartridge = new CartridgeF8SC(image);
+        else if(zUCType.equals(TYPE_F6.toUpperCase())) cartridge = new CartridgeF6(image);
+        else if(zUCType.equals(TYPE_F6SC.toUpperCase())) cartridge = new CartridgeF6SC(image);      
+        else if(zUCType.equals(TYPE_F4SC.toUpperCase())) cartridge = new CartridgeF4SC(image);
+        else if(zUCType.equals(TYPE_FE.toUpperCase())) cartridge = new CartridgeFE(image);
+        else if(zUCType.equals(TYPE_DPC.toUpperCase())) cartridge = new CartridgeDPC(image);
+        else if(zUCType.equals(TYPE_E0.toUpperCase())) cartridge = new CartridgeE0(image);
+         else if(zUCType.equals(TYPE_E7.toUpperCase())) cartridge = new CartridgeE7(image);
+         else if(zUCType.equals(TYPE_3F.toUpperCase())) cartridge = new Cartridge3F(image);
+         else if(zUCType.equals(TYPE_F4.toUpperCase())) cartridge = new CartridgeF4(image);
+         else if(zUCType.equals(TYPE_FASC.toUpperCase()))  cartridge = new CartridgeFASC(image);
       /*
   else if(zUCType.equals("3E")
     cartridge = new Cartridge3E(image, size);
@@ -258,42 +350,33 @@ public abstract class Cartridge implements IfcDevice, java.io.Serializable {
             String zMsg="JStella does not yet support Cartridge Type " + aType + ".";
             throw(new JSException(JSException.ExceptionType.CART_NOT_SUPPORTED, zMsg));
         }
-        //cartridge.createImage(zIntImage);
-         String zMD5 = calculateMD5(image); //Calculate the MD5 based on the byte array 
-        cartridge.setMD5(zMD5);
+        //cartridge.createImage(image);
         return cartridge;
     }
     
-    private static boolean arrayCompare(byte[] aArray, int aIndexA, int aIndexB, int aCompCount) {
-        boolean zReturn=true;
-        
-        for (int i=0; i<aCompCount; i++) {
-            if (aArray[aIndexA + i]!=aArray[aIndexB+i]) {
-                zReturn=false;
-                break;
-            }//end : not equal
-        }//end : for loop
+    
+    /**
+     * Works out what type of cartridge the given ROM is, the same way create(byte[]) does,
+     * but without creating it (e.g. for indexing a library of ROMs).
+     * @param aImage the ROM data
+     * @param aMD5 the ROM's MD5 (see calculateMD5(...)), or null to have it calculated
+     * @return the cartridge type
+     */
+    public static String detectType(byte[] aImage, String aMD5) {
+        String zReturn=detectTypeByMD5((aMD5!=null) ? aMD5 : calculateMD5(aImage));
+        if (zReturn==null) zReturn=detectTypeByImage(aImage);
         return zReturn;
     }
     
     /**
-     * Checks to see if an MD5 matches a previously compiled list of MD5s and cartridge
-     * types.  The list in this method only contains those that the autodetection method
-     * (detectTypeByImage) is incapable of identifying correctly.
+     * Checks to see if an MD5 is in the ROM type database (see ROMTypeDatabase), which only
+     * needs to contain the ROMs that the autodetection method (detectTypeByImage) is incapable
+     * of identifying correctly.
      * @param aMD5 MD5 to check
      * @return the cartridge type if there is a match; null if no match was found
      */
     private static String detectTypeByMD5(String aMD5) {
-        String zReturn=null;
-        aMD5=aMD5.toLowerCase().trim();
-        
-        if (aMD5.equals("bc24440b59092559a1ec26055fd1270e")) zReturn=TYPE_F8SWAPPED;
-        else if (aMD5.equals("75ee371ccfc4f43e7d9b8f24e1266b55")) zReturn=TYPE_F8SWAPPED;
-        else if (aMD5.equals("6dda84fb8e442ecf34241ac0d1d91d69")) zReturn=TYPE_F6SC;
-                       
-
-
-        return zReturn;
+        return ROMTypeDatabase.get(aMD5);
     }
     
     
@@ -308,34 +391,35 @@ public abstract class Cartridge implements IfcDevice, java.io.Serializable {
         // Guess type based on size
         String type ="";
         int size=image.length;
+        SignatureScanner.Evidence zEvidence=SignatureScanner.scan(image); //every signature, in one pass
         if((size % 8448) == 0) {
             type = "AR";
         } else if((size == 2048) ||
-                ((size == 4096) && (arrayCompare(image, 0, 2048, 2048)==true))) {
-            if(isProbablyCV(image, size))
+                ((size == 4096) && (zEvidence.isMirrored()==true))) {
+            if(zEvidence.isProbablyCV())
                 type = "CV";
             else
                 type = TYPE_2K;
         } else if(size == 4096) {
-            if(isProbablyCV(image, size))
+            if(zEvidence.isProbablyCV())
                 type = "CV";
             else
                 type = TYPE_4K;
         } else if(size == 8192)  // 8K
         {
-            if(isProbablySC(image, size))
+            if(zEvidence.isProbablySC())
                 type = TYPE_F8SC;
-            else if(arrayCompare(image, 0, 4096, 4096)==true)
+            else if(zEvidence.isMirrored()==true)
                 type = TYPE_4K;
-            else if(isProbablyE0(image, size))
+            else if(zEvidence.isProbablyE0())
                 type = TYPE_E0;
-            else if(isProbably3E(image, size))
+            else if(zEvidence.isProbably3E())
                 type = "3E";
-            else if(isProbably3F(image, size))
+            else if(zEvidence.isProbably3F())
                 type = TYPE_3F;
-            else if(isProbablyUA(image, size))
+            else if(zEvidence.isProbablyUA())
                 type = "UA";
-            else if(isProbablyFE(image, size))
+            else if(zEvidence.isProbablyFE())
                 type = TYPE_FE;
             else
                 type = TYPE_F8;
@@ -351,49 +435,49 @@ public abstract class Cartridge implements IfcDevice, java.io.Serializable {
             type = "FASC";
         } else if(size == 16384)  // 16K
         {
-            if(isProbablySC(image, size))
+            if(zEvidence.isProbablySC())
                 type = TYPE_F6SC;
-            else if(isProbablyE7(image, size))
+            else if(zEvidence.isProbablyE7())
                 type = TYPE_E7;
-            else if(isProbably3E(image, size))
+            else if(zEvidence.isProbably3E())
                 type = "3E";
-            else if(isProbably3F(image, size))
+            else if(zEvidence.isProbably3F())
                 type = TYPE_3F;
             else
                 type = TYPE_F6;
         } else if(size == 32768)  // 32K
         {
-            if(isProbablySC(image, size))
+            if(zEvidence.isProbablySC())
                 type = TYPE_F4SC;
-            else if(isProbably3E(image, size))
+            else if(zEvidence.isProbably3E())
                 type = "3E";
-            else if(isProbably3F(image, size))
+            else if(zEvidence.isProbably3F())
                 type = TYPE_3F;
             else
                 type = "F4";
         } else if(size == 65536)  // 64K
         {
             // TODO - autodetect 4A50
-            if(isProbably3E(image, size))
+            if(zEvidence.isProbably3E())
                 type = "3E";
-            else if(isProbably3F(image, size))
+            else if(zEvidence.isProbably3F())
                 type = TYPE_3F;
             else
                 type = "MB";
         } else if(size == 131072)  // 128K
         {
             // TODO - autodetect 4A50
-            if(isProbably3E(image, size))
+            if(zEvidence.isProbably3E())
                 type = "3E";
-            else if(isProbably3F(image, size))
+            else if(zEvidence.isProbably3F())
                 type = TYPE_3F;
             else
                 type = "MC";
         } else  // what else can we do?
         {
-            if(isProbably3E(image, size))
+            if(zEvidence.isProbably3E())
                 type = "3E";
-            else if(isProbably3F(image, size))
+            else if(zEvidence.isProbably3F())
                 type = TYPE_3F;
             else
                 type = TYPE_4K;  // Most common bankswitching type
@@ -402,189 +486,54 @@ public abstract class Cartridge implements IfcDevice, java.io.Serializable {
         return type;
     }
     
-// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    static boolean searchForBytes(byte[] image, byte[] signature,  int sigsize, int minhits) {
-        int count = 0;
-        int imagesize=image.length;
-        for(int i = 0; i < imagesize - sigsize; /*++i*/ i++) {
-             int matches = 0;
-            for(int j = 0; j < sigsize; /*++j*/j++) {
-                if(image[i+j] == signature[j])
-                    ++matches;
-                else
-                    break;
-            }
-            if(matches == sigsize) {
-                ++count;
-                i += sigsize;  // skip past this signature 'window' entirely
-            }
-            if(count >= minhits)
-                break;
-        }
-        
-        return (count >= minhits);
-    }
-    
-    
-    
-    
-    
-// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    static boolean isProbablySC(byte[] image, int size) {
-        // We assume a Superchip cart contains the same bytes for its entire
-        // RAM area; obviously this test will fail if it doesn't
-        // The RAM area will be the first 256 bytes of each 4K bank
-        int banks = (int)((double)size / 4096);
-        for(int i = 0; i < banks; ++i) {
-            byte first = image[i*4096];
-            for(int j = 0; j < 256; ++j) {
-                if(image[(i*4096)+j] != first)
-                    return false;
-            }
-        }
-        return true;
-    }
-    
-// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    static boolean isProbably3F(byte[] image, int size) {
-        // 3F cart bankswitching is triggered by storing the bank number
-        // in address 3F using 'STA $3F'
-        // We expect it will be present at least 2 times, since there are
-        // at least two banks
-        int[] intsignature= { 0x85, 0x3F };  // STA $3F
-        byte[] signature=toDataUByte(intsignature);
-        return searchForBytes(image, signature, 2, 2);
-    }
-    
-// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    static boolean isProbably3E(byte[] image, int size) {
-        // 3E cart bankswitching is triggered by storing the bank number
-        // in address 3E using 'STA $3E', commonly followed by an
-        // immediate mode LDA
-        int[] intsignature = { 0x85, 0x3E, 0xA9, 0x00 };  // STA $3E; LDA #$00
-        byte[] signature=toDataUByte(intsignature);
-        return searchForBytes(image, signature, 4, 1);
-    }
-    
-// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    static boolean isProbablyE0(byte[] image, int size) {
-        // E0 cart bankswitching is triggered by accessing addresses
-        // $FE0 to $FF9 using absolute non-indexed addressing
-        // To eliminate false positives (and speed up processing), we
-        // search for only certain known signatures
-        // Thanks to "stella@casperkitty.com" for this advice
-        // These signatures are attributed to the MESS project
-        int[][] intsignature = { /*[6][3]*/
-            { 0x8D, 0xE0, 0x1F },  // STA $1FE0
-            { 0x8D, 0xE0, 0x5F },  // STA $5FE0
-            { 0x8D, 0xE9, 0xFF },  // STA $FFE9
-            { 0xAD, 0xE9, 0xFF },  // LDA $FFE9
-            { 0xAD, 0xED, 0xFF },  // LDA $FFED
-            { 0xAD, 0xF3, 0xBF }   // LDA $BFF3
-        };
-        byte[][] signature=toDataUByte(intsignature);
-        for(int i = 0; i < 6; ++i) {
-            if(searchForBytes(image, signature[i], 3, 1))
-                return true;
-        }
-        return false;
-    }
-    
-// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    static boolean isProbablyE7(byte[] image, int size) {
-        // E7 carts map their second 1K block of RAM at addresses
-        // $800 to $8FF.  However, since this occurs in the upper 2K address
-        // space, and the last 2K in the cart always points to the last 2K of the
-        // ROM image, the RAM area should fall in addresses $3800 to $38FF
-        // Similar to the Superchip cart, we assume this RAM block contains
-        // the same bytes for its entire area
-        // Also, we want to distinguish between ROMs that have large blocks
-        // of the same amount of (probably unused) data by making sure that
-        // something differs in the previous 32 or next 32 bytes
-        byte first = image[0x3800];
-        for(int i = 0x3800; i < 0x3A00; ++i) {
-            if(first != image[i])
-                return false;
-        }
-        
-        // OK, now scan the surrounding 32 byte blocks
-        int count1 = 0, count2 = 0;
-        for(int i = 0x3800 - 32; i < 0x3800; ++i) {
-            if(first != image[i])
-                ++count1;
-        }
-        for(int i = 0x3A00; i < 0x3A00 + 32; ++i) {
-            if(first != image[i])
-                ++count2;
-        }
-        
-        return (count1 > 0 || count2 > 0);
-    }
+   // ============== Subclass convenience methods =====================
     
-// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    static boolean isProbablyUA(byte[] image, int size) {
-        // UA cart bankswitching switches to bank 1 by accessing address 0x240
-        // using 'STA $240'
-        int[] intsignature = { 0x8D, 0x40, 0x02 };  // STA $240
-        byte[] signature=toDataUByte(intsignature);
-        return searchForBytes(image, signature, 3, 1);
+    /**
+     * Copies a ROM image.  Images (and cartridge RAM) are kept as bytes, one per byte
+     * of emulated memory; remember to mask with 0xFF when reading them as ints.
+     */
+    protected static byte[] copyImage(byte[] aSourceImage)
+    {
+        return aSourceImage.clone();
     }
     
-// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    static boolean isProbablyCV(byte[] image, int size) {
-        // CV RAM access occurs at addresses $f3ff and $f400
-        // These signatures are attributed to the MESS project
-        int[][] intsignature /*[2][3]*/ = {
-            { 0x9D, 0xFF, 0xF3 },  // STA $F3FF
-            { 0x99, 0x00, 0xF4 }   // STA $F400
-        };
-        byte[][] signature=toDataUByte(intsignature);
-        if(searchForBytes(image, signature[0], 3, 1))
-            return true;
-        else
-            return searchForBytes(image, signature[1], 3, 1);
+    /**
+     * Returns the shared copy of a ROM image (see ROMStore).  Unlike copyImage(...), the
+     * array returned may be used by other cartridges too, so it must not be changed.
+     */
+    protected static byte[] shareImage(byte[] aSourceImage)
+    {
+        return ROMStore.share(aSourceImage);
     }
     
-// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    static boolean isProbablyFE(byte[] image, int size) {
-        // FE bankswitching is very weird, but always seems to include a
-        // 'JSR $xxxx'
-        // These signatures are attributed to the MESS project
-        int[][] intsignature/*[4][5]*/ = {
-            { 0x20, 0x00, 0xD0, 0xC6, 0xC5 },  // JSR $D000; DEC $C5
-            { 0x20, 0xC3, 0xF8, 0xA5, 0x82 },  // JSR $F8C3; LDA $82
-            { 0xD0, 0xFB, 0x20, 0x73, 0xFE },  // BNE $FB; JSR $FE73
-            { 0x20, 0x00, 0xF0, 0x84, 0xD6 }   // JSR $F000; STY $D6
-        };
-        byte[][] signature=toDataUByte(intsignature);
-        for(int i = 0; i < 4; ++i) {
-            if(searchForBytes(image, signature[i], 5, 1))
-                return true;
-        }
-        return false;
+    /**
+     * Makes sure that myImage is this cartridge's own copy, so that it can be changed
+     * (e.g. by patch(...)).  If it was shared, the copy replaces it wherever it is mapped.
+     */
+    protected final void unshareImage()
+    {
+        if ((myImage!=null)&&(ROMStore.isShared(myImage)==true)) {
+            byte[] zOld=myImage;
+            myImage=copyImage(zOld);
+            imageReplaced();
+            if (mySystem!=null) mySystem.replaceDirectMemory(this, zOld, myImage);
+        }//end : shared
     }
     
-    
-    
-    
-   // ============== Subclass convenience methods =====================
-    
-    protected static int[] copyImage(int[] aSourceImage)
+    /**
+     * Called when myImage is replaced by another array with the same contents.  Subclasses that
+     * keep page accesses (slices) pointing into the image should discard them here.
+     */
+    protected void imageReplaced()
     {
-        int[] zReturn=new int[aSourceImage.length];
-        for (int i=0; i<aSourceImage.length; i++)
-        {
-            zReturn[i]=aSourceImage[i];
-        }//end : for i loop
-        return zReturn;
     }
     
-    protected static void randomizeRAM(int[] aRAM)
+    protected static void randomizeRAM(byte[] aRAM)
     {
      java.util.Random zRandom=new java.util.Random();
         
         for(int i = 0; i < aRAM.length; i++) {
-            aRAM[i] = zRandom.nextInt() & 0xFF;
+            aRAM[i] = (byte)zRandom.nextInt();
         }//end : for i loop
     }
     
@@ -605,7 +554,7 @@ public abstract class Cartridge implements IfcDevice, java.io.Serializable {
      
     
     
-    protected final void addDirectPeekAccess(int aStartAddress, int aEndAddress, int[] aMemory, int aBaseAddressMask, int aBaseAddressOffset)
+    protected final void addDirectPeekAccess(int aStartAddress, int aEndAddress, byte[] aMemory, int aBaseAddressMask, int aBaseAddressOffset)
     {
         for(int zAddress = (aStartAddress & ~PAGE_MASK); zAddress < (aEndAddress & ~PAGE_MASK); zAddress += PAGE_SIZE)
         {
@@ -613,12 +562,38 @@ public abstract class Cartridge implements IfcDevice, java.io.Serializable {
         }    
     }
     
-    protected final void addDirectPeekAccess(int aStartAddress, int aEndAddress, int[] aMemory, int aBaseAddressMask)
+    protected final void addDirectPeekAccess(int aStartAddress, int aEndAddress, byte[] aMemory, int aBaseAddressMask)
      {
          addDirectPeekAccess(aStartAddress, aEndAddress, aMemory, aBaseAddressMask, 0);
      }
     
-    protected final void addDirectPokeAccess(int aStartAddress, int aEndAddress, int[] aMemory, int aBaseAddressMask, int aBaseAddressOffset)
+    /**
+     * The same as addDirectPeekAccess(...), except that the memory is marked as ROM, which lets the
+     * CPU cache what it decodes from it.  (If the ROM is changed, call invalidateDecodeCache().)
+     */
+    protected final void addReadOnlyAccess(int aStartAddress, int aEndAddress, byte[] aROM, int aBaseAddressMask, int aBaseAddressOffset)
+    {
+        for(int zAddress = (aStartAddress & ~PAGE_MASK); zAddress < (aEndAddress & ~PAGE_MASK); zAddress += PAGE_SIZE)
+        {
+            mySystem.setPageAccess(zAddress >> PAGE_SHIFT, PageAccess.createReadOnlyAccess(this, aROM, aBaseAddressOffset + (zAddress & aBaseAddressMask)));
+        }    
+    }
+    
+    protected final void addReadOnlyAccess(int aStartAddress, int aEndAddress, byte[] aROM, int aBaseAddressMask)
+     {
+         addReadOnlyAccess(aStartAddress, aEndAddress, aROM, aBaseAddressMask, 0);
+     }
+    
+    /**
+     * Should be called whenever the contents of the ROM image are changed, so that the CPU
+     * doesn't keep running what it decoded from the old contents.
+     */
+    protected final void invalidateDecodeCache()
+    {
+        if (mySystem!=null) mySystem.invalidateDecodeCache();
+    }
+    
+    protected final void addDirectPokeAccess(int aStartAddress, int aEndAddress, byte[] aMemory, int aBaseAddressMask, int aBaseAddressOffset)
     {
         for(int zAddress = (aStartAddress & ~PAGE_MASK); zAddress < (aEndAddress & ~PAGE_MASK); zAddress += PAGE_SIZE)
         {
@@ -626,11 +601,91 @@ public abstract class Cartridge implements IfcDevice, java.io.Serializable {
         } 
     }
     
-    protected final void addDirectPokeAccess(int aStartAddress, int aEndAddress, int[] aMemory, int aBaseAddressMask)
+    protected final void addDirectPokeAccess(int aStartAddress, int aEndAddress, byte[] aMemory, int aBaseAddressMask)
      {
          addDirectPokeAccess(aStartAddress, aEndAddress, aMemory, aBaseAddressMask, 0);
      }
     
+    /*
+     * Page slices : bank switching with the add____Access(...) methods creates a new PageAccess for
+     * every page of the bank, every time the bank is switched.  Instead, a cartridge can create the
+     * page accesses for each of its banks (a "slice" of pages) once, and then map a bank with
+     * setPageSlice(...), which only copies them into the system.
+     */
+    
+    /**
+     * Creates the page accesses that addReadOnlyAccess(...) would set, without setting them.
+     * @return one page access for each page, starting with the page of aStartAddress
+     */
+    protected final PageAccess[] createReadOnlySlice(int aStartAddress, int aEndAddress, byte[] aROM, int aBaseAddressMask, int aBaseAddressOffset)
+    {
+        int zFirst=aStartAddress & ~PAGE_MASK;
+        PageAccess[] zReturn=new PageAccess[((aEndAddress & ~PAGE_MASK) - zFirst) >> PAGE_SHIFT];
+        for (int i=0; i<zReturn.length; i++)
+        {
+            int zAddress=zFirst + (i << PAGE_SHIFT);
+            zReturn[i]=PageAccess.createReadOnlyAccess(this, aROM, aBaseAddressOffset + (zAddress & aBaseAddressMask));
+        }
+        return zReturn;
+    }
+    
+    /**
+     * Creates the page accesses for each aSliceSize byte slice of a ROM image, mapped
+     * at the given range of addresses.  Element n is the slice that
+     * addReadOnlyAccess(aStartAddress, aEndAddress, aROM, aBaseAddressMask, n * aSliceSize) would set.
+     * @return an array of slices, one for each slice of aROM
+     */
+    protected final PageAccess[][] createReadOnlySlices(int aStartAddress, int aEndAddress, byte[] aROM, int aBaseAddressMask, int aSliceSize)
+    {
+        PageAccess[][] zReturn=new PageAccess[(aROM.length + aSliceSize - 1) / aSliceSize][];
+        for (int i=0; i<zReturn.length; i++)
+        {
+            zReturn[i]=createReadOnlySlice(aStartAddress, aEndAddress, aROM, aBaseAddressMask, i * aSliceSize);
+        }
+        return zReturn;
+    }
+    
+    /**
+     * Creates the page accesses that addDirectPeekAccess(...) would set, without setting them.
+     */
+    protected final PageAccess[] createDirectPeekSlice(int aStartAddress, int aEndAddress, byte[] aMemory, int aBaseAddressMask, int aBaseAddressOffset)
+    {
+        int zFirst=aStartAddress & ~PAGE_MASK;
+        PageAccess[] zReturn=new PageAccess[((aEndAddress & ~PAGE_MASK) - zFirst) >> PAGE_SHIFT];
+        for (int i=0; i<zReturn.length; i++)
+        {
+            int zAddress=zFirst + (i << PAGE_SHIFT);
+            zReturn[i]=PageAccess.createDirectPeekAccess(this, aMemory, aBaseAddressOffset + (zAddress & aBaseAddressMask));
+        }
+        return zReturn;
+    }
+    
+    /**
+     * Creates the page accesses that addDirectPokeAccess(...) would set, without setting them.
+     */
+    protected final PageAccess[] createDirectPokeSlice(int aStartAddress, int aEndAddress, byte[] aMemory, int aBaseAddressMask, int aBaseAddressOffset)
+    {
+        int zFirst=aStartAddress & ~PAGE_MASK;
+        PageAccess[] zReturn=new PageAccess[((aEndAddress & ~PAGE_MASK) - zFirst) >> PAGE_SHIFT];
+        for (int i=0; i<zReturn.length; i++)
+        {
+            int zAddress=zFirst + (i << PAGE_SHIFT);
+            zReturn[i]=PageAccess.createDirectPokeAccess(this, aMemory, aBaseAddressOffset + (zAddress & aBaseAddressMask));
+        }
+        return zReturn;
+    }
+    
+    /**
+     * Maps a slice of pages created by one of the create____Slice(...) methods.  Nothing
+     * is allocated, so this is cheap enough to be called on every bank switch.
+     * @param aStartAddress the address of the first page of the slice
+     * @param aSlice the slice
+     */
+    protected final void setPageSlice(int aStartAddress, PageAccess[] aSlice)
+    {
+        mySystem.setPageAccesses((aStartAddress & ~PAGE_MASK) >> PAGE_SHIFT, aSlice);
+    }
+    
     
  
     
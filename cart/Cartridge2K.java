@@ -34,13 +34,12 @@ class Cartridge2K extends Cartridge {
     private final static long serialVersionUID = 6519396049383803731L;
     
     
-    private int[] myImage=new int[2048];
     
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    public Cartridge2K(int[] image) {
+    public Cartridge2K(byte[] image) {
        
-         myImage=copyImage(image);  // Copy the ROM image into my buffer
+         myImage=shareImage(image); // Use the shared copy of the ROM image (see ROMStore)
     }
     
     
@@ -61,12 +60,12 @@ class Cartridge2K extends Cartridge {
         // Make sure the system we're being installed in has a page size that'll work
         assert((0x1000 & PAGE_MASK) == 0);
       
-        addDirectPeekAccess(0x1000, 0x2000, myImage, 0x07FF);
+        addReadOnlyAccess(0x1000, 0x2000, myImage, 0x07FF);
     }
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     public int peek(int address) {
-        return myImage[address & 0x07FF];
+        return myImage[address & 0x07FF] & 0xFF;
     }
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
@@ -93,12 +92,14 @@ class Cartridge2K extends Cartridge {
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     public boolean patch(int address, int value) {
-        myImage[address & 0x07FF] = value;
+        unshareImage();
+        myImage[address & 0x07FF] = (byte)value;
+        invalidateDecodeCache();
         return true;
     }
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    public int[] getImage() {
+    public byte[] getImage() {
       
         return myImage;
     }
@@ -47,16 +47,16 @@ public class Cartridge3F extends Cartridge
     // Indicates which bank is currently active for the first segment
     private int myCurrentBank;
 
-    // Pointer to a dynamically allocated ROM image of the cartridge
-     private int[] myImage;
+     /** The page accesses for each bank, created the first time a bank is mapped (see createReadOnlySlices(...)) */
+     private transient PageAccess[][] myBankSlices=null;
 
 
 
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-Cartridge3F(int[] image)
+Cartridge3F(byte[] image)
 {
   
-  myImage=copyImage(image);
+  myImage=shareImage(image);
 }
 
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
@@ -101,7 +101,7 @@ public void install(JSSystem system)
   */
 
   // Setup the second segment to always point to the last ROM slice
-  addDirectPeekAccess(0x1800, 0x2000, myImage, 0x07FF, myImage.length - 2048);
+  addReadOnlyAccess(0x1800, 0x2000, myImage, 0x07FF, myImage.length - 2048);
   /*for(int j = 0x1800; j < 0x2000; j += (1 << shift))
   {
     access.device = this;
@@ -122,11 +122,11 @@ public int peek(int address)
 
   if(address < 0x0800)
   {
-    return myImage[(address & 0x07FF) + myCurrentBank * 2048];
+    return myImage[(address & 0x07FF) + myCurrentBank * 2048] & 0xFF;
   }
   else
   {
-    return myImage[(address & 0x07FF) + myImage.length - 2048];
+    return myImage[(address & 0x07FF) + myImage.length - 2048] & 0xFF;
   }
 }
 
@@ -172,7 +172,8 @@ protected void setCurrentBank(int bank)
   //access.directPokeBase = 0;
 
   // Map ROM image into the system
-  addDirectPeekAccess(0x1000, 0x1800, myImage, 0x07FF, myCurrentBank * 2048);
+  if (myBankSlices==null) myBankSlices=createReadOnlySlices(0x1000, 0x1800, myImage, 0x07FF, 2048);
+  setPageSlice(0x1000, myBankSlices[myCurrentBank]);
   /*for(int address = 0x1000; address < 0x1800; address += (1 << shift))
   {
     access.directPeekBase = &myImage[offset + (address & 0x07FF)];
@@ -193,23 +194,32 @@ protected int bankCount()
   return myImage.length / 2048;
 }
 
+// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+protected void imageReplaced()
+{
+  myBankSlices=null;
+}
+
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
 public boolean patch(int address, int value)
 {
+  unshareImage();
   address = address & 0x0FFF;
   if(address < 0x0800)
   {
-    myImage[(address & 0x07FF) + myCurrentBank * 2048] = value;
+    myImage[(address & 0x07FF) + myCurrentBank * 2048] = (byte)value;
+    invalidateDecodeCache();
   }
   else
   {
-    myImage[(address & 0x07FF) + myImage.length - 2048] = value;
+    myImage[(address & 0x07FF) + myImage.length - 2048] = (byte)value;
+    invalidateDecodeCache();
   }
   return true;
 } 
 
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-protected int[] getImage()
+protected byte[] getImage()
 {
  
   return myImage;
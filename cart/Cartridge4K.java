@@ -31,15 +31,13 @@ public class Cartridge4K extends Cartridge {
     
     
     
-    // The 4K ROM image for the cartridge
-    int[] myImage=new int[CARTRIDGE_SIZE];
     
     
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    public Cartridge4K(int[] image) {
+    public Cartridge4K(byte[] image) {
         
-        myImage=copyImage(image);
+        myImage=shareImage(image);
     }
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
@@ -57,7 +55,7 @@ public class Cartridge4K extends Cartridge {
     
     public void install(jstella.core.JSSystem system) {
         mySystem = system;        
-        addDirectPeekAccess(0x1000, 0x2000, myImage, CARTRIDGE_MASK_VALUE);  // Map ROM image into the system
+        addReadOnlyAccess(0x1000, 0x2000, myImage, CARTRIDGE_MASK_VALUE);  // Map ROM image into the system
         
     }
     
@@ -68,7 +66,7 @@ public class Cartridge4K extends Cartridge {
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     public int peek(int address) {
-        return myImage[address & CARTRIDGE_MASK_VALUE];
+        return myImage[address & CARTRIDGE_MASK_VALUE] & 0xFF;
     }
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
@@ -97,12 +95,14 @@ public class Cartridge4K extends Cartridge {
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     public boolean patch(int address,int value) {
-        myImage[address & CARTRIDGE_MASK_VALUE] = value;
+        unshareImage();
+        myImage[address & CARTRIDGE_MASK_VALUE] = (byte)value;
+        invalidateDecodeCache();
         return true;
     }
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    public int[] getImage() {
+    public byte[] getImage() {
         
         return myImage;
     }
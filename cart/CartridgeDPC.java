@@ -41,14 +41,10 @@ public class CartridgeDPC extends Cartridge {
     // Indicates which bank is currently active
     int myCurrentBank;
     
-    // The 8K program ROM image of the cartridge
-    int[] myProgramImage=new int[8192];
-    
-    // The 2K display ROM image of the cartridge
-    int[] myDisplayImage=new int[2048];
-    
-    // Copy of the raw image, for use by getImage()
-    int[] myImageCopy=new int[8192 + 2048 + 255];
+    // The 8K program ROM is at the start of myImage, and the 2K display ROM follows it
+    private final static int DISPLAY_IMAGE_OFFSET=8192;
+    /** The page accesses for each bank, created the first time a bank is mapped (see createReadOnlySlices(...)) */
+    private transient PageAccess[][] myBankSlices=null;
     
     // The top registers for the data fetchers
     int[] myTops=new int[8];
@@ -77,23 +73,10 @@ public class CartridgeDPC extends Cartridge {
     
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    public CartridgeDPC( int[] image) {
-        int addr;
+    public CartridgeDPC( byte[] image) {
         
-        // Make a copy of the entire image as-is, for use by getImage()
-        myImageCopy=copyImage(image);
-        //for(addr = 0; addr < image.length; ++addr)
-        //  myImageCopy[addr] = image[addr];
-        
-        // Copy the program ROM image into my buffer
-        for(addr = 0; addr < 8192; ++addr) {
-            myProgramImage[addr] = image[addr];
-        }
-        
-        // Copy the display ROM image into my buffer
-        for(addr = 0; addr < 2048; ++addr) {
-            myDisplayImage[addr] = image[8192 + addr];
-        }
+        // The entire image as-is : program ROM, then display ROM
+        myImage=shareImage(image);
         
         // Initialize the DPC data fetcher registers
         for(int i = 0; i < 8; ++i) {
@@ -268,14 +251,14 @@ public class CartridgeDPC extends Cartridge {
                 // DFx display data read
                 case 0x01:
                 {
-                    result = myDisplayImage[2047 - myCounters[index]];
+                    result = myImage[DISPLAY_IMAGE_OFFSET + 2047 - myCounters[index]] & 0xFF;
                     break;
                 }
                 
                 // DFx display data read AND'd w/flag
                 case 0x02:
                 {
-                    result = myDisplayImage[2047 - myCounters[index]] & myFlags[index];
+                    result = myImage[DISPLAY_IMAGE_OFFSET + 2047 - myCounters[index]] & 0xFF & myFlags[index];
                     break;
                 }
                 
@@ -314,7 +297,7 @@ public class CartridgeDPC extends Cartridge {
                 default:
                     break;
             }
-            return myProgramImage[(myCurrentBank * 4096) + zNewAddress];
+            return myImage[(myCurrentBank * 4096) + zNewAddress] & 0xFF;
         }
     }
     
@@ -424,10 +407,40 @@ public class CartridgeDPC extends Cartridge {
         myCurrentBank = bank;
         
         // Map Program ROM image into the system
-        addDirectPeekAccess(0x1080, 0x1FF8, myProgramImage, 0x0FFF, myCurrentBank * 4096);
+        if (myBankSlices==null) myBankSlices=createReadOnlySlices(0x1080, 0x1FF8, myImage, 0x0FFF, 4096);
+        setPageSlice(0x1080, myBankSlices[myCurrentBank]);
         
     }
     
+// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+    public void saveState(java.io.DataOutput aOut) throws java.io.IOException {
+        super.saveState(aOut);
+        for (int i=0; i<8; i++) {
+            aOut.writeInt(myTops[i]);
+            aOut.writeInt(myBottoms[i]);
+            aOut.writeInt(myCounters[i]);
+            aOut.writeInt(myFlags[i]);
+        }//end : for i loop
+        for (int i=0; i<3; i++) {  aOut.writeBoolean(myMusicMode[i]);  }
+        aOut.writeInt(myRandomNumber);
+        aOut.writeInt(mySystemCycles);
+        aOut.writeDouble(myFractionalClocks);
+    }
+    
+    public void loadState(java.io.DataInput aIn) throws java.io.IOException {
+        super.loadState(aIn);
+        for (int i=0; i<8; i++) {
+            myTops[i]=aIn.readInt();
+            myBottoms[i]=aIn.readInt();
+            myCounters[i]=aIn.readInt();
+            myFlags[i]=aIn.readInt();
+        }//end : for i loop
+        for (int i=0; i<3; i++) {  myMusicMode[i]=aIn.readBoolean();  }
+        myRandomNumber=aIn.readInt();
+        mySystemCycles=aIn.readInt();
+        myFractionalClocks=aIn.readDouble();
+    }
+    
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     protected int getCurrentBank() {
         return myCurrentBank;
@@ -438,25 +451,23 @@ public class CartridgeDPC extends Cartridge {
         return 2; // TODO: support the display ROM somehow
     }
     
+// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+    protected void imageReplaced() {
+        myBankSlices=null;
+    }
+    
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     public boolean patch(int address, int value) {
+        unshareImage();
         address = (char)(address & 0x0FFF);
-        myProgramImage[(myCurrentBank * 4096) + address] = value;
+        myImage[(myCurrentBank * 4096) + address] = (byte)value;
+        invalidateDecodeCache();
         return true;
     }
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    public int[] getImage() {
-        //size = 8192 + 2048 + 255;
-        
-        int i;
-        for(i = 0; i < 8192; i++)
-            myImageCopy[i] = myProgramImage[i];
-        
-        for(i = 0; i < 2048; i++)
-            myImageCopy[i + 8192] = myDisplayImage[i];
-        
-        return myImageCopy;
+    public byte[] getImage() {
+        return myImage;
     }
     
 }
@@ -42,17 +42,19 @@ public class CartridgeE0 extends Cartridge {
     private int myResetBank;
     
     
-    private int[] myImage=new int[8192];
     
     private int[] myCurrentSlice=new int[4];
     
+    /** The page accesses for each 1K slice of the image, in each of the three switchable segments ([segment][slice]) */
+    private transient PageAccess[][][] mySegmentSlices=null;
+    
     
     
     
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    public CartridgeE0(int[] image) {
-        myImage=copyImage(image); // Copy the ROM image into my buffer
+    public CartridgeE0(byte[] image) {
+        myImage=shareImage(image); // Use the shared copy of the ROM image (see ROMStore)
         
     }
     
@@ -78,7 +80,7 @@ public class CartridgeE0 extends Cartridge {
         mySystem = system;
         
         myCurrentSlice[3] = 7;
-        addDirectPeekAccess(0x1C00, 0x1FE0, myImage, 0x03FF, 7168);
+        addReadOnlyAccess(0x1C00, 0x1FE0, myImage, 0x03FF, 7168);
         addIndirectAccess(0x1FE0, 0x2000);
         
         // Install some default slices for the other segments
@@ -108,7 +110,7 @@ public class CartridgeE0 extends Cartridge {
             }
         }
         
-        return myImage[(myCurrentSlice[address >> 10] << 10) + (address & 0x03FF)];
+        return myImage[(myCurrentSlice[address >> 10] << 10) + (address & 0x03FF)] & 0xFF;
     }
     
     
@@ -131,7 +133,7 @@ public class CartridgeE0 extends Cartridge {
     private void segmentZero(int slice) {
       
         myCurrentSlice[0] = slice;        
-        addDirectPeekAccess(0x1000, 0x1400, myImage, 0x03FF, slice << 10);
+        setPageSlice(0x1000, getSegmentSlice(0, slice));
      
     }
     
@@ -139,7 +141,7 @@ public class CartridgeE0 extends Cartridge {
     private void segmentOne(int slice) {
       
         myCurrentSlice[1] = slice;        
-        addDirectPeekAccess(0x1400, 0x1800, myImage, 0x03FF, slice << 10);
+        setPageSlice(0x1400, getSegmentSlice(1, slice));
         
     
     }
@@ -148,7 +150,7 @@ public class CartridgeE0 extends Cartridge {
     void segmentTwo(int slice) {
      
         myCurrentSlice[2] = slice;
-        addDirectPeekAccess(0x1800, 0x1C00, myImage, 0x03FF, slice << 10);        
+        setPageSlice(0x1800, getSegmentSlice(2, slice));        
      
     }
     
@@ -157,10 +159,46 @@ public class CartridgeE0 extends Cartridge {
     
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+    /**
+     * Returns the page accesses that map the given 1K slice of the image into one of the
+     * three switchable segments (creating them all, the first time it is called).
+     */
+    private PageAccess[] getSegmentSlice(int aSegment, int aSlice) {
+        if (mySegmentSlices==null) {
+            mySegmentSlices=new PageAccess[3][][];
+            for (int i=0; i<3; i++) {
+                mySegmentSlices[i]=createReadOnlySlices(0x1000 + (i << 10), 0x1400 + (i << 10), myImage, 0x03FF, 1024);
+            }//end : for i loop
+        }//end : not created yet
+        return mySegmentSlices[aSegment][aSlice];
+    }
+    
     protected void setCurrentBank(int bank) {
         // FIXME - get this working, so we can debug E0 carts
     }
     
+// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+    public void saveState(java.io.DataOutput aOut) throws java.io.IOException {
+        super.saveState(aOut);
+        aOut.writeInt(myCurrentSlice[0]);
+        aOut.writeInt(myCurrentSlice[1]);
+        aOut.writeInt(myCurrentSlice[2]);
+    }
+    
+    /**
+     * Puts back the state written by saveState(...), remapping only the segments whose
+     * slice has changed (as Cartridge.loadState(...) does for the bank).
+     */
+    public void loadState(java.io.DataInput aIn) throws java.io.IOException {
+        super.loadState(aIn);
+        int zSlice=aIn.readInt();
+        if (zSlice!=myCurrentSlice[0]) segmentZero(zSlice);
+        zSlice=aIn.readInt();
+        if (zSlice!=myCurrentSlice[1]) segmentOne(zSlice);
+        zSlice=aIn.readInt();
+        if (zSlice!=myCurrentSlice[2]) segmentTwo(zSlice);
+    }
+    
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     protected int getCurrentBank() {
         // FIXME - get this working, so we can debug E0 carts
@@ -174,15 +212,22 @@ public class CartridgeE0 extends Cartridge {
         return 1;
     }
     
+// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+    protected void imageReplaced() {
+        mySegmentSlices=null;
+    }
+    
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     public boolean patch(int address, int aValue) {
+        unshareImage();
         address = (char)(address & 0x0FFF);
-        myImage[(myCurrentSlice[address >> 10] << 10) + (address & 0x03FF)] = aValue;
+        myImage[(myCurrentSlice[address >> 10] << 10) + (address & 0x03FF)] = (byte)aValue;
+        invalidateDecodeCache();
         return true;
     }
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    public int[] getImage() {
+    public byte[] getImage() {
         
         return myImage;
     }
@@ -61,19 +61,24 @@ public class CartridgeE7 extends Cartridge {
     // Indicates which 256 byte bank of RAM is being used
     int myCurrentRAM=0;
     
-    // The 16K ROM image of the cartridge
-    int[] myImage=new int[16384];
     
     // The 2048 bytes of RAM
-    int[]  myRAM=new int[2048];
+    byte[]  myRAM=new byte[2048];
+    
+    // The page accesses for bank switching, created the first time they are needed (see createSlices())
+    private transient PageAccess[][] myROMSlices=null;
+    private transient PageAccess[] myRAMPokeSlice=null;
+    private transient PageAccess[] myRAMPeekSlice=null;
+    private transient PageAccess[][] myRAMBankPokeSlices=null;
+    private transient PageAccess[][] myRAMBankPeekSlices=null;
     
     
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    CartridgeE7(int[] image) {
+    CartridgeE7(byte[] image) {
         // Copy the ROM image into my buffer
         
-        myImage=copyImage(image);
+        myImage=shareImage(image);
         
         
         // Initialize RAM with random values
@@ -109,7 +114,7 @@ public class CartridgeE7 extends Cartridge {
         // Map ROM image into the system
         
         addIndirectAccess(0x1FE0, 0x2000);
-        addDirectPeekAccess(0x1A00, 0x1FE0, myImage, 0x07FF, 7 * 2048);
+        addReadOnlyAccess(0x1A00, 0x1FE0, myImage, 0x07FF, 7 * 2048);
         
         myCurrentSlice[1] = 7;
         
@@ -141,7 +146,7 @@ public class CartridgeE7 extends Cartridge {
         // NOTE: The following does not handle reading from RAM, however,
         // this function should never be called for RAM because of the
         // way page accessing has been setup
-        return myImage[(myCurrentSlice[address >> 11] << 11) + (address & 0x07FF)];
+        return myImage[(myCurrentSlice[address >> 11] << 11) + (address & 0x07FF)] & 0xFF;
     }
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
@@ -161,6 +166,21 @@ public class CartridgeE7 extends Cartridge {
     }
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+    /**
+     * Creates the page accesses for every ROM slice and RAM bank that can be switched in.
+     */
+    private void createSlices() {
+        myROMSlices=createReadOnlySlices(0x1000, 0x1800, myImage, 0x07FF, 2048);
+        myRAMPokeSlice=createDirectPokeSlice(0x1000, 0x1400, myRAM, 0x03FF, 0);
+        myRAMPeekSlice=createDirectPeekSlice(0x1400, 0x1800, myRAM, 0x03FF, 0);
+        myRAMBankPokeSlices=new PageAccess[4][];
+        myRAMBankPeekSlices=new PageAccess[4][];
+        for (int i=0; i<4; i++) {
+            myRAMBankPokeSlices[i]=createDirectPokeSlice(0x1800, 0x1900, myRAM, 0x00FF, 1024 + (i << 8));
+            myRAMBankPeekSlices[i]=createDirectPeekSlice(0x1900, 0x1A00, myRAM, 0x00FF, 1024 + (i << 8));
+        }//end : for i loop
+    }
+    
     void bankRAM(int bank) {
         // Remember what bank we're in
         myCurrentRAM = bank;
@@ -171,7 +191,8 @@ public class CartridgeE7 extends Cartridge {
         
         
         // Set the page accessing method for the 256 bytes of RAM writing pages
-        addDirectPokeAccess(0x1800, 0x1900, myRAM, 0x00FF, 1024 + (bank << 8));
+        if (myROMSlices==null) createSlices();
+        setPageSlice(0x1800, myRAMBankPokeSlices[bank]);
  /*
   for(int j = 0x1800; j < 0x1900; j += (1 << shift))
   {
@@ -181,7 +202,7 @@ public class CartridgeE7 extends Cartridge {
   */
         
         // Set the page accessing method for the 256 bytes of RAM reading pages
-        addDirectPeekAccess(0x1900, 0x1A00, myRAM, 0x00FF, 1024 + (bank << 8));
+        setPageSlice(0x1900, myRAMBankPeekSlices[bank]);
  /* for(int k = 0x1900; k < 0x1A00; k += (1 << shift))
   {
   
@@ -205,20 +226,36 @@ public class CartridgeE7 extends Cartridge {
             
             
             // Map ROM image into first segment
-            addDirectPeekAccess(0x1000, 0x1800, myImage, 0x07FF, slice << 11);
+            if (myROMSlices==null) createSlices();
+            setPageSlice(0x1000, myROMSlices[slice]);
             
         } else {
             
             // Set the page accessing method for the 1K slice of RAM writing pages
-            addDirectPokeAccess(0x1000, 0x1400, myRAM, 0x03FF);
+            if (myROMSlices==null) createSlices();
+            setPageSlice(0x1000, myRAMPokeSlice);
             
             
             // Set the page accessing method for the 1K slice of RAM reading pages
-            addDirectPeekAccess(0x1400, 0x1800, myRAM, 0x03FF);
+            setPageSlice(0x1400, myRAMPeekSlice);
             
         }
     }
     
+// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+    public void saveState(java.io.DataOutput aOut) throws java.io.IOException {
+        super.saveState(aOut); //the current bank is the first slice
+        aOut.writeInt(myCurrentRAM);
+        aOut.write(myRAM);
+    }
+    
+    public void loadState(java.io.DataInput aIn) throws java.io.IOException {
+        super.loadState(aIn);
+        int zRAMBank=aIn.readInt();
+        if (zRAMBank!=myCurrentRAM) bankRAM(zRAMBank);
+        aIn.readFully(myRAM); //in place, since the system's page table points right at it
+    }
+    
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     public int getCurrentBank() {
         return myCurrentSlice[0];
@@ -229,16 +266,23 @@ public class CartridgeE7 extends Cartridge {
         return 8;
     }
     
+// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+    protected void imageReplaced() {
+        myROMSlices=null;
+    }
+    
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     public boolean patch(int address, int value) {
+        unshareImage();
         address = (char)(address & 0x0FFF);
-        myImage[(myCurrentSlice[address >> 11] << 11) + (address & 0x07FF)] = value;
+        myImage[(myCurrentSlice[address >> 11] << 11) + (address & 0x07FF)] = (byte)value;
+        invalidateDecodeCache();
         setCurrentBank(myCurrentSlice[0]);
         return true;
     }
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    public int[] getImage() {
+    public byte[] getImage() {
         
         return myImage;
     }
@@ -18,6 +18,7 @@
 
 
 package jstella.cart;
+import jstella.core.PageAccess;
 import jstella.j6507.*;
 import jstella.j6507.IfcSystem;
 
@@ -43,17 +44,18 @@ public class CartridgeF4 extends Cartridge {
     
     
     
-    private int[] myImage=new int[CART_SIZE];
+    /** The page accesses for each bank, created the first time a bank is mapped (see createReadOnlySlices(...)) */
+    private transient PageAccess[][] myBankSlices=null;
     
     
     
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    public CartridgeF4(int[] image) {
+    public CartridgeF4(byte[] image) {
         // Copy the ROM image into my buffer
         
         
-        myImage=copyImage(image);
+        myImage=shareImage(image);
         //assert(myImage.length == CART_SIZE);
         
     }
@@ -148,7 +150,7 @@ public class CartridgeF4 extends Cartridge {
         
         
         
-        return myImage[myCurrentBank * 4096 + zNewAddress];
+        return myImage[myCurrentBank * 4096 + zNewAddress] & 0xFF;
     }
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
@@ -214,7 +216,8 @@ public class CartridgeF4 extends Cartridge {
         myCurrentBank = bank;
         
         // Map ROM image into the system
-        addDirectPeekAccess(0x1000, 0x1FF4, myImage, 0x0FFF, myCurrentBank * 4096);
+        if (myBankSlices==null) myBankSlices=createReadOnlySlices(0x1000, 0x1FF4, myImage, 0x0FFF, 4096);
+        setPageSlice(0x1000, myBankSlices[myCurrentBank]);
         
     }
     
@@ -228,16 +231,23 @@ public class CartridgeF4 extends Cartridge {
         return 4;
     }
     
+// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+    protected void imageReplaced() {
+        myBankSlices=null;
+    }
+    
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     public boolean patch(int address, int aValue) {
+        unshareImage();
         address &= 0xfff;
-        myImage[myCurrentBank * 4096 + address] = aValue;
+        myImage[myCurrentBank * 4096 + address] = (byte)aValue;
+        invalidateDecodeCache();
         setCurrentBank(myCurrentBank);
         return true;
     }
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    public int[] getImage() {
+    public byte[] getImage() {
         
         return myImage;
     }
@@ -18,6 +18,7 @@
 
 
 package jstella.cart;
+import jstella.core.PageAccess;
 import jstella.j6507.*;
 import jstella.j6507.IfcSystem;
 
@@ -34,7 +35,7 @@ public class CartridgeF4SC extends Cartridge {
     private final static int CART_SIZE=32768;
     private final static String CART_NAME="CartridgeF4SC";
     
-     private int[] myRAM=new int[128];
+     private byte[] myRAM=new byte[128];
     
     
     private int myCurrentBank=0;
@@ -43,17 +44,18 @@ public class CartridgeF4SC extends Cartridge {
     
     
     
-    private int[] myImage=new int[CART_SIZE];
+    /** The page accesses for each bank, created the first time a bank is mapped (see createReadOnlySlices(...)) */
+    private transient PageAccess[][] myBankSlices=null;
     
     
     
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    public CartridgeF4SC(int[] image) {
+    public CartridgeF4SC(byte[] image) {
         // Copy the ROM image into my buffer
         
         
-        myImage=copyImage(image);
+        myImage=shareImage(image);
         //assert(myImage.length == CART_SIZE);
         randomizeRAM(myRAM);
         
@@ -104,7 +106,7 @@ public class CartridgeF4SC extends Cartridge {
     setCurrentBank(address - 0x0FF4);
   }
 
-  return myImage[myCurrentBank * 4096 + address];
+  return myImage[myCurrentBank * 4096 + address] & 0xFF;
 
         
         
@@ -144,10 +146,22 @@ public class CartridgeF4SC extends Cartridge {
         myCurrentBank = bank;
         
         // Map ROM image into the system
-        addDirectPeekAccess(0x1100, 0x1FF4, myImage, 0x0FFF, myCurrentBank * 4096);
+        if (myBankSlices==null) myBankSlices=createReadOnlySlices(0x1100, 0x1FF4, myImage, 0x0FFF, 4096);
+        setPageSlice(0x1100, myBankSlices[myCurrentBank]);
         
     }
     
+// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+    public void saveState(java.io.DataOutput aOut) throws java.io.IOException {
+        super.saveState(aOut);
+        aOut.write(myRAM);
+    }
+    
+    public void loadState(java.io.DataInput aIn) throws java.io.IOException {
+        super.loadState(aIn);
+        aIn.readFully(myRAM); //in place, since the system's page table points right at it
+    }
+    
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     protected int getCurrentBank() {
         return myCurrentBank;
@@ -158,16 +172,23 @@ public class CartridgeF4SC extends Cartridge {
         return 8;
     }
     
+// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+    protected void imageReplaced() {
+        myBankSlices=null;
+    }
+    
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     public boolean patch(int address, int aValue) {
+        unshareImage();
         address &= 0xfff;
-        myImage[(myCurrentBank * 4096) + address] = aValue;
+        myImage[(myCurrentBank * 4096) + address] = (byte)aValue;
+        invalidateDecodeCache();
         setCurrentBank(myCurrentBank);
         return true;
     }
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    public int[] getImage() {
+    public byte[] getImage() {
         
         return myImage;
     }
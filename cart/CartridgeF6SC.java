@@ -44,15 +44,16 @@ public class CartridgeF6SC extends Cartridge {
     private int myResetBank;
     
     
-    private int[] myImage=new int[CART_SIZE];
+    /** The page accesses for each bank, created the first time a bank is mapped (see createReadOnlySlices(...)) */
+    private transient PageAccess[][] myBankSlices=null;
     
-    private int[] myRAM=new int[128];
+    private byte[] myRAM=new byte[128];
     
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    public CartridgeF6SC(int[] image) {
+    public CartridgeF6SC(byte[] image) {
       
-        myImage=copyImage(image);
+        myImage=shareImage(image);
      
         randomizeRAM(myRAM);
         
@@ -135,7 +136,7 @@ public class CartridgeF6SC extends Cartridge {
         // should never be called for RAM because of the way page accessing
         // has been setup
         
-        return myImage[myCurrentBank * 4096 + zNewAddress];
+        return myImage[myCurrentBank * 4096 + zNewAddress] & 0xFF;
     }
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
@@ -184,10 +185,22 @@ public class CartridgeF6SC extends Cartridge {
       
         
         // Map ROM image into the system
-         addDirectPeekAccess(0x1100, 0x1FF6, myImage, 0x0FFF, myCurrentBank * 4096);
+         if (myBankSlices==null) myBankSlices=createReadOnlySlices(0x1100, 0x1FF6, myImage, 0x0FFF, 4096);
+         setPageSlice(0x1100, myBankSlices[myCurrentBank]);
      
     }
     
+// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+    public void saveState(java.io.DataOutput aOut) throws java.io.IOException {
+        super.saveState(aOut);
+        aOut.write(myRAM);
+    }
+    
+    public void loadState(java.io.DataInput aIn) throws java.io.IOException {
+        super.loadState(aIn);
+        aIn.readFully(myRAM); //in place, since the system's page table points right at it
+    }
+    
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     protected int getCurrentBank() {
         return myCurrentBank;
@@ -198,16 +211,23 @@ public class CartridgeF6SC extends Cartridge {
         return 4;
     }
     
+// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+    protected void imageReplaced() {
+        myBankSlices=null;
+    }
+    
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     public boolean patch(int address, int aValue) {
+        unshareImage();
         address &= 0xfff;
-        myImage[myCurrentBank * 4096 + address] = aValue;
+        myImage[myCurrentBank * 4096 + address] = (byte)aValue;
+        invalidateDecodeCache();
         setCurrentBank(myCurrentBank);
         return true;
     }
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    public int[] getImage() {
+    public byte[] getImage() {
         
         return myImage;
     }
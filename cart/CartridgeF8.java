@@ -16,6 +16,7 @@
 // $Id: CartridgeF8.java,v 1.2 2007/08/12 04:51:29 mauvila Exp $
 //============================================================================
 package jstella.cart;
+import jstella.core.PageAccess;
 import jstella.j6507.*;
 import jstella.j6507.IfcSystem;
 
@@ -40,15 +41,16 @@ public class CartridgeF8 extends Cartridge {
     private int myResetBank=0;
     
     
-    private int[] myImage=new int[8192];
+    /** The page accesses for each bank, created the first time a bank is mapped (see createReadOnlySlices(...)) */
+    private transient PageAccess[][] myBankSlices=null;
     
     
     
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    public CartridgeF8(int[] image, boolean swapbanks) {
+    public CartridgeF8(byte[] image, boolean swapbanks) {
         
-        myImage=copyImage(image);
+        myImage=shareImage(image);
         
         
         // Normally bank 1 is the reset bank, unless we're dealing with ROMs
@@ -108,7 +110,7 @@ public class CartridgeF8 extends Cartridge {
                 break;
         }
         
-        return myImage[(myCurrentBank * 4096) + zNewAddress];
+        return myImage[(myCurrentBank * 4096) + zNewAddress] & 0xFF;
     }
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
@@ -145,7 +147,8 @@ public class CartridgeF8 extends Cartridge {
         
         
         
-        addDirectPeekAccess(0x1000, 0x1FF8, myImage, 0x0FFF, myCurrentBank * 4096);  // Map ROM image into the system
+        if (myBankSlices==null) myBankSlices=createReadOnlySlices(0x1000, 0x1FF8, myImage, 0x0FFF, 4096);
+        setPageSlice(0x1000, myBankSlices[myCurrentBank]);  // Map ROM image into the system
         
     }
     
@@ -159,16 +162,23 @@ public class CartridgeF8 extends Cartridge {
         return 2;
     }
     
+// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+    protected void imageReplaced() {
+        myBankSlices=null;
+    }
+    
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     public boolean patch(int address, int aValue) {
+        unshareImage();
         address &= 0xfff;
-        myImage[myCurrentBank * 4096 + address] = aValue;
+        myImage[myCurrentBank * 4096 + address] = (byte)aValue;
+        invalidateDecodeCache();
         setCurrentBank(myCurrentBank);
         return true;
     }
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    public int[] getImage() {
+    public byte[] getImage() {
         
         return myImage;
     }
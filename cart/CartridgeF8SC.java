@@ -17,6 +17,8 @@
 //============================================================================
 package jstella.cart;
 
+import jstella.core.PageAccess;
+
 /**
  * Cartridge class used for Atari's 8K bankswitched games with
  * 128 bytes of RAM.  There are two 4K banks.
@@ -39,14 +41,15 @@ public class CartridgeF8SC extends Cartridge {
     private int myResetBank=0;
     
     
-    private int[] myImage=new int[CART_SIZE];
+    /** The page accesses for each bank, created the first time a bank is mapped (see createReadOnlySlices(...)) */
+    private transient PageAccess[][] myBankSlices=null;
     
-    private int[] myRAM=new int[128];
+    private byte[] myRAM=new byte[128];
     
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    public CartridgeF8SC(int[] image) {
-        myImage=copyImage(image);
+    public CartridgeF8SC(byte[] image) {
+        myImage=shareImage(image);
         randomizeRAM(myRAM);
     }
     
@@ -117,7 +120,7 @@ public class CartridgeF8SC extends Cartridge {
         // should never be called for RAM because of the way page accessing
         // has been setup
         
-        return myImage[myCurrentBank * 4096 + zNewAddress];
+        return myImage[myCurrentBank * 4096 + zNewAddress] & 0xFF;
     }
     
     
@@ -158,10 +161,22 @@ public class CartridgeF8SC extends Cartridge {
         
         
         // Map ROM image into the system
-        addDirectPeekAccess(0x1100, 0x1FF8, myImage, 0x0FFF, myCurrentBank << 12);
+        if (myBankSlices==null) myBankSlices=createReadOnlySlices(0x1100, 0x1FF8, myImage, 0x0FFF, 4096);
+        setPageSlice(0x1100, myBankSlices[myCurrentBank]);
         
     }
     
+// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+    public void saveState(java.io.DataOutput aOut) throws java.io.IOException {
+        super.saveState(aOut);
+        aOut.write(myRAM);
+    }
+    
+    public void loadState(java.io.DataInput aIn) throws java.io.IOException {
+        super.loadState(aIn);
+        aIn.readFully(myRAM); //in place, since the system's page table points right at it
+    }
+    
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     protected int getCurrentBank() {
         return myCurrentBank;
@@ -172,16 +187,23 @@ public class CartridgeF8SC extends Cartridge {
         return 2;
     }
     
+// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+    protected void imageReplaced() {
+        myBankSlices=null;
+    }
+    
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     public boolean patch(int address, int aValue) {
+        unshareImage();
         address &= 0xfff;
-        myImage[myCurrentBank * 4096 + address] = aValue;
+        myImage[myCurrentBank * 4096 + address] = (byte)aValue;
+        invalidateDecodeCache();
         setCurrentBank(myCurrentBank);
         return true;
     }
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    public int[] getImage() {
+    public byte[] getImage() {
         
         return myImage;
     }
@@ -1,5 +1,6 @@
 package jstella.cart;
 
+import jstella.core.PageAccess;
 import jstella.j6507.*;
 import jstella.j6507.IfcSystem;
 
@@ -26,18 +27,18 @@ public class CartridgeFASC extends Cartridge
  
    private int myCurrentBank=0;
 
-    // The 12K ROM image of the cartridge
-   private int[] myImage=new int[12288];
+   /** The page accesses for each bank, created the first time a bank is mapped (see createReadOnlySlices(...)) */
+   private transient PageAccess[][] myBankSlices=null;
 
     // The 256 bytes of RAM on the cartridge
-    private int[]  myRAM=new int[256];
+    private byte[]  myRAM=new byte[256];
 
 
 
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-public CartridgeFASC(int[] aImage)
+public CartridgeFASC(byte[] aImage)
 {
- myImage=copyImage(aImage);  
+ myImage=shareImage(aImage);  
  
 
   randomizeRAM(myRAM);
@@ -103,7 +104,7 @@ public int peek(int address)
   // NOTE: This does not handle accessing RAM, however, this function
   // should never be called for RAM because of the way page accessing
   // has been setup
-  return myImage[(myCurrentBank * 4096) + zMaskedAddress];
+  return myImage[(myCurrentBank * 4096) + zMaskedAddress] & 0xFF;
 }
 
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
@@ -150,10 +151,24 @@ myCurrentBank=bank;
 
 
   // Map ROM image into the system
-  addDirectPeekAccess(0x1200, 0x1FF8, myImage, 0x0FFF, myCurrentBank*4096);
+  if (myBankSlices==null) myBankSlices=createReadOnlySlices(0x1200, 0x1FF8, myImage, 0x0FFF, 4096);
+  setPageSlice(0x1200, myBankSlices[myCurrentBank]);
   
 }
 
+// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+public void saveState(java.io.DataOutput aOut) throws java.io.IOException
+{
+  super.saveState(aOut);
+  aOut.write(myRAM);
+}
+
+public void loadState(java.io.DataInput aIn) throws java.io.IOException
+{
+  super.loadState(aIn);
+  aIn.readFully(myRAM); //in place, since the system's page table points right at it
+}
+
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
 public int getCurrentBank()
 {
@@ -166,16 +181,24 @@ public int bankCount()
   return 3;
 }
 
+// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+protected void imageReplaced()
+{
+  myBankSlices=null;
+}
+
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
 public boolean patch(int address, int value)
 {
+  unshareImage();
   address = address & 0x0FFF;
-  myImage[(myCurrentBank * 4096) + address] = value;
+  myImage[(myCurrentBank * 4096) + address] = (byte)value;
+  invalidateDecodeCache();
   return true;
 } 
 
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-public int[] getImage()
+public byte[] getImage()
 {
   
   return myImage;
@@ -42,15 +42,14 @@ import jstella.core.*;
 public class CartridgeFE extends Cartridge {
     private final static long serialVersionUID = 3716862330037765895L;
     
-    private int[] myImage=new int[8192];
     
     
     
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    public CartridgeFE(int[] image) {
+    public CartridgeFE(byte[] image) {
         
-        myImage=copyImage(image);
+        myImage=shareImage(image);
         
         
     }
@@ -83,7 +82,7 @@ public class CartridgeFE extends Cartridge {
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     public int peek(int address) {
         // The bank is determined by A13 of the processor
-        return myImage[(address & 0x0FFF) + (((address & 0x2000) == 0) ? 4096 : 0)];
+        return myImage[(address & 0x0FFF) + (((address & 0x2000) == 0) ? 4096 : 0)] & 0xFF;
     }
     
     
@@ -114,14 +113,16 @@ public class CartridgeFE extends Cartridge {
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     public boolean patch(int address, int aValue) {
+        unshareImage();
         
-        myImage[(address & 0x0FFF) + (((address & 0x2000) == 0) ? 4096 : 0)] = aValue;
+        myImage[(address & 0x0FFF) + (((address & 0x2000) == 0) ? 4096 : 0)] = (byte)aValue;
+        invalidateDecodeCache();
         return true;
         
     }
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-    public int[] getImage() {
+    public byte[] getImage() {
         
         return myImage;
     }
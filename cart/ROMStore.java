@@ -0,0 +1,84 @@
+/*
+ * ROMStore.java
+ *
+ * To change this template, choose Tools | Template Manager
+ * and open the template in the editor.
+ */
+
+package jstella.cart;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/**
+ * Keeps a single copy of each ROM image, keyed by its MD5, so that any number of
+ * cartridges (e.g. many consoles running the same game at once) can share the same
+ * image instead of each holding its own copy.
+ * <p>
+ * The images handed out by this class are shared, and so must be treated as
+ * read-only.  A cartridge that needs to change its image (see Cartridge.patch(...))
+ * must make its own copy first.  Anything else that changes while a game is being
+ * played (cartridge RAM, the current bank, etc.) stays with each cartridge.
+ * </p>
+ * <p>
+ * The store only holds weak references, so an image is forgotten once no cartridge
+ * is using it anymore.
+ * </p>
+ * @author J.L. Allen
+ */
+public final class ROMStore {
+
+    private static final Map<String, WeakReference<byte[]>> ourImages=new HashMap<String, WeakReference<byte[]>>();
+    private static final Map<byte[], String> ourMD5s=new WeakHashMap<byte[], String>(); // identity : arrays don't override equals()
+
+    private ROMStore() {
+    }
+
+    /**
+     * Returns the shared copy of the given image.  If no cartridge is using an image
+     * with the same contents, a copy of the given image becomes the shared one (the
+     * array passed is never shared itself, so the caller is free to change it afterward).
+     * @param aImage the ROM image
+     * @return the shared image, with the same contents as aImage; do not change it
+     */
+    public static synchronized byte[] share(byte[] aImage) {
+        if (ourMD5s.containsKey(aImage)) return aImage; // already shared
+
+        String zMD5=Cartridge.calculateMD5(aImage);
+        WeakReference<byte[]> zRef=ourImages.get(zMD5);
+        byte[] zReturn=(zRef!=null) ? zRef.get() : null;
+        if ((zReturn==null)||(Arrays.equals(zReturn, aImage)==false)) {
+            purge();
+            zReturn=aImage.clone();
+            ourImages.put(zMD5, new WeakReference<byte[]>(zReturn));
+            ourMD5s.put(zReturn, zMD5);
+        }//end : new image
+        return zReturn;
+    }
+
+    /**
+     * Returns true if the given array is an image handed out by share(...), and so
+     * may be in use by other cartridges.
+     * @param aImage an image
+     * @return true if the image is shared
+     */
+    public static synchronized boolean isShared(byte[] aImage) {
+        return ourMD5s.containsKey(aImage);
+    }
+
+    /**
+     * Returns the number of images that are currently being shared.
+     * @return the number of images
+     */
+    public static synchronized int getImageCount() {
+        purge();
+        return ourImages.size();
+    }
+
+    private static void purge() {
+        for (Iterator<WeakReference<byte[]>> zIt=ourImages.values().iterator(); zIt.hasNext(); ) {
+            if (zIt.next().get()==null) zIt.remove();
+        }//end : for
+    }
+
+}
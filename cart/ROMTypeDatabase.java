@@ -0,0 +1,137 @@
+/*
+ * ROMTypeDatabase.java
+ *
+ * To change this template, choose Tools | Template Manager
+ * and open the template in the editor.
+ */
+
+package jstella.cart;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The cartridge types of the ROMs (by MD5) that Cartridge.detectType(...) can't work out
+ * from the image alone.  A few are built in; more can be loaded from a file (see load(...)),
+ * so that a list of known ROMs can be kept up to date without changing JStella.
+ * <p>
+ * The file is a text file of "md5=type" lines, e.g. "bc24440b59092559a1ec26055fd1270e=F8 swapped"
+ * (see the TYPE_ constants in Cartridge for the types).  Blank lines, and lines starting with
+ * '#', are ignored.  An MD5 in the file replaces any entry already there for the same MD5.
+ * </p>
+ * <p>
+ * MD5s are compared as 32 lower-case hex digits (Cartridge.calculateMD5(...) leaves out
+ * leading zeros; other tools don't), so either form may be used.
+ * </p>
+ * @author J.L. Allen
+ */
+public final class ROMTypeDatabase {
+
+    private final static String COMMENT_PREFIX="#";
+    private final static int MD5_LENGTH=32;
+
+    private static final Map<String, String> ourTypes=new HashMap<String, String>();
+
+    static {
+        reset();
+    }
+
+    private ROMTypeDatabase() {
+    }
+
+    /**
+     * Forgets every entry but the built-in ones.
+     */
+    public static synchronized void reset() {
+        ourTypes.clear();
+        put("bc24440b59092559a1ec26055fd1270e", Cartridge.TYPE_F8SWAPPED);
+        put("75ee371ccfc4f43e7d9b8f24e1266b55", Cartridge.TYPE_F8SWAPPED);
+        put("6dda84fb8e442ecf34241ac0d1d91d69", Cartridge.TYPE_F6SC);
+    }
+
+    /**
+     * Returns the type of the ROM with the given MD5.
+     * @param aMD5 the MD5
+     * @return the cartridge type, or null if the ROM isn't in the database
+     */
+    public static synchronized String get(String aMD5) {
+        return (aMD5!=null) ? ourTypes.get(normalize(aMD5)) : null;
+    }
+
+    /**
+     * Adds a ROM to the database (replacing its entry, if it has one).
+     * @param aMD5 the MD5
+     * @param aType the cartridge type
+     */
+    public static synchronized void put(String aMD5, String aType) {
+        ourTypes.put(normalize(aMD5), aType);
+    }
+
+    public static synchronized int size() { return ourTypes.size(); }
+
+    /**
+     * Adds the ROMs in the given file to the database.
+     * @param aFile the file
+     * @return the number of entries read
+     * @throws java.io.IOException if the file can't be read
+     */
+    public static int load(File aFile) throws IOException {
+        Reader zReader=new FileReader(aFile);
+        try {
+            return load(zReader);
+        }//end : try
+        finally {
+            zReader.close();
+        }
+    }
+
+    /**
+     * Adds the ROMs read from the given reader to the database.  Lines that don't make sense
+     * are skipped.
+     * @param aReader the reader (which is left open)
+     * @return the number of entries read
+     * @throws java.io.IOException if the reader throws one
+     */
+    public static int load(Reader aReader) throws IOException {
+        Map<String, String> zRead=new HashMap<String, String>();
+        BufferedReader zBR=new BufferedReader(aReader);
+        String zLine;
+        while ((zLine=zBR.readLine())!=null) {
+            zLine=zLine.trim();
+            if ((zLine.length()==0)||(zLine.startsWith(COMMENT_PREFIX)==true)) continue;
+            int zEqualIndex=zLine.indexOf('=');
+            if (zEqualIndex<=0) continue;
+            String zMD5=zLine.substring(0, zEqualIndex).trim();
+            String zType=zLine.substring(zEqualIndex + 1).trim();
+            if ((isMD5(zMD5)==false)||(zType.length()==0)) {
+                System.out.println("JStella : skipping a bad line in the ROM type database (" + zLine + ")");
+                continue;
+            }//end : bad line
+            zRead.put(normalize(zMD5), zType);
+        }//end : while
+
+        synchronized (ROMTypeDatabase.class) {
+            ourTypes.putAll(zRead);
+        }//end : synchronized
+        return zRead.size();
+    }
+
+    private static boolean isMD5(String aString) {
+        if ((aString.length()==0)||(aString.length()>MD5_LENGTH)) return false;
+        for (int i=0; i<aString.length(); i++) {
+            if (Character.digit(aString.charAt(i), 16)<0) return false;
+        }//end : for i loop
+        return true;
+    }
+
+    private static String normalize(String aMD5) {
+        String zReturn=aMD5.trim().toLowerCase();
+        if (zReturn.length()<MD5_LENGTH) {
+            StringBuilder zPadded=new StringBuilder(MD5_LENGTH);
+            for (int i=zReturn.length(); i<MD5_LENGTH; i++) {  zPadded.append('0');  }
+            zReturn=zPadded.append(zReturn).toString();
+        }//end : leading zeros left out
+        return zReturn;
+    }
+
+}//CLASS END
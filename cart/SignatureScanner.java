@@ -0,0 +1,311 @@
+/*
+ * SignatureScanner.java
+ *
+ * To change this template, choose Tools | Template Manager
+ * and open the template in the editor.
+ */
+
+package jstella.cart;
+
+import java.util.*;
+
+/**
+ * Looks through a ROM image for the byte sequences that give away its bankswitching scheme
+ * (e.g. 'STA $3F' for 3F carts), for Cartridge.detectType(...).  Rather than going over the
+ * whole image once per sequence, every sequence is compiled into a single automaton
+ * (Aho-Corasick), which finds all of them in one pass over the image.
+ * <p>
+ * The automaton is a table with one row of 256 next states per state, so each byte of the
+ * image costs a single table lookup, plus a little work at the (few) states where a sequence
+ * ends.  Matches are counted the way Stella counts them (see Evidence), so the detection
+ * gives the same results as searching for each sequence separately did.
+ * </p>
+ * <p>
+ * The other checks (for Superchip RAM, E7 RAM, and an image whose two halves are the same)
+ * only look at a small, fixed part of the image, and are done separately.
+ * </p>
+ * @author J.L. Allen
+ */
+public final class SignatureScanner {
+
+    // The bankswitching schemes that have signatures
+    private final static int SCHEME_CV=0;
+    private final static int SCHEME_E0=1;
+    private final static int SCHEME_3E=2;
+    private final static int SCHEME_3F=3;
+    private final static int SCHEME_UA=4;
+    private final static int SCHEME_FE=5;
+    private final static int SCHEME_COUNT=6;
+
+    // These signatures are attributed to the MESS project (except 3E, 3F and UA)
+    private final static int[][] ourSignatures={
+        { 0x9D, 0xFF, 0xF3 },  // STA $F3FF (CV RAM)
+        { 0x99, 0x00, 0xF4 },  // STA $F400 (CV RAM)
+        { 0x8D, 0xE0, 0x1F },  // STA $1FE0 (E0)
+        { 0x8D, 0xE0, 0x5F },  // STA $5FE0 (E0)
+        { 0x8D, 0xE9, 0xFF },  // STA $FFE9 (E0)
+        { 0xAD, 0xE9, 0xFF },  // LDA $FFE9 (E0)
+        { 0xAD, 0xED, 0xFF },  // LDA $FFED (E0)
+        { 0xAD, 0xF3, 0xBF },  // LDA $BFF3 (E0)
+        { 0x85, 0x3E, 0xA9, 0x00 },  // STA $3E; LDA #$00 (3E)
+        { 0x85, 0x3F },  // STA $3F (3F...at least twice, since there are at least two banks)
+        { 0x8D, 0x40, 0x02 },  // STA $240 (UA)
+        { 0x20, 0x00, 0xD0, 0xC6, 0xC5 },  // JSR $D000; DEC $C5 (FE)
+        { 0x20, 0xC3, 0xF8, 0xA5, 0x82 },  // JSR $F8C3; LDA $82 (FE)
+        { 0xD0, 0xFB, 0x20, 0x73, 0xFE },  // BNE $FB; JSR $FE73 (FE)
+        { 0x20, 0x00, 0xF0, 0x84, 0xD6 }   // JSR $F000; STY $D6 (FE)
+    };
+    private final static int[] ourSchemes={
+        SCHEME_CV, SCHEME_CV, SCHEME_E0, SCHEME_E0, SCHEME_E0, SCHEME_E0, SCHEME_E0, SCHEME_E0,
+        SCHEME_3E, SCHEME_3F, SCHEME_UA, SCHEME_FE, SCHEME_FE, SCHEME_FE, SCHEME_FE
+    };
+    private final static int[] ourMinHits={ 1, 1, 1, 1, 1, 1, 1, 1, 1, 2, 1, 1, 1, 1, 1 };
+
+    private final static char[] ourTransitions; //[state * 256 + byte] = the next state * 256
+    private final static long[] ourOutputs; //[state] = a bit for each signature that ends at this state
+    private final static int ourFirstOutputState; //times 256...the states where a signature ends are numbered last
+    private final static int ourMaxLength;
+
+    static {
+        int zMaxLength=0;
+        for (int[] zSignature : ourSignatures) {  zMaxLength=Math.max(zMaxLength, zSignature.length);  }
+        ourMaxLength=zMaxLength;
+
+        //STEP 1 : the trie of the signatures
+        List<int[]> zChildren=new ArrayList<int[]>();
+        List<Long> zOutputs=new ArrayList<Long>();
+        zChildren.add(newRow());
+        zOutputs.add(0L);
+        for (int s=0; s<ourSignatures.length; s++) {
+            int zState=0;
+            for (int zByte : ourSignatures[s]) {
+                if (zChildren.get(zState)[zByte]<0) {
+                    zChildren.get(zState)[zByte]=zChildren.size();
+                    zChildren.add(newRow());
+                    zOutputs.add(0L);
+                }//end : new state
+                zState=zChildren.get(zState)[zByte];
+            }//end : for
+            zOutputs.set(zState, zOutputs.get(zState) | (1L << s));
+        }//end : for s loop
+
+        //STEP 2 : the failure links, breadth first, turning the trie into a complete table as it goes
+        int zStateCount=zChildren.size();
+        int[] zTransitions=new int[zStateCount * 256];
+        long[] zAllOutputs=new long[zStateCount];
+        int[] zFailure=new int[zStateCount];
+        int[] zQueue=new int[zStateCount];
+        int zQueueStart=0, zQueueEnd=0;
+        for (int c=0; c<256; c++) {
+            int zChild=zChildren.get(0)[c];
+            if (zChild>0) {
+                zFailure[zChild]=0;
+                zQueue[zQueueEnd++]=zChild;
+                zTransitions[c]=zChild;
+            }//end : child
+            else zTransitions[c]=0;
+        }//end : for c loop
+        while (zQueueStart<zQueueEnd) {
+            int zState=zQueue[zQueueStart++];
+            zAllOutputs[zState]=zOutputs.get(zState) | zAllOutputs[zFailure[zState]]; //a signature can end inside another
+            for (int c=0; c<256; c++) {
+                int zChild=zChildren.get(zState)[c];
+                if (zChild>0) {
+                    zFailure[zChild]=zTransitions[(zFailure[zState] << 8) | c];
+                    zQueue[zQueueEnd++]=zChild;
+                    zTransitions[(zState << 8) | c]=zChild;
+                }//end : child
+                else zTransitions[(zState << 8) | c]=zTransitions[(zFailure[zState] << 8) | c];
+            }//end : for c loop
+        }//end : while
+
+        //STEP 3 : renumber the states, so that the ones where a signature ends come last, and can
+        //be told apart from the rest with a single comparison (the table is kept small, to stay in the cache)
+        int[] zNewNumber=new int[zStateCount];
+        int zNext=0;
+        int zFirstOutputState=0;
+        for (int zPass=0; zPass<2; zPass++) {
+            for (int i=0; i<zStateCount; i++) {
+                if ((zAllOutputs[i]!=0)==(zPass==1)) zNewNumber[i]=zNext++; //the start state (0) has no output, so it stays 0
+            }//end : for i loop
+            if (zPass==0) zFirstOutputState=zNext;
+        }//end : for zPass loop
+        ourFirstOutputState=zFirstOutputState << 8; //(fewer than 256 states, so a state times 256 fits in a char)
+        ourTransitions=new char[zStateCount * 256];
+        ourOutputs=new long[zStateCount];
+        for (int i=0; i<zStateCount; i++) {
+            ourOutputs[zNewNumber[i]]=zAllOutputs[i];
+            for (int c=0; c<256; c++) {  ourTransitions[(zNewNumber[i] << 8) | c]=(char)(zNewNumber[zTransitions[(i << 8) | c]] << 8);  }
+        }//end : for i loop
+    }
+
+    private static int[] newRow() {
+        int[] zReturn=new int[256];
+        Arrays.fill(zReturn, -1);
+        return zReturn;
+    }
+
+
+    private SignatureScanner() {
+    }
+
+    /**
+     * Scans the given image.
+     * @param aImage the ROM image
+     * @return what was found
+     */
+    public static Evidence scan(byte[] aImage) {
+        return new Evidence(aImage);
+    }
+
+
+//=============================================================================
+//========================== INNER CLASSES ====================================
+//=============================================================================
+
+    /**
+     * What a scan found in an image : which schemes' signatures are in it, and the results of
+     * the other checks.  What counts as a match is the same as in Stella : a signature that
+     * ends on the last byte of the image isn't counted, and after a match, the search for the
+     * same signature starts again one byte past the end of it.
+     */
+    public static class Evidence {
+        private final boolean[] mySchemes=new boolean[SCHEME_COUNT];
+        private final boolean mySuperchip;
+        private final boolean myE7;
+        private final boolean myMirrored;
+
+        private Evidence(byte[] aImage) {
+            int zSize=aImage.length;
+            int[] zHits=new int[ourSignatures.length];
+            int[] zNextStart=new int[ourSignatures.length]; //where the next match of each signature may start
+            int[][] zLater=new int[ourSignatures.length][]; //where the matches in the second half end, in order
+            int[] zLaterCount=new int[ourSignatures.length];
+            for (int s=0; s<ourSignatures.length; s++) {
+                zLater[s]=new int[(ourMinHits[s] + 1) * (ourSignatures[s].length + 1)]; //enough to count, whichever of them are skipped
+            }//end : for s loop
+
+            //Each step of the automaton depends on the one before it, so the two halves of the image are
+            //run through it side by side, which lets the processor work on both at once.  The second
+            //half starts a little early, so that a signature across the middle is found in it.
+            int zEnd=zSize - 1; //a signature that ends on the last byte isn't counted
+            int zMiddle=Math.max(0, zEnd / 2);
+            int zStateA=0;
+            int zStateB=0;
+            for (int i=Math.max(0, zMiddle - ourMaxLength + 1); i<zMiddle; i++) {
+                zStateB=ourTransitions[zStateB | (aImage[i] & 0xFF)];
+            }//end : for i loop
+            for (int i=0, j=zMiddle; j<zEnd; i++, j++) {
+                zStateB=ourTransitions[zStateB | (aImage[j] & 0xFF)];
+                if (zStateB>=ourFirstOutputState) record(zStateB, j, zLater, zLaterCount);
+                if (i<zMiddle) {
+                    zStateA=ourTransitions[zStateA | (aImage[i] & 0xFF)];
+                    if (zStateA>=ourFirstOutputState) {
+                        long zFound=ourOutputs[zStateA >> 8];
+                        while (zFound!=0) {
+                            int s=Long.numberOfTrailingZeros(zFound);
+                            zFound&=zFound - 1;
+                            count(s, i, zHits, zNextStart);
+                        }//end : while
+                    }//end : a signature ends here
+                }//end : first half
+            }//end : for i loop
+            for (int s=0; s<ourSignatures.length; s++) {
+                for (int m=0; m<zLaterCount[s]; m++) {  count(s, zLater[s][m], zHits, zNextStart);  }
+                mySchemes[ourSchemes[s]]|=(zHits[s]>=ourMinHits[s]);
+            }//end : for s loop
+
+            mySuperchip=checkSuperchip(aImage);
+            myE7=checkE7(aImage);
+            myMirrored=((zSize % 2)==0)&&(checkSame(aImage, 0, zSize / 2, zSize / 2)==true);
+        }
+
+        private static void record(int aState, int aEnd, int[][] aLater, int[] aLaterCount) {
+            long zFound=ourOutputs[aState >> 8];
+            while (zFound!=0) {
+                int s=Long.numberOfTrailingZeros(zFound);
+                zFound&=zFound - 1;
+                if (aLaterCount[s]<aLater[s].length) aLater[s][aLaterCount[s]++]=aEnd;
+            }//end : while
+        }
+
+        private static void count(int aSignature, int aEnd, int[] aHits, int[] aNextStart) {
+            int zStart=aEnd - ourSignatures[aSignature].length + 1;
+            if ((aHits[aSignature]<ourMinHits[aSignature])&&(zStart>=aNextStart[aSignature])) {
+                aHits[aSignature]++;
+                aNextStart[aSignature]=aEnd + 2;
+            }//end : counts
+        }
+
+        public boolean isProbablyCV() { return mySchemes[SCHEME_CV]; }
+        public boolean isProbablyE0() { return mySchemes[SCHEME_E0]; }
+        public boolean isProbably3E() { return mySchemes[SCHEME_3E]; }
+        public boolean isProbably3F() { return mySchemes[SCHEME_3F]; }
+        public boolean isProbablyUA() { return mySchemes[SCHEME_UA]; }
+        public boolean isProbablyFE() { return mySchemes[SCHEME_FE]; }
+
+        /**
+         * Returns true if the first 256 bytes of each 4K bank are all the same byte, as they would
+         * be in the (unused) RAM area of a Superchip cart.
+         * @return true if it is probably a Superchip cart
+         */
+        public boolean isProbablySC() { return mySuperchip; }
+
+        /**
+         * Returns true if the image (of at least 16K) has a block of the same byte where the second
+         * 1K of E7 RAM would be, with something different just before or after it.
+         * @return true if it is probably an E7 cart
+         */
+        public boolean isProbablyE7() { return myE7; }
+
+        /**
+         * Returns true if the second half of the image is the same as the first (e.g. a 2K game
+         * in a 4K image).
+         * @return true if the halves are the same
+         */
+        public boolean isMirrored() { return myMirrored; }
+
+        private static boolean checkSuperchip(byte[] aImage) {
+            int zBanks=aImage.length / 4096;
+            for (int i=0; i<zBanks; i++) {
+                byte zFirst=aImage[i * 4096];
+                for (int j=0; j<256; j++) {
+                    if (aImage[(i * 4096) + j]!=zFirst) return false;
+                }//end : for j loop
+            }//end : for i loop
+            return true;
+        }
+
+        private static boolean checkE7(byte[] aImage) {
+            if (aImage.length<0x3A00 + 32) return false;
+            byte zFirst=aImage[0x3800];
+            for (int i=0x3800; i<0x3A00; i++) {
+                if (aImage[i]!=zFirst) return false;
+            }//end : for i loop
+
+            // Something should differ in the 32 bytes before or after it (so that a large
+            // block of unused bytes doesn't count)
+            for (int i=0x3800 - 32; i<0x3800; i++) {
+                if (aImage[i]!=zFirst) return true;
+            }//end : for i loop
+            for (int i=0x3A00; i<0x3A00 + 32; i++) {
+                if (aImage[i]!=zFirst) return true;
+            }//end : for i loop
+            return false;
+        }
+
+        private static boolean checkSame(byte[] aImage, int aIndexA, int aIndexB, int aCount) {
+            for (int i=0; i<aCount; i++) {
+                if (aImage[aIndexA + i]!=aImage[aIndexB + i]) return false;
+            }//end : for i loop
+            return true;
+        }
+
+        public String toString() {
+            return "CV=" + isProbablyCV() + " E0=" + isProbablyE0() + " 3E=" + isProbably3E() + " 3F=" + isProbably3F()
+                + " UA=" + isProbablyUA() + " FE=" + isProbablyFE() + " SC=" + isProbablySC() + " E7=" + isProbablyE7()
+                + " mirrored=" + isMirrored();
+        }
+    }//END INNER CLASS
+
+}//CLASS END
@@ -81,6 +81,21 @@ import jstella.j6507.*;
      * that they need to adjust to the CPU cycle count returning to zero.
      */
     public void systemCyclesReset();
+    /**
+     * Writes the device's state (whatever changes while a game is being played...registers,
+     * RAM, the current bank, etc.) to the given output, so that it can be put back later
+     * by loadState(...).  The device itself (e.g. a cartridge's ROM image) isn't included,
+     * so the state can only be loaded into the same kind of device, holding the same game.
+     * @param aOut where to write the state
+     * @throws java.io.IOException if the output throws one
+     */
+    public void saveState(java.io.DataOutput aOut) throws java.io.IOException;
+    /**
+     * Puts back a state written by saveState(...).
+     * @param aIn where to read the state from
+     * @throws java.io.IOException if the input throws one (e.g. it ends too soon)
+     */
+    public void loadState(java.io.DataInput aIn) throws java.io.IOException;
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     
 }
@@ -842,6 +842,27 @@ public class JSAudio  {
         }//end : sound is enabled
     }
     
+    /**
+     * Used instead of doFrameAudio(...) for a frame that isn't to be heard (e.g. when the
+     * emulator is running faster than real time).  The frame's register pokes are applied,
+     * so the registers are right when the sound is played again, but no samples are
+     * created or sent to the audio system.
+     * @param aCycles the current CPU system cycle count
+     */
+    protected synchronized void skipFrameAudio(int aCycles) {
+        if (isSoundEnabled()==true) {
+            addPokeToQueue(true, aCycles, 0, 0); //indicates the end of a frame
+            boolean zEndOfFrame=false;
+            while (zEndOfFrame==false) {
+                AudioRegisterPoke zRW=myPokeQueue.poll();
+                if ((zRW!=null)&&(zRW.myAddr!=0)) setAudioRegister((char)zRW.myAddr, zRW.myByteValue);
+                AudioRegisterPoke zNextARP=myPokeQueue.peek();
+                if ((zNextARP==null)||(zNextARP.myFrameEnd==true)) zEndOfFrame=true;
+            }//end : while end of frame is false
+            myCyclePool=0;
+        }//end : sound is enabled
+    }
+    
     private static int roundToEven(int aNumber)
     {
         //return (aNumber  / 2) * 2; 
@@ -82,7 +82,6 @@ package jstella.core;
 
 
 import java.io.*;
-import javax.swing.*;
 
 import jstella.cart.Cartridge;
 import jstella.j6507.*;
@@ -129,6 +128,12 @@ import static jstella.core.JSConstants.*;
  * So that's the emulation in a nutshell.
  *     
  * </p>
+ * <p>
+ * A console can also be created headless (see JSConsole(IfcConsoleClient, boolean)), e.g. to
+ * run games on a server.  A headless console has no JSAudio, and its video is a plain
+ * JSFrameBuffer, which only keeps the frame buffers of palette indices that the TIA draws;
+ * nothing is painted or played, and no AWT or Java Sound class is used.
+ * </p>
  * @author Bradford W. Mott and the Stella team (original)
  * J.L. Allen (Java translation)
  */
@@ -144,6 +149,26 @@ public class JSConsole implements java.io.Serializable {
     
     private final static int TRASH_FRAMES=60; //used in detection of display height/display type
     
+    // Input bits for stepFrames(...) : one int per frame.  A set bit means pressed/down.
+    public final static int INPUT_LEFT_UP=1 << 0;
+    public final static int INPUT_LEFT_DOWN=1 << 1;
+    public final static int INPUT_LEFT_LEFT=1 << 2;
+    public final static int INPUT_LEFT_RIGHT=1 << 3;
+    public final static int INPUT_LEFT_BUTTON=1 << 4;
+    public final static int INPUT_RIGHT_UP=1 << 8;
+    public final static int INPUT_RIGHT_DOWN=1 << 9;
+    public final static int INPUT_RIGHT_LEFT=1 << 10;
+    public final static int INPUT_RIGHT_RIGHT=1 << 11;
+    public final static int INPUT_RIGHT_BUTTON=1 << 12;
+    public final static int INPUT_SWITCH_SHIFT=16; //the console switches (ConsoleSwitch bit masks), shifted left by this
+    public final static int INPUT_RESET=ConsoleSwitch.SWITCH_RESET.getBitMask() << INPUT_SWITCH_SHIFT;
+    public final static int INPUT_SELECT=ConsoleSwitch.SWITCH_SELECT.getBitMask() << INPUT_SWITCH_SHIFT;
+    public final static int INPUT_BW=ConsoleSwitch.SWITCH_BW.getBitMask() << INPUT_SWITCH_SHIFT;
+    public final static int INPUT_DIFFICULTY_P0=ConsoleSwitch.SWITCH_DIFFICULTY_P0.getBitMask() << INPUT_SWITCH_SHIFT;
+    public final static int INPUT_DIFFICULTY_P1=ConsoleSwitch.SWITCH_DIFFICULTY_P1.getBitMask() << INPUT_SWITCH_SHIFT;
+    
+    private final static int[] INPUT_JOYSTICK_PINS={JSController.JOYSTICK_UP, JSController.JOYSTICK_DOWN, JSController.JOYSTICK_LEFT, JSController.JOYSTICK_RIGHT, JSController.JOYSTICK_BUTTON};
+    
     private int myFrameRate=60;
     private DisplayFormat myDisplayFormat=DisplayFormat.NTSC;
     
@@ -166,8 +191,16 @@ public class JSConsole implements java.io.Serializable {
     private jstella.core.JSSystem mySystem=null;
     private Cartridge myCart=null;
     private JSRiot myRiot=null;
-    private JSVideo myVideo=null;
+    private JSFrameBuffer myVideo=null;
     private transient JSAudio myAudio=null; //transient - therefore, not stored in a "saved game"
+    private boolean myHeadless=false;
+    
+    // Run-ahead (see setRunAheadFrames(...)) - not part of a saved game
+    private transient int myRunAheadFrames=0;
+    private transient JSStateBuffer myRunAheadState=null;
+    private transient boolean myAudioSuspended=false;
+    
+    private transient JSDisplayCache myDisplayCache=null;
     
     
    
@@ -183,6 +216,17 @@ public class JSConsole implements java.io.Serializable {
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     public JSConsole(IfcConsoleClient aConsoleClient) {
+        this(aConsoleClient, false);
+    }
+    
+    /**
+     * Creates a console.
+     * @param aConsoleClient the client (GUI), or null
+     * @param aHeadless true for a console with no audio, and whose video only keeps the frame
+     * buffers (see JSFrameBuffer)...i.e. one that doesn't need a display or a sound card
+     */
+    public JSConsole(IfcConsoleClient aConsoleClient, boolean aHeadless) {
+        myHeadless=aHeadless;
         setConsoleClient(aConsoleClient);
         //   myUserPaletteDefined=false;
         
@@ -221,12 +265,13 @@ public class JSConsole implements java.io.Serializable {
         double zVersion=in.readDouble(); //Read the manually written JStella version number from stream
        //TODO : make sure version being read is not GREATER than version being used
         in.defaultReadObject();
+        if (myCart!=null) myCart.shareLoadedImage(); // use the same image as any other console running this game
         
         Object zAudioArrayObj=in.readUnshared();
        
         
         initializeAudio(); //myAudio is transient, so this must create a new one when it loads
-         if (zAudioArrayObj instanceof int[])
+         if ((myAudio!=null)&&(zAudioArrayObj instanceof int[]))
          {
             int[] zAudioRegisters=(int[])zAudioArrayObj;
             myAudio.setAudioRegisterData(zAudioRegisters);
@@ -240,7 +285,7 @@ public class JSConsole implements java.io.Serializable {
     {
       out.writeDouble(JSConstants.JSTELLA_VERSION_NUMBER);   //First, manually write JStella version number to stream
       out.defaultWriteObject();
-      int[] zAudioRegisters=myAudio.getAudioRegisterData();
+      int[] zAudioRegisters=(myAudio!=null) ? myAudio.getAudioRegisterData() : null;
       out.writeUnshared(zAudioRegisters);
     //  System.out.println("debug : writing audio data- " + zAudioRegisters[1] + ", " + zAudioRegisters[3] + "," + zAudioRegisters[5] );
      } 
@@ -254,6 +299,7 @@ public class JSConsole implements java.io.Serializable {
      * will free up the audio resources that the audio object has reserved.
      */
     public void destroy() {
+        if (myVideo!=null) myVideo.setThreadedPresentation(false);
         if (myAudio!=null) {
             myAudio.close();
             myAudio=null;
@@ -351,7 +397,7 @@ public class JSConsole implements java.io.Serializable {
     
     private void adjustBackBuffer()
     {
-        getVideo().adjustBackBuffer(JSVideo.DEFAULT_WIDTH, myDisplayHeight);
+        getVideo().adjustBackBuffer(JSFrameBuffer.DEFAULT_WIDTH, myDisplayHeight);
     }
     
    
@@ -367,9 +413,10 @@ public class JSConsole implements java.io.Serializable {
     public JSController getController(Jack jack) {return (jack == Jack.LEFT) ? myControllers[0] : myControllers[1];}
     
     public JSTIA getTIA() { return myTIA; }
-    public JSVideo getVideo() {    return myVideo;  }
+    public JSFrameBuffer getVideo() {    return myVideo;  }
     public JSAudio getAudio()   {   return myAudio;  }
     public jstella.core.JSSystem getSystem()  { return mySystem; }
+    public boolean isHeadless() { return myHeadless; }
     public Cartridge getCartridge()  { return myCart; }
     public JSRiot getRiot() { return myRiot; }
     
@@ -387,7 +434,7 @@ public class JSConsole implements java.io.Serializable {
     public void setNominalFrameRate(int aFrameRate)
     {
         myFrameRate=aFrameRate;
-        getAudio().setNominalDisplayFrameRate(aFrameRate);
+        if (getAudio()!=null) getAudio().setNominalDisplayFrameRate(aFrameRate);
     }
     
     
@@ -416,7 +463,7 @@ public class JSConsole implements java.io.Serializable {
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     
     private void initializeVideo() {
-        if(myVideo==null) myVideo = new JSVideo(this);
+        if(myVideo==null) myVideo = (myHeadless==true) ? new JSFrameBuffer(this) : new JSVideo(this);
         
         //setColorLossPalette(false);
         getVideo().initialize();
@@ -425,6 +472,7 @@ public class JSConsole implements java.io.Serializable {
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     private  void initializeAudio() {
+        if (myHeadless==true) return; //no audio at all
         if (myAudio==null) myAudio = new JSAudio(this);
         else myAudio.close(); //Closes any open audio resources
         
@@ -466,10 +514,21 @@ public class JSConsole implements java.io.Serializable {
         mySystem.attach(myCart);
         mySystem.reset();
         //myDisplayFormat = DEFAULT_DISPLAY_FORMAT;//myProperties.get(Properties.PropertyType.Display_Format);
-        detectDisplayFormat();
-        
-        if (aDisplayHeight<=0) detectDisplayHeight();
-        else myDisplayHeight=aDisplayHeight;
+        JSDisplayCache.Entry zCached=(myDisplayCache!=null) ? myDisplayCache.get(myCart.getMD5()) : null;
+        if (zCached!=null) {
+            setDisplayFormat(zCached.myDisplayFormat);
+            myYStart=zCached.myYStart;
+            myDisplayHeight=(aDisplayHeight<=0) ? zCached.myDisplayHeight : aDisplayHeight;
+        }//end : detected before
+        else {
+            detectDisplayFormat();
+            
+            if (aDisplayHeight<=0) {
+                detectDisplayHeight();
+                if (myDisplayCache!=null) myDisplayCache.put(myCart.getMD5(), new JSDisplayCache.Entry(myDisplayFormat, myYStart, myDisplayHeight));
+            }//end : detecting the height
+            else myDisplayHeight=aDisplayHeight;
+        }//end : not detected before
         adjustBackBuffer();
         
         
@@ -484,6 +543,35 @@ public class JSConsole implements java.io.Serializable {
     
     
     
+    /**
+     * Puts in a cartridge from a saved game (see JSSavedGame).  Unlike insertCartridge(...),
+     * nothing is detected, since the display settings come from the saved game, and the state
+     * of every device is about to be loaded.
+     * @param aCart the cartridge (possibly the one already in the console)
+     * @param aDisplayFormat the display format
+     * @param aYStart the first scan line displayed
+     * @param aDisplayHeight the number of scan lines displayed
+     */
+    protected void restoreCartridge(Cartridge aCart, DisplayFormat aDisplayFormat, int aYStart, int aDisplayHeight) {
+        if (myCart!=aCart) {
+            if (myCart!=null) {
+                mySystem.unattach(myCart);
+                reinstallCore();
+            }//end : previous cartridge is being replaced
+            myCart=aCart;
+            myCart.setConsole(this);
+            mySystem.attach(myCart);
+        }//end : different cartridge
+        
+        myVideo.clearBackBuffer();
+        myVideo.clearBuffers();
+        setDisplayFormat(aDisplayFormat);
+        myYStart=aYStart;
+        myDisplayHeight=aDisplayHeight;
+        adjustBackBuffer();
+        setTelevisionMode(TELEVISION_MODE_GAME);
+    }
+    
     public static Cartridge createCartridge(java.io.InputStream aInputStream, String aCartridgeType) throws JSException {
          Cartridge zCart=null;
         try{
@@ -549,6 +637,19 @@ public class JSConsole implements java.io.Serializable {
      * @throws jstella.core.JSException
      */
     public synchronized void doFrame() throws JSException {
+        doFrame(true, true);
+    }
+    
+    /**
+     * Does what doFrame() does, but can leave out the painting and/or the sound (e.g. when
+     * running faster than real time, where only some of the frames are shown).  The frame
+     * itself is always emulated in full.
+     * @param aDisplayVideo true to paint the frame (see JSVideo.doFrameVideo())
+     * @param aPlayAudio true to play the frame's sound; if false, the sound registers are
+     * still updated, but nothing is heard
+     * @throws jstella.core.JSException
+     */
+    public synchronized void doFrame(boolean aDisplayVideo, boolean aPlayAudio) throws JSException {
         //profiling note - Sep 3 2007 - it seems that a lot of times, whenever doFrame() lasts long (e.g. 59 milliseconds), that 
         //  the processFrame is taking up most of the time
         
@@ -557,13 +658,14 @@ public class JSConsole implements java.io.Serializable {
          
         if (getTelevisionMode()==TELEVISION_MODE_GAME)
         {
-            if (myCart!=null) 
+            if ((myCart!=null)&&(myRunAheadFrames>0)&&(aDisplayVideo==true)) doRunAheadFrame(aPlayAudio);
+            else if (myCart!=null) 
             {
           //   long zTimeA=System.nanoTime();
             myTIA.processFrame();    
          //   long zTimeC=System.nanoTime();
-            myVideo.doFrameVideo();
-            myAudio.doFrameAudio(mySystem.getCycles(), getNominalFrameRate());
+            if (aDisplayVideo==true) myVideo.doFrameVideo();
+            doFrameAudio(aPlayAudio);
           //    long zTimeB=System.nanoTime();
    /*            //if (JSConsole.DEBUG_MODE_ON==true)
          {
@@ -579,11 +681,11 @@ public class JSConsole implements java.io.Serializable {
             }//end : cartridge loaded
            
         }
-        else if (getTelevisionMode()==TELEVISION_MODE_SNOW)
+        else if ((getTelevisionMode()==TELEVISION_MODE_SNOW)&&(aDisplayVideo==true))
         {
             myVideo.doSnow();
         }//end : not snow
-        else if (getTelevisionMode()==TELEVISION_MODE_TEST_PATTERN)
+        else if ((getTelevisionMode()==TELEVISION_MODE_TEST_PATTERN)&&(aDisplayVideo==true))
         {
            myVideo.doTestPattern();  
         }//end : test pattern
@@ -596,6 +698,254 @@ public class JSConsole implements java.io.Serializable {
         
     }
     
+    private void doFrameAudio(boolean aPlayAudio) {
+        if (myAudio!=null) {
+            if (aPlayAudio==true) myAudio.doFrameAudio(mySystem.getCycles(), getNominalFrameRate());
+            else myAudio.skipFrameAudio(mySystem.getCycles());
+        }//end : audio not null
+    }
+    
+    /**
+     * Runs one frame in run-ahead mode : the frame itself is run (and heard), then the state
+     * is saved, the next few frames are run with the same input and no sound, the last of them
+     * is displayed, and the state is put back to where it was after the first frame.  What is
+     * seen is thus a few frames ahead of the game, so the player sees the effect of an input
+     * that many frames sooner.  (This only works for games that don't already take several
+     * frames to respond to an input, which most Atari games don't.)
+     */
+    private void doRunAheadFrame(boolean aPlayAudio) throws JSException {
+        //STEP 1 : the real frame
+        myTIA.processFrame();
+        doFrameAudio(aPlayAudio);
+        
+        //STEP 2 : remember where it left off
+        if (myRunAheadState==null) myRunAheadState=new JSStateBuffer();
+        myRunAheadState.clear();
+        try {
+            saveState(myRunAheadState);
+        }//end : try
+        catch (IOException e) {
+            throw new JSException(JSException.ExceptionType.UNSPECIFIED, "Could not save the state for run-ahead : " + e.getMessage());
+        }
+        
+        //STEP 3 : run ahead, and show the last frame
+        myAudioSuspended=true;
+        try {
+            for (int i=0; i<myRunAheadFrames; i++) {  myTIA.processFrame();  }
+            myVideo.doFrameVideo();
+        }//end : try
+        finally {
+            myAudioSuspended=false;
+            
+            //STEP 4 : go back (the input isn't restored, since it may have changed in the meantime)
+            myRunAheadState.rewind();
+            try {
+                loadState(myRunAheadState, false);
+            }//end : try
+            catch (IOException e) {
+                throw new JSException(JSException.ExceptionType.UNSPECIFIED, "Could not restore the state after run-ahead : " + e.getMessage());
+            }
+        }//end : finally
+    }
+    
+    /**
+     * Sets the cache of what was detected for each ROM (see JSDisplayCache), so that inserting
+     * a cartridge that has been inserted before doesn't have to detect the display format and height again.
+     * @param aDisplayCache the cache, or null to always detect them
+     */
+    public void setDisplayCache(JSDisplayCache aDisplayCache) {
+        myDisplayCache=aDisplayCache;
+    }
+    
+    public JSDisplayCache getDisplayCache() {
+        return myDisplayCache;
+    }
+    
+    /**
+     * Sets the number of frames to run ahead (see doRunAheadFrame()).  Each displayed frame
+     * then costs that many more frames of emulation, plus saving and restoring the state.
+     * @param aFrames the number of frames, or 0 to turn run-ahead off
+     */
+    public void setRunAheadFrames(int aFrames) {
+        myRunAheadFrames=Math.max(0, aFrames);
+    }
+    
+    public int getRunAheadFrames() {
+        return myRunAheadFrames;
+    }
+    
+    /**
+     * Returns true while frames are being run that aren't to be heard (e.g. while running ahead).
+     * The TIA doesn't give the audio anything during that time.
+     * @return true if the audio is suspended
+     */
+    protected boolean isAudioSuspended() {
+        return myAudioSuspended;
+    }
+    
+    /**
+     * Writes the state of the emulation (the CPU, the TIA, the RIOT, the cartridge, the
+     * controllers, and the switches) in a compact binary form.  Unlike serializing the console,
+     * this doesn't include the console itself (e.g. the ROM image, the display settings), so it can
+     * only be put back (see loadState(...)) into a console with the same cartridge inserted...but
+     * it is fast enough to do every frame, especially to a JSStateBuffer.
+     * @param aOut where to write the state
+     * @throws java.io.IOException if aOut throws one
+     */
+    public synchronized void saveState(DataOutput aOut) throws IOException {
+        aOut.writeBoolean(myCart!=null);
+        mySystem.saveState(aOut);
+        myTIA.saveState(aOut);
+        myRiot.saveState(aOut);
+        if (myCart!=null) myCart.saveState(aOut);
+        //The input goes last, so that it can be left out when loading (see doRunAheadFrame())
+        aOut.writeInt(mySwitches);
+        myControllers[0].saveState(aOut);
+        myControllers[1].saveState(aOut);
+    }
+    
+    /**
+     * Puts back a state written by saveState(...).
+     * @param aIn where to read the state from
+     * @throws java.io.IOException if aIn throws one, or if the state was saved with (or without)
+     * a cartridge when this console doesn't have (or has) one
+     */
+    public synchronized void loadState(DataInput aIn) throws IOException {
+        loadState(aIn, true);
+    }
+    
+    private void loadState(DataInput aIn, boolean aIncludeInput) throws IOException {
+        boolean zHasCart=aIn.readBoolean();
+        if (zHasCart!=(myCart!=null)) throw new IOException("The saved state does not match the cartridge");
+        mySystem.loadState(aIn);
+        myTIA.loadState(aIn);
+        myRiot.loadState(aIn);
+        if (myCart!=null) myCart.loadState(aIn);
+        if (aIncludeInput==true) {
+            mySwitches=aIn.readInt();
+            myControllers[0].loadState(aIn);
+            myControllers[1].loadState(aIn);
+        }//end : including input
+    }
+    
+    /**
+     * Runs a number of frames without painting anything, for automated play (e.g. a
+     * program playing the game).  This does what doFrame() does, except that nothing is
+     * drawn to the back buffer or the canvas; instead, each frame's palette indices (see
+     * JSFrameBuffer) can be copied into the caller's array.
+     * <p>
+     * Before each frame, the joysticks and the console switches are set according to that
+     * frame's input (see the INPUT_ constants...e.g. INPUT_LEFT_UP | INPUT_LEFT_BUTTON).  Paddles
+     * aren't included, but can be set on the controllers (see getController(...)) between calls.
+     * Nothing here depends on the clock, so the same console state and the same inputs
+     * always give the same frames.
+     * </p>
+     * @param aFrames the number of frames to run
+     * @param aInputs the input for each frame; if null, or shorter than aFrames, the inputs
+     * are left as they are for the frames it doesn't cover
+     * @param aFrameOut if not null, receives the frames, one after the other, getFrameSize() bytes each
+     * @param aRAMOut if not null, receives the 128 bytes of RIOT RAM after the last frame
+     * @return the hash of the last frame (see hashFrame(...)), or 0 if aFrames is 0
+     * @throws jstella.core.JSException if there is no cartridge, or if the emulation throws one
+     */
+    public synchronized long stepFrames(int aFrames, int[] aInputs, byte[] aFrameOut, byte[] aRAMOut) throws JSException {
+        if (myCart==null) throw new JSException(JSException.ExceptionType.UNSPECIFIED, "No cartridge has been inserted");
+        int zFrameSize=getFrameSize();
+        long zReturn=0;
+        for (int i=0; i<aFrames; i++) {
+            if ((aInputs!=null)&&(i<aInputs.length)) applyInput(aInputs[i]);
+            myTIA.processFrame();
+            doFrameAudio(false); //applies the frame's audio register pokes, without making any samples
+            int[] zFrame=myVideo.getCurrentFrameBuffer();
+            if (aFrameOut!=null) {
+                int zBase=i * zFrameSize;
+                for (int p=0; p<zFrameSize; p++) {  aFrameOut[zBase + p]=(byte)zFrame[p];  }
+            }//end : copying frame
+            if (i==aFrames - 1) zReturn=hashFrame(zFrame, zFrameSize);
+        }//end : for i loop
+        if (aRAMOut!=null) myRiot.copyRAM(aRAMOut, 0);
+        return zReturn;
+    }
+    
+    /**
+     * Makes an independent copy of this console, e.g. for a program that tries out different
+     * inputs from the same point in a game.  The copy is a headless console (with no client),
+     * in exactly the state that this one is in, with the same frame in its frame buffers; from
+     * then on, the two can be run separately (even on different threads).
+     * <p>
+     * This is much faster than serializing the console and reading it back : the copy's
+     * cartridge shares this one's ROM image (see ROMStore), and only the state that changes as
+     * the game is played is copied (see saveState(...)), which is a few hundred bytes for most
+     * cartridges.  The audio is never started, since a headless console doesn't have any.
+     * </p>
+     * @return the copy
+     * @throws jstella.core.JSException if there is no cartridge
+     */
+    public synchronized JSConsole fork() throws JSException {
+        if (myCart==null) throw new JSException(JSException.ExceptionType.UNSPECIFIED, "No cartridge has been inserted");
+        JSConsole zReturn=new JSConsole(null, true);
+        zReturn.mySystem.getCPU().setExecutionCore(mySystem.getCPU().getExecutionCore());
+        zReturn.myCart=myCart.fork();
+        zReturn.myCart.setConsole(zReturn);
+        zReturn.mySystem.attach(zReturn.myCart);
+        //Nothing is reset or cleared, since the state is copied over all of it (and the frame buffers are new)
+        zReturn.myDisplayFormat=myDisplayFormat;
+        zReturn.myFrameRate=myFrameRate;
+        zReturn.myDisplayWidth=myDisplayWidth;
+        zReturn.myDisplayHeight=myDisplayHeight;
+        zReturn.myYStart=myYStart;
+        zReturn.myTelevisionMode=myTelevisionMode;
+        
+        JSStateBuffer zState=new JSStateBuffer();
+        try {
+            saveState(zState);
+            zReturn.loadState(zState);
+        }//end : try
+        catch (IOException e) {
+            throw new JSException(JSException.ExceptionType.UNSPECIFIED, "Could not copy the console's state : " + e.getMessage());
+        }
+        
+        int zFrameSize=Math.min(getFrameSize(), JSFrameBuffer.FRAME_BUFFER_SIZE);
+        System.arraycopy(myVideo.getCurrentFrameBuffer(), 0, zReturn.myVideo.getCurrentFrameBuffer(), 0, zFrameSize);
+        System.arraycopy(myVideo.getPreviousFrameBuffer(), 0, zReturn.myVideo.getPreviousFrameBuffer(), 0, zFrameSize);
+        return zReturn;
+    }
+    
+    /**
+     * Returns the number of pixels (and so bytes, in stepFrames(...)) in a frame.
+     * @return the display width times the display height
+     */
+    public int getFrameSize() {
+        return getDisplayWidth() * getDisplayHeight();
+    }
+    
+    /**
+     * Sets the joysticks and the console switches from an input (see stepFrames(...)).
+     * @param aInput the input bits
+     */
+    public void applyInput(int aInput) {
+        for (int i=0; i<INPUT_JOYSTICK_PINS.length; i++) {
+            myControllers[0].setJoystickState(INPUT_JOYSTICK_PINS[i], (aInput & (1 << i))!=0);
+            myControllers[1].setJoystickState(INPUT_JOYSTICK_PINS[i], (aInput & (1 << (i + 8)))!=0);
+        }//end : for i loop
+        mySwitches=0xFF & ~(aInput >>> INPUT_SWITCH_SHIFT);
+    }
+    
+    /**
+     * Calculates a hash (64 bit FNV-1a) of the palette indices of a frame.
+     * @param aFrame a frame buffer
+     * @param aFrameSize the number of pixels to hash
+     * @return the hash
+     */
+    public static long hashFrame(int[] aFrame, int aFrameSize) {
+        long zHash=0xcbf29ce484222325L;
+        for (int i=0; i<aFrameSize; i++) {
+            zHash ^= (aFrame[i] & 0xFF);
+            zHash *= 0x100000001b3L;
+        }//end : for i loop
+        return zHash;
+    }
+    
     public synchronized void updateVideoFrame()
     {
         if (myVideo!=null)
@@ -621,6 +971,14 @@ public class JSConsole implements java.io.Serializable {
         return mySwitches;
     }
     
+    /**
+     * Sets all of the switches at once (e.g. from a saved game).
+     * @param aSwitches the switches, as returned by readSwitches()
+     */
+    protected void restoreSwitches(int aSwitches) {
+        mySwitches=aSwitches;
+    }
+    
     
     
     
@@ -666,8 +1024,26 @@ public class JSConsole implements java.io.Serializable {
         return getVideo().getPhosphorEnabled();
     }
     
+    /**
+     * Turns threaded presentation on or off.  When it is on, doFrame() only hands the
+     * finished frame to a presentation thread, which turns it into colors and paints it
+     * while the next frame is being emulated (see JSVideo).  It does nothing on a
+     * headless console.
+     * @param aEnable true to paint the frames on a thread of their own
+     */
+    public void setThreadedPresentation(boolean aEnable)
+    {
+        getVideo().setThreadedPresentation(aEnable);
+    }
+    
+    public boolean isThreadedPresentation()
+    {
+        return getVideo().isThreadedPresentation();
+    }
+    
     public void setStereoSound(boolean aEnable)
     {
+        if (getAudio()==null) return;
         if (aEnable==true) getAudio().setChannelNumber(2);
         else getAudio().setChannelNumber(1);
         
@@ -675,17 +1051,17 @@ public class JSConsole implements java.io.Serializable {
     
     public boolean isStereoSound()
     {
-        return (getAudio().getChannelNumber()==2);
+        return (getAudio()!=null)&&(getAudio().getChannelNumber()==2);
     }
     
     public void setSoundEnabled(boolean aEnabled)
     {
-        getAudio().setSoundEnabled(aEnabled);
+        if (getAudio()!=null) getAudio().setSoundEnabled(aEnabled);
     }
     
     public boolean isSoundEnabled()
     {
-        return getAudio().isSoundEnabled();
+        return (getAudio()!=null)&&(getAudio().isSoundEnabled());
     }
     
     public void grayCurrentFrame()
@@ -693,7 +1069,7 @@ public class JSConsole implements java.io.Serializable {
         getVideo().grayCurrentFrame();
     }
     
-    public void pauseAudio() { getAudio().pauseAudio(); }
+    public void pauseAudio() { if (getAudio()!=null) getAudio().pauseAudio(); }
     
     
  
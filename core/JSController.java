@@ -9,7 +9,6 @@
 
 package jstella.core;
 
-import java.awt.event.ActionEvent;
 
 import static jstella.core.JSConstants.*;
 
@@ -102,6 +101,24 @@ public class JSController implements java.io.Serializable{
     
  
     
+    /**
+     * Writes the value of each pin (see JSConsole.saveState(...)).
+     * @param aOut where to write them
+     * @throws java.io.IOException if the output throws one
+     */
+    public void saveState(java.io.DataOutput aOut) throws java.io.IOException {
+        for (int i=0; i<myPinValue.length; i++) {  aOut.writeInt(myPinValue[i]);  }
+    }
+    
+    /**
+     * Puts back the pin values written by saveState(...).
+     * @param aIn where to read them from
+     * @throws java.io.IOException if the input throws one
+     */
+    public void loadState(java.io.DataInput aIn) throws java.io.IOException {
+        for (int i=0; i<myPinValue.length; i++) {  myPinValue[i]=aIn.readInt();  }
+    }
+    
     public void changeControllerState(int aControlEventType, boolean aOn) {
         
         int zValue=(aOn) ? 0 : 1;
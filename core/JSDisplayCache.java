@@ -0,0 +1,172 @@
+/*
+ * JSDisplayCache.java
+ *
+ * To change this template, choose Tools | Template Manager
+ * and open the template in the editor.
+ */
+
+package jstella.core;
+
+import java.io.*;
+import java.util.*;
+
+import static jstella.core.JSConstants.*;
+
+/**
+ * Remembers, on disk, the display format, the y start, and the display height that were
+ * detected for each ROM (by its MD5), so that the next time the ROM is loaded, the console
+ * doesn't have to run the 100 or so frames it takes to detect them (see JSConsole.insertCartridge(...)).
+ * <p>
+ * The file is a text file, like the configuration file : a version line, and then one
+ * line per ROM, e.g. "f0a6e99f5875891246c3dbecbf2d2cea=NTSC,34,192".  It is read the first
+ * time it is needed, and written again whenever a new ROM is added.  If it can't be read,
+ * or was written by a version of JStella that detected things differently, or a line
+ * doesn't make sense, the entries in question are ignored (and detection runs as usual).
+ * </p>
+ * @author J.L. Allen
+ */
+public class JSDisplayCache {
+
+    /** Raise this whenever the detection changes, so that what the old detection found is thrown out. */
+    private final static int CACHE_VERSION=1;
+    private final static String VERSION_KEY="version";
+
+    private final File myFile;
+    private final Map<String, Entry> myEntries=new HashMap<String, Entry>();
+    private boolean myLoaded=false;
+
+    /**
+     * What was detected for a ROM.
+     */
+    public static class Entry {
+        public final DisplayFormat myDisplayFormat;
+        public final int myYStart;
+        public final int myDisplayHeight;
+
+        public Entry(DisplayFormat aDisplayFormat, int aYStart, int aDisplayHeight) {
+            myDisplayFormat=aDisplayFormat;
+            myYStart=aYStart;
+            myDisplayHeight=aDisplayHeight;
+        }
+    }//END INNER CLASS
+
+
+    /**
+     * Creates a display cache.
+     * @param aFile the file to keep it in (it is created when the first entry is added)
+     */
+    public JSDisplayCache(File aFile) {
+        myFile=aFile;
+    }
+
+    /**
+     * Returns what was detected for the given ROM.
+     * @param aMD5 the ROM's MD5 (see Cartridge.getMD5())
+     * @return the entry, or null if the ROM isn't in the cache
+     */
+    public synchronized Entry get(String aMD5) {
+        if (myLoaded==false) load();
+        return (aMD5!=null) ? myEntries.get(aMD5) : null;
+    }
+
+    /**
+     * Remembers what was detected for the given ROM, and saves the cache.
+     * @param aMD5 the ROM's MD5
+     * @param aEntry what was detected
+     */
+    public synchronized void put(String aMD5, Entry aEntry) {
+        if ((aMD5==null)||(aMD5.length()==0)||(isValid(aEntry)==false)) return;
+        if (myLoaded==false) load();
+        myEntries.put(aMD5, aEntry);
+        save();
+    }
+
+    /**
+     * Remembers what was detected for several ROMs at once, and saves the cache once (rather
+     * than once per ROM, as put(...) would).
+     * @param aEntries the entries, by MD5
+     */
+    public synchronized void putAll(Map<String, Entry> aEntries) {
+        if (myLoaded==false) load();
+        boolean zChanged=false;
+        for (Map.Entry<String, Entry> zEntry : aEntries.entrySet()) {
+            if ((zEntry.getKey()==null)||(zEntry.getKey().length()==0)||(isValid(zEntry.getValue())==false)) continue;
+            myEntries.put(zEntry.getKey(), zEntry.getValue());
+            zChanged=true;
+        }//end : for
+        if (zChanged==true) save();
+    }
+
+    /**
+     * Forgets every entry, and deletes the file.
+     */
+    public synchronized void clear() {
+        myEntries.clear();
+        myLoaded=true;
+        if (myFile.exists()==true) myFile.delete();
+    }
+
+    private static boolean isValid(Entry aEntry) {
+        return (aEntry!=null)&&(aEntry.myDisplayFormat!=null)
+            &&(aEntry.myYStart>=0)&&(aEntry.myYStart<FRAME_Y_MAX)
+            &&(aEntry.myDisplayHeight>=FRAME_Y_MIN)&&(aEntry.myDisplayHeight<=FRAME_Y_MAX);
+    }
+
+    private void load() {
+        myLoaded=true;
+        if (myFile.exists()==false) return;
+        try {
+            BufferedReader zBR=new BufferedReader(new FileReader(myFile));
+            try {
+                String zLine=zBR.readLine();
+                if ((zLine==null)||(zLine.equals(VERSION_KEY + "=" + CACHE_VERSION)==false)) return; //another version...start over
+                while ((zLine=zBR.readLine())!=null) {
+                    Entry zEntry=parseEntry(zLine);
+                    if (zEntry!=null) myEntries.put(zLine.substring(0, zLine.indexOf('=')), zEntry);
+                }//end : while
+            }//end : try
+            finally {
+                zBR.close();
+            }
+        }//end : try
+        catch (IOException e) {
+            System.out.println("JStella : could not read the display cache (" + e.getMessage() + ")");
+        }
+    }
+
+    private static Entry parseEntry(String aLine) {
+        int zEqualIndex=aLine.indexOf('=');
+        if (zEqualIndex<=0) return null;
+        String[] zValues=aLine.substring(zEqualIndex + 1).split(",");
+        if (zValues.length!=3) return null;
+        try {
+            Entry zReturn=new Entry(DisplayFormat.valueOf(zValues[0].trim()), Integer.parseInt(zValues[1].trim()), Integer.parseInt(zValues[2].trim()));
+            return (isValid(zReturn)==true) ? zReturn : null;
+        }//end : try
+        catch (IllegalArgumentException e) {
+            return null; //(NumberFormatException is an IllegalArgumentException)
+        }
+    }
+
+    private void save() {
+        try {
+            JSFileReplacer.replace(myFile, new JSFileReplacer.IfcContent() {
+                public void write(OutputStream aOut) throws IOException {
+                    BufferedWriter zBW=new BufferedWriter(new OutputStreamWriter(aOut));
+                    zBW.write(VERSION_KEY + "=" + CACHE_VERSION);
+                    zBW.newLine();
+                    for (Map.Entry<String, Entry> zEntry : myEntries.entrySet()) {
+                        Entry zValue=zEntry.getValue();
+                        zBW.write(zEntry.getKey() + "=" + zValue.myDisplayFormat.name() + "," + zValue.myYStart + "," + zValue.myDisplayHeight);
+                        zBW.newLine();
+                    }//end : for
+                    zBW.flush();
+                }
+            });
+        }//end : try
+        catch (IOException e) {
+            System.out.println("JStella : could not save the display cache (" + e.getMessage() + ")");
+        }
+    }
+
+}//CLASS END
@@ -0,0 +1,59 @@
+/*
+ * JSFileReplacer.java
+ *
+ * To change this template, choose Tools | Template Manager
+ * and open the template in the editor.
+ */
+
+package jstella.core;
+
+import java.io.*;
+
+/**
+ * Writes a file by way of a temporary file beside it (the file's name plus ".tmp"), which
+ * then replaces the old file all at once, so that a half-written file is never read (e.g.
+ * if JStella is stopped in the middle of writing it).  This is used for the files that
+ * JStella keeps for itself, such as the display cache and the ROM library's index.
+ * @author J.L. Allen
+ */
+public final class JSFileReplacer {
+
+    private final static String TEMP_SUFFIX=".tmp";
+
+    /**
+     * What goes in the file.
+     */
+    public interface IfcContent {
+        /**
+         * Writes the whole file.
+         * @param aOut the stream to write to (which is buffered, and is closed afterward)
+         * @throws java.io.IOException if the content can't be written
+         */
+        void write(OutputStream aOut) throws IOException;
+    }
+
+    private JSFileReplacer() {
+    }
+
+    /**
+     * Writes the given file (replacing it, if it is already there).
+     * @param aFile the file
+     * @param aContent what to write in it
+     * @throws java.io.IOException if the file can't be written, or the old file can't be replaced
+     */
+    public static void replace(File aFile, IfcContent aContent) throws IOException {
+        File zTemp=new File(aFile.getPath() + TEMP_SUFFIX);
+        OutputStream zOut=new BufferedOutputStream(new FileOutputStream(zTemp));
+        try {
+            aContent.write(zOut);
+        }//end : try
+        finally {
+            zOut.close();
+        }
+        //Replace the old file all at once, so a half-written file is never read
+        if ((zTemp.renameTo(aFile)==false)&&((aFile.delete()==false)||(zTemp.renameTo(aFile)==false))) {
+            throw new IOException("Could not replace " + aFile);
+        }//end : rename failed
+    }
+
+}//CLASS END
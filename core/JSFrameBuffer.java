@@ -0,0 +1,178 @@
+/*
+ * JSFrameBuffer.java
+ *
+ * To change this template, choose Tools | Template Manager
+ * and open the template in the editor.
+ */
+
+package jstella.core;
+
+import java.io.*;
+
+import static jstella.core.JSConstants.*;
+
+/**
+ * The part of the video that the TIA draws to : two frame buffers (current and previous)
+ * of palette indices, one int per pixel.  See JSVideo for how they are turned into
+ * colors and painted.
+ * <p>
+ * JSVideo extends this class, and does all of the work that needs AWT (the back buffer,
+ * the palettes, the canvas).  A headless console (see JSConsole) uses this class by itself,
+ * so the methods that would draw anything do nothing here, and no AWT class is ever loaded.
+ * Anyone who wants the picture can read getCurrentFrameBuffer() after each frame, and
+ * look the indices up in the display format's palette.
+ * </p>
+ * @author J.L. Allen
+ */
+public class JSFrameBuffer implements java.io.Serializable {
+    private final static long serialVersionUID = -4529035617284116395L;
+
+    public final static int DEFAULT_WIDTH=160;
+    public final static int DEFAULT_HEIGHT=200; //not sure if this is still used
+    /** The number of pixels in each frame buffer (enough for the largest frame the TIA can draw). */
+    public final static int FRAME_BUFFER_SIZE=CLOCKS_PER_LINE_VISIBLE * FRAME_Y_MAX;
+
+    protected JSConsole myConsole=null;
+
+    private transient int[] myCurrentFrameBuffer=null;
+    private transient int[] myPreviousFrameBuffer=null;
+
+
+    /**
+     * Creates a new instance of JSFrameBuffer
+     * @param aConsole the parent console
+     */
+    protected JSFrameBuffer(JSConsole aConsole) {
+        myConsole=aConsole;
+        createFrameBuffers();
+    }
+
+    private void readObject(java.io.ObjectInputStream in)  throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        createFrameBuffers();
+    }
+
+    private void createFrameBuffers() {
+        // Allocate buffers for two frame buffers
+        myCurrentFrameBuffer = new int[FRAME_BUFFER_SIZE];
+        myPreviousFrameBuffer = new int[FRAME_BUFFER_SIZE];
+    }
+
+    /**
+     * Clears the buffers.
+     */
+    protected void clearBuffers() {
+        for(int i = 0; i < myCurrentFrameBuffer.length; ++i) {
+            myCurrentFrameBuffer[i] = 0;
+            myPreviousFrameBuffer[i] = 0;
+        }
+
+    }
+
+    /**
+     * This is called once a frame to swap the previous and the current frame buffers.
+     * The previous becomes the current, and the former current becomes the previous.
+     */
+    protected void swapFrameBuffers() {
+        int[] tmp = myCurrentFrameBuffer;
+        myCurrentFrameBuffer = myPreviousFrameBuffer;
+        myPreviousFrameBuffer = tmp;
+    }
+
+    /**
+     * Returns the current frame buffer.
+     * <p>
+     *    The current frame buffer represents all the pixels on the display screen (with
+     *    each integer representing the index of a color in the current palette).
+     * </p>
+     * @return the current frame buffer
+     */
+    public int[] getCurrentFrameBuffer() { return myCurrentFrameBuffer; }
+    /**
+     * Returns the previous frame buffer.
+     * There are two frame buffers, a current and a previous, and they are switched every
+     * frame.  This way, JSVideo can keep track of which pixels have changed, so that
+     * it only has to redraw things that have changed.
+     * @return previous frame buffer
+     */
+    public int[] getPreviousFrameBuffer() { return myPreviousFrameBuffer; }
+
+    /**
+     * Calls the console's getWidth() method.
+     * @return width of the display (as far as TIA is concerned)
+     */
+    protected int getWidth() { return myConsole.getDisplayWidth();}
+    /**
+     * Calls the console's getHeight() method.
+     * @return height of the display (as far as TIA is concerned)
+     */
+    protected int getHeight() { return myConsole.getDisplayHeight(); }
+
+
+    // ================ Display methods (see JSVideo) ===================
+
+    /**
+     * Prepares the video for use.
+     */
+    protected void initialize() {    }
+    /**
+     * Causes the whole frame to be redrawn the next time a redraw occurs.
+     */
+    protected void refresh() {    }
+    /**
+     * Displays the frame that the TIA has just finished.
+     */
+    protected void doFrameVideo() {    }
+    /**
+     * Repaints the current frame.
+     */
+    protected void updateVideoFrame() {    }
+    /**
+     * Repaints the current frame in shades of gray.
+     */
+    protected void grayCurrentFrame() {    }
+    /**
+     * Displays static ("snow").
+     */
+    protected void doSnow() {    }
+    /**
+     * Displays the television test pattern.
+     */
+    protected void doTestPattern() {    }
+    /**
+     * Erases anything that has been displayed.
+     */
+    protected void clearBackBuffer() {    }
+    /**
+     * Makes sure the display is big enough for the given size.
+     * @param aNewWidth new display width
+     * @param aNewHeight new display height
+     */
+    protected void adjustBackBuffer(int aNewWidth, int aNewHeight) {    }
+    /**
+     * Sets the palette used to turn the frame buffer's indices into colors.
+     * @param palette the palette to use
+     */
+    protected void setTIAPalette(int[] palette) {    }
+    /**
+     * Turns phosphor (anti-flicker) mode on or off.
+     * @param aEnable true to turn on phosphor mode
+     */
+    protected void setPhosphorEnabled(boolean aEnable) {    }
+    /**
+     * Returns true if phosphor mode is enabled.
+     * @return true if phosphor mode is enabled
+     */
+    protected boolean getPhosphorEnabled() { return false; }
+    /**
+     * Turns threaded presentation (see JSVideo) on or off.
+     * @param aEnable true to paint the frames on a thread of their own
+     */
+    protected void setThreadedPresentation(boolean aEnable) {    }
+    /**
+     * Returns true if the frames are painted on a thread of their own.
+     * @return true if threaded presentation is on
+     */
+    protected boolean isThreadedPresentation() { return false; }
+
+}//CLASS END
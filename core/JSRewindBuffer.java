@@ -0,0 +1,276 @@
+/*
+ * JSRewindBuffer.java
+ *
+ * To change this template, choose Tools | Template Manager
+ * and open the template in the editor.
+ */
+
+package jstella.core;
+
+import java.io.*;
+
+/**
+ * Keeps the recent past of a console (e.g. the last few minutes), one snapshot per frame,
+ * so that the game can be rewound.
+ * <p>
+ * Only the latest snapshot (see JSConsole.saveState(...)) is kept whole.  Each earlier one is
+ * kept as the difference between it and the one after it : the two are XORed together (so
+ * everything that didn't change becomes zero, which is nearly all of it from one frame
+ * to the next), and the result is run-length encoded (each run of changed bytes is stored
+ * with the number of unchanged bytes before it).  A frame's difference is usually a few dozen
+ * bytes, against several hundred for a whole snapshot.  Rewinding a frame XORs the latest
+ * snapshot with the newest difference, which gives back the snapshot before it.
+ * </p>
+ * <p>
+ * The differences are kept one after the other in a single array, which is used as a ring :
+ * when there is no more room (or the frame limit is reached), the oldest ones are dropped.
+ * Nothing is allocated per frame once the buffers have grown to the size of a snapshot.
+ * </p>
+ * @author J.L. Allen
+ */
+public class JSRewindBuffer {
+
+    private final static int MIN_ZERO_RUN=4; //shorter runs of unchanged bytes are kept inside a run of changed ones
+
+    private final byte[] myArena;
+    private final int[] myRecordOffsets;
+    private final int[] myRecordLengths;
+    private int myFirstRecord=0; //the index of the oldest record
+    private int myRecordCount=0;
+    private int myWritePosition=0; //always where the newest record ends
+
+    private byte[] myLatest=new byte[0];
+    private int myLatestSize=0;
+    private boolean myHasLatest=false;
+
+    private final JSStateBuffer myScratch=new JSStateBuffer();
+    private byte[] myEncodeBuffer=new byte[0];
+
+
+    /**
+     * Creates a rewind buffer.
+     * @param aMaxFrames the most frames that can be rewound
+     * @param aMaxBytes the most memory the differences can take up (the oldest are dropped to stay under it)
+     */
+    public JSRewindBuffer(int aMaxFrames, int aMaxBytes) {
+        myArena=new byte[aMaxBytes];
+        myRecordOffsets=new int[aMaxFrames];
+        myRecordLengths=new int[aMaxFrames];
+    }
+
+    /**
+     * Forgets everything (e.g. when another game is loaded).
+     */
+    public synchronized void clear() {
+        myFirstRecord=0;
+        myRecordCount=0;
+        myWritePosition=0;
+        myLatestSize=0;
+        myHasLatest=false;
+    }
+
+    /**
+     * Returns the number of frames that can be rewound.
+     * @return the number of frames
+     */
+    public synchronized int getFrameCount() { return myRecordCount; }
+
+    /**
+     * Returns the number of bytes that the differences are taking up at the moment.
+     * @return the number of bytes in use
+     */
+    public synchronized int getBytesUsed() {
+        int zReturn=0;
+        for (int i=0; i<myRecordCount; i++) {  zReturn+=myRecordLengths[(myFirstRecord + i) % myRecordLengths.length];  }
+        return zReturn;
+    }
+
+    /**
+     * Takes a snapshot of the console.  This is meant to be called once per frame.
+     * @param aConsole the console
+     * @throws java.io.IOException if the console's state can't be saved
+     */
+    public synchronized void push(JSConsole aConsole) throws IOException {
+        myScratch.clear();
+        aConsole.saveState(myScratch);
+        byte[] zNew=myScratch.getData();
+        int zNewSize=myScratch.size();
+
+        if (myHasLatest==true) {
+            int zLength=encodeDifference(myLatest, myLatestSize, zNew, zNewSize);
+            storeRecord(zLength);
+        }//end : there is an earlier snapshot
+
+        if (myLatest.length<zNewSize) myLatest=new byte[zNewSize];
+        System.arraycopy(zNew, 0, myLatest, 0, zNewSize);
+        myLatestSize=zNewSize;
+        myHasLatest=true;
+    }
+
+    /**
+     * Goes back the given number of frames (or as many as there are), and puts the console
+     * in the state it was in then.  The frames gone back over are forgotten.
+     * @param aConsole the console
+     * @param aFrames the number of frames to go back
+     * @return the number of frames actually gone back (0 if there weren't any)
+     * @throws java.io.IOException if the console's state can't be loaded
+     */
+    public synchronized int rewind(JSConsole aConsole, int aFrames) throws IOException {
+        int zReturn=0;
+        while ((zReturn<aFrames)&&(myRecordCount>0)) {
+            int zNewest=(myFirstRecord + myRecordCount - 1) % myRecordOffsets.length;
+            applyDifference(myRecordOffsets[zNewest], myRecordLengths[zNewest]);
+            myRecordCount--;
+            if (myRecordCount==0) myWritePosition=0;
+            else {
+                int zPrevious=(myFirstRecord + myRecordCount - 1) % myRecordOffsets.length;
+                myWritePosition=myRecordOffsets[zPrevious] + myRecordLengths[zPrevious];
+            }//end : still some left
+            zReturn++;
+        }//end : while
+
+        if (zReturn>0) {
+            myScratch.clear();
+            myScratch.write(myLatest, 0, myLatestSize);
+            aConsole.loadState(myScratch);
+        }//end : went back
+        return zReturn;
+    }
+
+
+    // - - - - - - - - - - - - - - - - ENCODING - - - - - - - - - - - - - - - -
+
+    /**
+     * Puts the difference between the older and the newer snapshot into myEncodeBuffer : the
+     * size of the older one, followed by (unchanged count, changed count, changed bytes XORed) runs.
+     * @return the number of bytes of the encoded difference
+     */
+    private int encodeDifference(byte[] aOld, int aOldSize, byte[] aNew, int aNewSize) {
+        int zSize=Math.max(aOldSize, aNewSize);
+        int zWorstCase=8 + (zSize * 2) + 16;
+        if (myEncodeBuffer.length<zWorstCase) myEncodeBuffer=new byte[zWorstCase];
+        byte[] zOut=myEncodeBuffer;
+
+        int zOutPos=writeVarInt(zOut, 0, aOldSize);
+        int zPos=0;
+        while (zPos<zSize) {
+            //STEP 1 : the unchanged bytes
+            int zSkipStart=zPos;
+            while ((zPos<zSize)&&(xorAt(aOld, aOldSize, aNew, aNewSize, zPos)==0)) {  zPos++;  }
+            if (zPos>=zSize) break;
+
+            //STEP 2 : the changed bytes (up to the next long enough run of unchanged ones)
+            int zRunStart=zPos;
+            int zRunEnd=zPos;
+            while (zPos<zSize) {
+                if (xorAt(aOld, aOldSize, aNew, aNewSize, zPos)!=0) {
+                    zPos++;
+                    zRunEnd=zPos;
+                }//end : changed
+                else {
+                    zPos++;
+                    if (zPos - zRunEnd >= MIN_ZERO_RUN) break;
+                }//end : unchanged
+            }//end : while
+
+            zOutPos=writeVarInt(zOut, zOutPos, zRunStart - zSkipStart);
+            zOutPos=writeVarInt(zOut, zOutPos, zRunEnd - zRunStart);
+            for (int i=zRunStart; i<zRunEnd; i++) {  zOut[zOutPos++]=(byte)xorAt(aOld, aOldSize, aNew, aNewSize, i);  }
+            zPos=zRunEnd;
+        }//end : while
+        return zOutPos;
+    }
+
+    private static int xorAt(byte[] aOld, int aOldSize, byte[] aNew, int aNewSize, int aIndex) {
+        int zOld=(aIndex<aOldSize) ? aOld[aIndex] : 0;
+        int zNew=(aIndex<aNewSize) ? aNew[aIndex] : 0;
+        return (zOld ^ zNew) & 0xFF;
+    }
+
+    /**
+     * Turns myLatest into the snapshot before it, using the difference stored at the given place.
+     */
+    private void applyDifference(int aOffset, int aLength) {
+        int zEnd=aOffset + aLength;
+        int[] zRead={aOffset};
+        int zOldSize=readVarInt(myArena, zRead);
+
+        int zSize=Math.max(zOldSize, myLatestSize);
+        if (myLatest.length<zSize) {
+            byte[] zNew=new byte[zSize];
+            System.arraycopy(myLatest, 0, zNew, 0, myLatestSize);
+            myLatest=zNew;
+        }//end : growing
+        for (int i=myLatestSize; i<zSize; i++) {  myLatest[i]=0;  }
+
+        int zPos=0;
+        while (zRead[0]<zEnd) {
+            zPos+=readVarInt(myArena, zRead);
+            int zCount=readVarInt(myArena, zRead);
+            int zIn=zRead[0];
+            for (int i=0; i<zCount; i++) {  myLatest[zPos + i]^=myArena[zIn + i];  }
+            zPos+=zCount;
+            zRead[0]=zIn + zCount;
+        }//end : while
+        myLatestSize=zOldSize;
+    }
+
+    private static int writeVarInt(byte[] aOut, int aPos, int aValue) {
+        while ((aValue & ~0x7F)!=0) {
+            aOut[aPos++]=(byte)((aValue & 0x7F) | 0x80);
+            aValue>>>=7;
+        }//end : while
+        aOut[aPos++]=(byte)aValue;
+        return aPos;
+    }
+
+    private static int readVarInt(byte[] aIn, int[] aPos) {
+        int zReturn=0;
+        int zShift=0;
+        while (true) {
+            int zByte=aIn[aPos[0]++];
+            zReturn|=(zByte & 0x7F) << zShift;
+            if ((zByte & 0x80)==0) break;
+            zShift+=7;
+        }//end : while
+        return zReturn;
+    }
+
+
+    // - - - - - - - - - - - - - - - - THE RING - - - - - - - - - - - - - - - -
+
+    /**
+     * Copies the encoded difference into the arena after the newest record, dropping the
+     * oldest records that are in the way.  The records are always in order, oldest first,
+     * starting from the write position and wrapping around at the end of the arena.
+     */
+    private void storeRecord(int aLength) {
+        if (aLength>myArena.length) {
+            myRecordCount=0; //a snapshot too big for the whole buffer...there is nothing to rewind to
+            myWritePosition=0;
+            return;
+        }//end : doesn't fit
+
+        if (myRecordCount==myRecordOffsets.length) dropOldest();
+
+        int zPos=myWritePosition;
+        if (zPos + aLength > myArena.length) {
+            while ((myRecordCount>0)&&(myRecordOffsets[myFirstRecord]>=zPos)) {  dropOldest();  }
+            zPos=0;
+        }//end : wrapping around
+        while ((myRecordCount>0)&&(myRecordOffsets[myFirstRecord]>=zPos)&&(myRecordOffsets[myFirstRecord]<zPos + aLength)) {  dropOldest();  }
+
+        System.arraycopy(myEncodeBuffer, 0, myArena, zPos, aLength);
+        int zIndex=(myFirstRecord + myRecordCount) % myRecordOffsets.length;
+        myRecordOffsets[zIndex]=zPos;
+        myRecordLengths[zIndex]=aLength;
+        myRecordCount++;
+        myWritePosition=zPos + aLength;
+    }
+
+    private void dropOldest() {
+        myFirstRecord=(myFirstRecord + 1) % myRecordOffsets.length;
+        myRecordCount--;
+    }
+
+}//CLASS END
@@ -30,7 +30,7 @@ public class JSRiot implements IfcDevice, java.io.Serializable {
     private JSConsole myConsole=null;
     private JSSystem mySystem=null;
     
-    private int[] myRAM=new int[128];
+    private byte[] myRAM=new byte[128];
     
     // Current value of my Timer
     private int myTimer=0;
@@ -71,7 +71,7 @@ public class JSRiot implements IfcDevice, java.io.Serializable {
         for (int i=0; i<myRAM.length; i++) {
             //This takes a random integer (which can be any value an integer can hold), divides it by 256, and using
             //  the REMAINDER for this division, which is guaranteed to be between 0 and 255 (inclusive).
-            myRAM[i]=Math.abs(mvRandom.nextInt() % 256);
+            myRAM[i]=(byte)Math.abs(mvRandom.nextInt() % 256);
         }
         
         
@@ -87,6 +87,48 @@ public class JSRiot implements IfcDevice, java.io.Serializable {
         return "6532";
     }
     
+    /**
+     * Copies the 128 bytes of RAM into the given array.
+     * @param aBuffer the array to copy into
+     * @param aOffset where in the array to put the first byte
+     */
+    public void copyRAM(byte[] aBuffer, int aOffset) {
+        System.arraycopy(myRAM, 0, aBuffer, aOffset, myRAM.length);
+    }
+    
+    /**
+     * Puts the 128 bytes of RAM into the given buffer, at its position (in a single bulk put).
+     * @param aBuffer the buffer to put them in
+     */
+    public void copyRAM(java.nio.ByteBuffer aBuffer) {
+        aBuffer.put(myRAM, 0, myRAM.length);
+    }
+    
+    public int getRAMSize() { return myRAM.length; }
+    
+// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+    public void saveState(java.io.DataOutput aOut) throws java.io.IOException {
+        aOut.write(myRAM);
+        aOut.writeInt(myTimer);
+        aOut.writeInt(myIntervalShift);
+        aOut.writeInt(myCyclesWhenTimerSet);
+        aOut.writeInt(myCyclesWhenInterruptReset);
+        aOut.writeBoolean(myTimerReadAfterInterrupt);
+        aOut.writeInt(myDDRA);
+        aOut.writeInt(myDDRB);
+    }
+    
+    public void loadState(java.io.DataInput aIn) throws java.io.IOException {
+        aIn.readFully(myRAM); //in place, since the system's page table points right at it
+        myTimer=aIn.readInt();
+        myIntervalShift=aIn.readInt();
+        myCyclesWhenTimerSet=aIn.readInt();
+        myCyclesWhenInterruptReset=aIn.readInt();
+        myTimerReadAfterInterrupt=aIn.readBoolean();
+        myDDRA=aIn.readInt();
+        myDDRB=aIn.readInt();
+    }
+    
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     /**
      * Resets the RIOT chip.
@@ -317,6 +359,52 @@ public class JSRiot implements IfcDevice, java.io.Serializable {
     }
     
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+    /**
+     * Predicts what peek(addr) would return if it were called when the system's cycle
+     * count is aCycle, assuming nothing is written to me before then.  Only the timer and
+     * interrupt flag registers are predicted, and only where reading them has no side effects
+     * (i.e. a read of the timer after it has expired is never predicted, because it can
+     * set myTimerReadAfterInterrupt).
+     * @param addr the address
+     * @param aCycle the system cycle count at the time of the read
+     * @return the byte that would be read, or -1 if it can't be predicted
+     * @see jstella.j6507.IfcIdleLoopSupport
+     */
+    public int predictPeek(int addr, int aCycle) {
+        int zCyclesElapsed = aCycle - 1 - myCyclesWhenTimerSet;
+        int zCurrentIntervalCount = myTimer - (zCyclesElapsed >> myIntervalShift) - 1;
+        switch(addr & 0x07) {
+            case 0x04:    // Timer Output
+            case 0x06:
+                if (zCurrentIntervalCount >= 0) return zCurrentIntervalCount;
+                else return -1;
+                
+            case 0x05:    // Interrupt Flag
+            case 0x07:
+                if((zCurrentIntervalCount >= 0) || myTimerReadAfterInterrupt) return 0x00;
+                else return 0x80;
+                
+            default:
+                return -1;
+        }
+    }
+    
+    /**
+     * Returns how many cycles after aCycle the value predicted by predictPeek(addr, aCycle)
+     * would stay the same.
+     * @param addr the address
+     * @param aCycle the system cycle count at the time of the read
+     * @return the number of further cycles, or Integer.MAX_VALUE if the value won't change until I'm written to
+     */
+    public int predictUnchangedCycles(int addr, int aCycle) {
+        int zCyclesElapsed = aCycle - 1 - myCyclesWhenTimerSet;
+        int zCurrentIntervalCount = myTimer - (zCyclesElapsed >> myIntervalShift) - 1;
+        if ((zCurrentIntervalCount < 0) || (myTimerReadAfterInterrupt && ((addr & 0x05) == 0x05))) return Integer.MAX_VALUE;
+        else if ((addr & 0x05) == 0x05) return (myTimer << myIntervalShift) - 1 - zCyclesElapsed; // until the timer expires
+        else return ((((zCyclesElapsed >> myIntervalShift) + 1) << myIntervalShift) - 1 - zCyclesElapsed); // until the end of the interval
+    }
+    
+// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
  
 
 
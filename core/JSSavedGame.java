@@ -0,0 +1,304 @@
+/*
+ * JSSavedGame.java
+ *
+ * To change this template, choose Tools | Template Manager
+ * and open the template in the editor.
+ */
+
+package jstella.core;
+
+import java.io.*;
+import java.util.*;
+import jstella.cart.*;
+
+import static jstella.core.JSConstants.*;
+
+/**
+ * Reads and writes saved games in JStella's own binary format, instead of serializing the
+ * whole console.  Every value is written explicitly (see the saveState(...) methods of the
+ * devices), so a saved game is a few kilobytes (most of it the ROM image), takes well under
+ * a millisecond to write or read, and doesn't stop working when a class is changed.
+ * <p>
+ * The format is : the magic number ("JSSG"), the format version, and then a series of chunks,
+ * each of which is a tag (four characters, as an int), the chunk's version, the length of
+ * what follows, and then the chunk itself :
+ * </p>
+ * <ul>
+ * <li> "CONS" : the display format, the y start, and the display height
+ * <li> "ROM " : the cartridge type, the MD5, and the ROM image
+ * <li> "CPU " : the system (cycles, data bus) and the CPU (registers, etc.)
+ * <li> "TIA " : the TIA
+ * <li> "RIOT" : the RIOT (RAM and timer)
+ * <li> "AUDI" : the audio registers (left out if the console has no audio)
+ * <li> "CART" : the cartridge (current bank, RAM, etc.)
+ * <li> "INPT" : the console switches and the controllers
+ * <li> "END " : nothing...it marks the end of the saved game (since format version 2)
+ * </ul>
+ * <p>
+ * A reader skips any chunk it doesn't know, so chunks can be added later without breaking
+ * older versions of JStella.  If the way a chunk is written ever changes, its version must be
+ * raised, so that an older version of JStella refuses it rather than misreading it.
+ * </p>
+ * <p>
+ * A saved game is read in full, and checked, before the console is touched : it is refused
+ * if it ends early (or, in format version 1, which has no end chunk, if a chunk is missing),
+ * and it is tried out on a scratch console first, so that a damaged saved game leaves the
+ * console as it was.
+ * </p>
+ * @author J.L. Allen
+ */
+public class JSSavedGame {
+
+    /** The first four bytes of a saved game ("JSSG"). */
+    public final static int MAGIC=0x4A535347;
+    public final static int FORMAT_VERSION=2;
+    private final static int FIRST_VERSION_WITH_END=2;
+
+    private final static int CHUNK_CONSOLE=tag("CONS");
+    private final static int CHUNK_ROM=tag("ROM ");
+    private final static int CHUNK_CPU=tag("CPU ");
+    private final static int CHUNK_TIA=tag("TIA ");
+    private final static int CHUNK_RIOT=tag("RIOT");
+    private final static int CHUNK_AUDIO=tag("AUDI");
+    private final static int CHUNK_CART=tag("CART");
+    private final static int CHUNK_INPUT=tag("INPT");
+    private final static int CHUNK_END=tag("END ");
+
+    /** The chunks that every saved game has (the audio chunk is left out when the console has no audio). */
+    private final static int[] ourRequiredChunks={ CHUNK_CONSOLE, CHUNK_ROM, CHUNK_CPU, CHUNK_TIA, CHUNK_RIOT, CHUNK_CART, CHUNK_INPUT };
+    /** The order in which the device chunks are put into the console. */
+    private final static int[] ourDeviceChunks={ CHUNK_CPU, CHUNK_TIA, CHUNK_RIOT, CHUNK_AUDIO, CHUNK_CART, CHUNK_INPUT };
+
+    private final static int CHUNK_VERSION=1; //the version of every chunk written by this class
+
+
+    private JSSavedGame() {
+    }
+
+    private static int tag(String aTag) {
+        return (aTag.charAt(0) << 24) | (aTag.charAt(1) << 16) | (aTag.charAt(2) << 8) | aTag.charAt(3);
+    }
+
+    /**
+     * Returns true if the given bytes are the start of a saved game in this format.
+     * @param aHeader the first bytes of the file (at least four)
+     * @return true if it is in this format (as opposed to e.g. a serialized console)
+     */
+    public static boolean isSavedGame(byte[] aHeader) {
+        if ((aHeader==null)||(aHeader.length<4)) return false;
+        int zMagic=((aHeader[0] & 0xFF) << 24) | ((aHeader[1] & 0xFF) << 16) | ((aHeader[2] & 0xFF) << 8) | (aHeader[3] & 0xFF);
+        return (zMagic==MAGIC);
+    }
+
+
+    // - - - - - - - - - - - - - - - - WRITING - - - - - - - - - - - - - - - -
+
+    /**
+     * Writes the console's game (which must have a cartridge) as a saved game.
+     * @param aConsole the console
+     * @param aOut where to write the saved game
+     * @throws java.io.IOException if aOut throws one, or if the console doesn't have a cartridge
+     */
+    public static void write(JSConsole aConsole, DataOutput aOut) throws IOException {
+        synchronized (aConsole) {
+            Cartridge zCart=aConsole.getCartridge();
+            if (zCart==null) throw new IOException("There is no game to save");
+            JSStateBuffer zChunk=new JSStateBuffer();
+
+            aOut.writeInt(MAGIC);
+            aOut.writeInt(FORMAT_VERSION);
+
+            zChunk.clear();
+            zChunk.writeUTF(aConsole.getDisplayFormat().name());
+            zChunk.writeInt(aConsole.getYStart());
+            zChunk.writeInt(aConsole.getDisplayHeight());
+            writeChunk(aOut, CHUNK_CONSOLE, zChunk);
+
+            zChunk.clear();
+            zChunk.writeUTF((zCart.getType()!=null) ? zCart.getType() : "");
+            zChunk.writeUTF(zCart.getMD5());
+            byte[] zImage=zCart.getROMImage();
+            zChunk.writeInt(zImage.length);
+            zChunk.write(zImage);
+            writeChunk(aOut, CHUNK_ROM, zChunk);
+
+            zChunk.clear();
+            aConsole.getSystem().saveState(zChunk);
+            writeChunk(aOut, CHUNK_CPU, zChunk);
+
+            zChunk.clear();
+            aConsole.getTIA().saveState(zChunk);
+            writeChunk(aOut, CHUNK_TIA, zChunk);
+
+            zChunk.clear();
+            aConsole.getRiot().saveState(zChunk);
+            writeChunk(aOut, CHUNK_RIOT, zChunk);
+
+            if (aConsole.getAudio()!=null) {
+                zChunk.clear();
+                int[] zRegisters=aConsole.getAudio().getAudioRegisterData();
+                zChunk.writeInt(zRegisters.length);
+                for (int i=0; i<zRegisters.length; i++) {  zChunk.writeInt(zRegisters[i]);  }
+                writeChunk(aOut, CHUNK_AUDIO, zChunk);
+            }//end : has audio
+
+            zChunk.clear();
+            zCart.saveState(zChunk);
+            writeChunk(aOut, CHUNK_CART, zChunk);
+
+            zChunk.clear();
+            zChunk.writeInt(aConsole.readSwitches());
+            aConsole.getController(Jack.LEFT).saveState(zChunk);
+            aConsole.getController(Jack.RIGHT).saveState(zChunk);
+            writeChunk(aOut, CHUNK_INPUT, zChunk);
+
+            zChunk.clear();
+            writeChunk(aOut, CHUNK_END, zChunk);
+        }//end : synchronized
+    }
+
+    private static void writeChunk(DataOutput aOut, int aTag, JSStateBuffer aChunk) throws IOException {
+        aOut.writeInt(aTag);
+        aOut.writeShort(CHUNK_VERSION);
+        aOut.writeInt(aChunk.size());
+        aOut.write(aChunk.getData(), aChunk.getOffset(), aChunk.size());
+    }
+
+
+    // - - - - - - - - - - - - - - - - READING - - - - - - - - - - - - - - - -
+
+    /**
+     * Reads a saved game into the given console.  If the console already has the saved game's
+     * cartridge in it, the cartridge is kept; otherwise, a new one is made from the ROM image in
+     * the saved game and put in its place.  If the saved game can't be read, the console is
+     * left as it was.
+     * @param aIn where to read the saved game from (just past the end of it, when this returns)
+     * @param aConsole the console
+     * @throws java.io.IOException if aIn throws one, or if the saved game isn't in this format, is too new,
+     * ends early, or is damaged
+     * @throws jstella.core.JSException if the saved game's cartridge type isn't supported
+     */
+    public static void read(DataInput aIn, JSConsole aConsole) throws IOException, JSException {
+        if (aIn.readInt()!=MAGIC) throw new IOException("Not a JStella saved game");
+        int zFormatVersion=aIn.readInt();
+        if (zFormatVersion>FORMAT_VERSION) throw new IOException("The saved game was made by a newer version of JStella (format " + zFormatVersion + ")");
+
+        //STEP 1 : read every chunk, and make sure none are missing
+        Map<Integer, JSStateBuffer> zChunks=new HashMap<Integer, JSStateBuffer>();
+        while (true) {
+            int zTag;
+            try {
+                zTag=aIn.readInt();
+            }//end : try
+            catch (EOFException e) {
+                if (zFormatVersion>=FIRST_VERSION_WITH_END) throw new IOException("The saved game is incomplete");
+                break; //format 1 : the end of the saved game
+            }
+            int zVersion=aIn.readUnsignedShort();
+            int zLength=aIn.readInt();
+            if (zLength<0) throw new IOException("Bad chunk length in saved game");
+            byte[] zData=readBytes(aIn, zLength); //(throws an EOFException if the chunk is cut short)
+            if (zTag==CHUNK_END) break;
+            if (isKnown(zTag)==false) continue; //a chunk from a later version...skip it
+            checkVersion(zTag, zVersion);
+            zChunks.put(zTag, new JSStateBuffer(zData));
+        }//end : while
+        for (int zTag : ourRequiredChunks) {
+            if (zChunks.containsKey(zTag)==false) throw new IOException("The saved game is incomplete (it has no " + tagName(zTag) + " chunk)");
+        }//end : for
+
+        //STEP 2 : the console settings and the cartridge
+        JSStateBuffer zConsoleChunk=zChunks.get(CHUNK_CONSOLE);
+        DisplayFormat zFormat=readDisplayFormat(zConsoleChunk);
+        int zYStart=zConsoleChunk.readInt();
+        int zDisplayHeight=zConsoleChunk.readInt();
+        JSStateBuffer zROMChunk=zChunks.get(CHUNK_ROM);
+        String zType=zROMChunk.readUTF();
+        String zMD5=zROMChunk.readUTF();
+        byte[] zImage=new byte[zROMChunk.readInt()];
+        zROMChunk.readFully(zImage);
+
+        //STEP 3 : try it out on a scratch console, so that a damaged chunk is found before the console is touched
+        try {
+            apply(zChunks, new JSConsole(null, true), createCartridge(zImage, zType, zMD5), zFormat, zYStart, zDisplayHeight);
+        }//end : try
+        catch (RuntimeException e) {
+            throw new IOException("The saved game is damaged (" + e + ")");
+        }
+
+        //STEP 4 : the real thing
+        synchronized (aConsole) {
+            Cartridge zCart=aConsole.getCartridge();
+            boolean zSameCart=(zCart!=null)&&(zMD5.equals(zCart.getMD5()))&&(zType.equals(zCart.getType()));
+            if (zSameCart==false) zCart=createCartridge(zImage, zType, zMD5);
+            apply(zChunks, aConsole, zCart, zFormat, zYStart, zDisplayHeight);
+        }//end : synchronized
+    }
+
+    private static Cartridge createCartridge(byte[] aImage, String aType, String aMD5) throws JSException {
+        Cartridge zReturn=(aType.length()>0) ? Cartridge.create(aImage, aType) : Cartridge.create(aImage);
+        zReturn.setMD5(aMD5);
+        return zReturn;
+    }
+
+    private static void apply(Map<Integer, JSStateBuffer> aChunks, JSConsole aConsole, Cartridge aCart,
+            DisplayFormat aFormat, int aYStart, int aDisplayHeight) throws IOException {
+        aConsole.restoreCartridge(aCart, aFormat, aYStart, aDisplayHeight);
+        for (int zTag : ourDeviceChunks) {
+            JSStateBuffer zChunk=aChunks.get(zTag);
+            if (zChunk==null) continue; //the audio chunk, from a console with no audio
+            zChunk.rewind();
+            readDeviceChunk(zTag, zChunk, aConsole);
+        }//end : for
+    }
+
+    private static DisplayFormat readDisplayFormat(DataInput aIn) throws IOException {
+        String zName=aIn.readUTF();
+        try {
+            return DisplayFormat.valueOf(zName);
+        }//end : try
+        catch (IllegalArgumentException e) {
+            throw new IOException("The saved game is damaged (unknown display format " + zName + ")");
+        }
+    }
+
+    private static boolean isKnown(int aTag) {
+        return (aTag==CHUNK_CONSOLE)||(aTag==CHUNK_ROM)||(aTag==CHUNK_AUDIO)||(aTag==CHUNK_CPU)||(aTag==CHUNK_TIA)
+            ||(aTag==CHUNK_RIOT)||(aTag==CHUNK_CART)||(aTag==CHUNK_INPUT);
+    }
+
+    private static void readDeviceChunk(int aTag, JSStateBuffer aChunk, JSConsole aConsole) throws IOException {
+        if (aTag==CHUNK_CPU) aConsole.getSystem().loadState(aChunk);
+        else if (aTag==CHUNK_TIA) aConsole.getTIA().loadState(aChunk);
+        else if (aTag==CHUNK_RIOT) aConsole.getRiot().loadState(aChunk);
+        else if (aTag==CHUNK_CART) aConsole.getCartridge().loadState(aChunk);
+        else if (aTag==CHUNK_AUDIO) {
+            int[] zRegisters=new int[aChunk.readInt()];
+            for (int i=0; i<zRegisters.length; i++) {  zRegisters[i]=aChunk.readInt();  }
+            if (aConsole.getAudio()!=null) aConsole.getAudio().setAudioRegisterData(zRegisters);
+        }//end : audio
+        else if (aTag==CHUNK_INPUT) {
+            aConsole.restoreSwitches(aChunk.readInt());
+            aConsole.getController(Jack.LEFT).loadState(aChunk);
+            aConsole.getController(Jack.RIGHT).loadState(aChunk);
+        }//end : input
+    }
+
+    private static void checkVersion(int aTag, int aVersion) throws IOException {
+        if (aVersion>CHUNK_VERSION) {
+            throw new IOException("The saved game was made by a newer version of JStella (chunk " + tagName(aTag) + ", version " + aVersion + ")");
+        }//end : too new
+    }
+
+    private static String tagName(int aTag) {
+        String zReturn="" + (char)(aTag >>> 24) + (char)((aTag >>> 16) & 0xFF) + (char)((aTag >>> 8) & 0xFF) + (char)(aTag & 0xFF);
+        return zReturn.trim();
+    }
+
+    private static byte[] readBytes(DataInput aIn, int aLength) throws IOException {
+        byte[] zReturn=new byte[aLength];
+        aIn.readFully(zReturn);
+        return zReturn;
+    }
+
+}//CLASS END
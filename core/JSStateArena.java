@@ -0,0 +1,127 @@
+/*
+ * JSStateArena.java
+ *
+ * To change this template, choose Tools | Template Manager
+ * and open the template in the editor.
+ */
+
+package jstella.core;
+
+import java.io.*;
+
+/**
+ * A fixed number of console states (see JSConsole.saveState(...)), kept side by side in
+ * a single array, each in a slot of the same size.  A state is written straight into its
+ * slot and read straight out of it, so saving and loading don't copy or allocate anything,
+ * and a state can be copied from one slot to another (e.g. to branch off from it) with a
+ * single System.arraycopy(...).  This suits keeping a window of recent states, e.g. for
+ * rolling back a few frames (run-ahead, or netplay) and running them again.
+ * <p>
+ * The state of a console with a given cartridge is always the same size, so createFor(...)
+ * sizes the slots by saving the console's state once.
+ * </p>
+ * @author J.L. Allen
+ */
+public class JSStateArena {
+
+    private final static int SLOT_HEADROOM=64; //in case the state grows (it shouldn't)
+
+    private final byte[] myArena;
+    private final int mySlotSize;
+    private final int[] myLengths; //the length of the state in each slot, or -1 if there isn't one
+    private final JSStateBuffer myView=new JSStateBuffer(0);
+
+
+    /**
+     * Creates a state arena.
+     * @param aSlotCount the number of states it can hold
+     * @param aSlotSize the most bytes a state can take up
+     */
+    public JSStateArena(int aSlotCount, int aSlotSize) {
+        myArena=new byte[aSlotCount * aSlotSize];
+        mySlotSize=aSlotSize;
+        myLengths=new int[aSlotCount];
+        clear();
+    }
+
+    /**
+     * Creates a state arena whose slots are big enough for the given console's state.
+     * @param aConsole the console (with the cartridge that will be played)
+     * @param aSlotCount the number of states it can hold
+     * @return the arena
+     * @throws java.io.IOException if the console's state can't be saved
+     */
+    public static JSStateArena createFor(JSConsole aConsole, int aSlotCount) throws IOException {
+        JSStateBuffer zState=new JSStateBuffer();
+        aConsole.saveState(zState);
+        int zSlotSize=((zState.size() + SLOT_HEADROOM + 7) / 8) * 8;
+        return new JSStateArena(aSlotCount, zSlotSize);
+    }
+
+    public int getSlotCount() { return myLengths.length; }
+    public int getSlotSize() { return mySlotSize; }
+
+    /**
+     * Returns the array that holds every slot (slot n starts at n * getSlotSize()), e.g. to
+     * send a state somewhere without copying it first.
+     * @return the arena's array
+     */
+    public byte[] getArray() { return myArena; }
+
+    /**
+     * Returns the length of the state in the given slot.
+     * @param aSlot the slot
+     * @return the number of bytes, or -1 if the slot is empty
+     */
+    public int getLength(int aSlot) { return myLengths[aSlot]; }
+
+    public boolean isEmpty(int aSlot) { return (myLengths[aSlot]<0); }
+
+    /**
+     * Empties every slot.
+     */
+    public void clear() {
+        for (int i=0; i<myLengths.length; i++) {  myLengths[i]=-1;  }
+    }
+
+    /**
+     * Saves the console's state in the given slot (replacing whatever was there).
+     * @param aSlot the slot
+     * @param aConsole the console
+     * @throws java.io.IOException if the state can't be saved, or doesn't fit in a slot
+     */
+    public void save(int aSlot, JSConsole aConsole) throws IOException {
+        myLengths[aSlot]=-1;
+        myView.wrap(myArena, aSlot * mySlotSize, mySlotSize, 0);
+        try {
+            aConsole.saveState(myView);
+        }//end : try
+        catch (IllegalStateException e) {
+            throw new IOException(e.getMessage());
+        }
+        myLengths[aSlot]=myView.size();
+    }
+
+    /**
+     * Puts the console in the state saved in the given slot.
+     * @param aSlot the slot
+     * @param aConsole the console
+     * @throws java.io.IOException if the slot is empty, or the state can't be loaded
+     */
+    public void load(int aSlot, JSConsole aConsole) throws IOException {
+        if (myLengths[aSlot]<0) throw new IOException("There is no state in slot " + aSlot);
+        myView.wrap(myArena, aSlot * mySlotSize, mySlotSize, myLengths[aSlot]);
+        aConsole.loadState(myView);
+    }
+
+    /**
+     * Copies the state in one slot to another.
+     * @param aFromSlot the slot to copy
+     * @param aToSlot the slot to copy it to
+     */
+    public void copySlot(int aFromSlot, int aToSlot) {
+        if (myLengths[aFromSlot]>=0) System.arraycopy(myArena, aFromSlot * mySlotSize, myArena, aToSlot * mySlotSize, myLengths[aFromSlot]);
+        myLengths[aToSlot]=myLengths[aFromSlot];
+    }
+
+}//CLASS END
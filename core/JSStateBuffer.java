@@ -0,0 +1,273 @@
+/*
+ * JSStateBuffer.java
+ *
+ * To change this template, choose Tools | Template Manager
+ * and open the template in the editor.
+ */
+
+package jstella.core;
+
+import java.io.*;
+
+/**
+ * An in-memory buffer that the emulator's state can be written to and read back from
+ * (see JSConsole.saveState(...) and JSConsole.loadState(...)).  It is a DataOutput and
+ * a DataInput over a single byte array that is kept from one use to the next, so that
+ * taking a snapshot (e.g. once a frame, for run-ahead) doesn't allocate anything once the
+ * array is big enough, and doesn't go through ObjectOutputStream at all.
+ * <p>
+ * Writing always appends at the write position; reading always reads from the read
+ * position.  clear() starts the buffer over, and rewind() goes back to the start for reading.
+ * </p>
+ * <p>
+ * A buffer can also be made to use part of another array (see wrap(...)), e.g. a slot of a
+ * JSStateArena, so that a state is written straight to where it is kept, and read straight
+ * from there.  Such a buffer doesn't grow; writing past the end of its part throws an
+ * IllegalStateException.
+ * </p>
+ * @author J.L. Allen
+ */
+public class JSStateBuffer implements DataOutput, DataInput {
+
+    private final static int DEFAULT_CAPACITY=4096;
+
+    private byte[] myData;
+    private int myStart=0; //where the state starts in myData (0 unless wrapped)
+    private int myLimit; //where it has to end
+    private boolean myWrapped=false;
+    private int myWritePosition=0; //myStart plus the number of bytes written
+    private int myReadPosition=0;
+
+
+    public JSStateBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a state buffer.
+     * @param aCapacity the number of bytes to set aside to begin with (it grows as needed)
+     */
+    public JSStateBuffer(int aCapacity) {
+        myData=new byte[Math.max(16, aCapacity)];
+        myLimit=myData.length;
+    }
+
+    /**
+     * Creates a state buffer that holds a copy of the given bytes (e.g. a state saved earlier
+     * with toByteArray()), ready to be read.
+     * @param aData the bytes
+     */
+    public JSStateBuffer(byte[] aData) {
+        myData=aData.clone();
+        myLimit=myData.length;
+        myWritePosition=aData.length;
+    }
+    
+    /**
+     * Makes the buffer use part of the given array, instead of an array of its own.  The part
+     * holds a state of the given length, ready to be read; clear() makes it ready to be written.
+     * @param aData the array
+     * @param aOffset where the part starts
+     * @param aCapacity the length of the part (the most that can be written)
+     * @param aLength the number of bytes of state that are already there
+     */
+    public void wrap(byte[] aData, int aOffset, int aCapacity, int aLength) {
+        myData=aData;
+        myStart=aOffset;
+        myLimit=aOffset + aCapacity;
+        myWrapped=true;
+        myWritePosition=aOffset + aLength;
+        myReadPosition=aOffset;
+    }
+
+    /**
+     * Empties the buffer, for writing a new state.
+     */
+    public void clear() {
+        myWritePosition=myStart;
+        myReadPosition=myStart;
+    }
+
+    /**
+     * Goes back to the start of the buffer, for reading the state from the beginning.
+     */
+    public void rewind() {
+        myReadPosition=myStart;
+    }
+
+    /**
+     * Returns the number of bytes written.
+     * @return the size of the state
+     */
+    public int size() { return myWritePosition - myStart; }
+
+    /**
+     * Returns the array that holds the state (only the size() bytes starting at getOffset() are
+     * used).  It is replaced when the buffer has to grow.
+     * @return the buffer's array
+     */
+    public byte[] getData() { return myData; }
+
+    /**
+     * Returns where the state starts in getData() (0 unless the buffer was wrapped around part of another array).
+     * @return the offset
+     */
+    public int getOffset() { return myStart; }
+
+    /**
+     * Returns a copy of the bytes written.
+     * @return the state, as a byte array
+     */
+    public byte[] toByteArray() {
+        byte[] zReturn=new byte[size()];
+        System.arraycopy(myData, myStart, zReturn, 0, zReturn.length);
+        return zReturn;
+    }
+
+    /**
+     * Copies another buffer's state into this one (replacing what was here).
+     * @param aSource the buffer to copy
+     */
+    public void copyFrom(JSStateBuffer aSource) {
+        clear();
+        write(aSource.myData, aSource.myStart, aSource.size());
+    }
+
+    private void ensureCapacity(int aNeeded) {
+        if (aNeeded > myLimit) {
+            if (myWrapped==true) throw new IllegalStateException("The state doesn't fit in " + (myLimit - myStart) + " bytes");
+            byte[] zNew=new byte[Math.max(aNeeded, myData.length * 2)];
+            System.arraycopy(myData, 0, zNew, 0, myWritePosition);
+            myData=zNew;
+            myLimit=myData.length;
+        }//end : too small
+    }
+
+    private int take(int aCount) throws EOFException {
+        if (myReadPosition + aCount > myWritePosition) throw new EOFException("End of saved state");
+        int zReturn=myReadPosition;
+        myReadPosition+=aCount;
+        return zReturn;
+    }
+
+
+    // - - - - - - - - - - - - - - - - DataOutput - - - - - - - - - - - - - - - -
+
+    public void write(int b) {
+        ensureCapacity(myWritePosition + 1);
+        myData[myWritePosition++]=(byte)b;
+    }
+
+    public void write(byte[] b) {
+        write(b, 0, b.length);
+    }
+
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(myWritePosition + len);
+        System.arraycopy(b, off, myData, myWritePosition, len);
+        myWritePosition+=len;
+    }
+
+    public void writeBoolean(boolean v) { write(v ? 1 : 0); }
+    public void writeByte(int v) { write(v); }
+
+    public void writeShort(int v) {
+        ensureCapacity(myWritePosition + 2);
+        myData[myWritePosition++]=(byte)(v >>> 8);
+        myData[myWritePosition++]=(byte)v;
+    }
+
+    public void writeChar(int v) { writeShort(v); }
+
+    public void writeInt(int v) {
+        ensureCapacity(myWritePosition + 4);
+        myData[myWritePosition++]=(byte)(v >>> 24);
+        myData[myWritePosition++]=(byte)(v >>> 16);
+        myData[myWritePosition++]=(byte)(v >>> 8);
+        myData[myWritePosition++]=(byte)v;
+    }
+
+    public void writeLong(long v) {
+        writeInt((int)(v >>> 32));
+        writeInt((int)v);
+    }
+
+    public void writeFloat(float v) { writeInt(Float.floatToIntBits(v)); }
+    public void writeDouble(double v) { writeLong(Double.doubleToLongBits(v)); }
+
+    public void writeBytes(String s) {
+        for (int i=0; i<s.length(); i++) {  write(s.charAt(i));  }
+    }
+
+    public void writeChars(String s) {
+        for (int i=0; i<s.length(); i++) {  writeChar(s.charAt(i));  }
+    }
+
+    public void writeUTF(String s) throws IOException {
+        ByteArrayOutputStream zBytes=new ByteArrayOutputStream(s.length() + 2);
+        new DataOutputStream(zBytes).writeUTF(s);
+        write(zBytes.toByteArray());
+    }
+
+
+    // - - - - - - - - - - - - - - - - DataInput - - - - - - - - - - - - - - - -
+
+    public void readFully(byte[] b) throws IOException {
+        readFully(b, 0, b.length);
+    }
+
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        System.arraycopy(myData, take(len), b, off, len);
+    }
+
+    public int skipBytes(int n) {
+        int zSkipped=Math.max(0, Math.min(n, myWritePosition - myReadPosition));
+        myReadPosition+=zSkipped;
+        return zSkipped;
+    }
+
+    public boolean readBoolean() throws IOException { return (myData[take(1)]!=0); }
+    public byte readByte() throws IOException { return myData[take(1)]; }
+    public int readUnsignedByte() throws IOException { return myData[take(1)] & 0xFF; }
+
+    public short readShort() throws IOException {
+        int zIndex=take(2);
+        return (short)(((myData[zIndex] & 0xFF) << 8) | (myData[zIndex + 1] & 0xFF));
+    }
+
+    public int readUnsignedShort() throws IOException { return readShort() & 0xFFFF; }
+    public char readChar() throws IOException { return (char)readShort(); }
+
+    public int readInt() throws IOException {
+        int zIndex=take(4);
+        return ((myData[zIndex] & 0xFF) << 24) | ((myData[zIndex + 1] & 0xFF) << 16)
+             | ((myData[zIndex + 2] & 0xFF) << 8) | (myData[zIndex + 3] & 0xFF);
+    }
+
+    public long readLong() throws IOException {
+        return ((long)readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+    }
+
+    public float readFloat() throws IOException { return Float.intBitsToFloat(readInt()); }
+    public double readDouble() throws IOException { return Double.longBitsToDouble(readLong()); }
+
+    public String readLine() throws IOException {
+        if (myReadPosition>=myWritePosition) return null;
+        StringBuilder zReturn=new StringBuilder();
+        while (myReadPosition<myWritePosition) {
+            char zChar=(char)(myData[myReadPosition++] & 0xFF);
+            if (zChar=='\n') break;
+            else if (zChar=='\r') {
+                if ((myReadPosition<myWritePosition)&&(myData[myReadPosition]=='\n')) myReadPosition++;
+                break;
+            }//end : carriage return
+            else zReturn.append(zChar);
+        }//end : while
+        return zReturn.toString();
+    }
+
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+
+}//CLASS END
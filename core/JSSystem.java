@@ -21,6 +21,8 @@ package jstella.core;
 import java.io.*;
 
 import jstella.j6507.IfcSystem;
+import jstella.j6507.IfcDecodeCacheSupport;
+import jstella.j6507.IfcIdleLoopSupport;
 import jstella.j6507.J6507;
 import jstella.j6507.J6507.J6507Exception;
 import static jstella.core.JSConstants.*;
@@ -53,7 +55,7 @@ import static jstella.core.JSConstants.*;
  * @author Bradford W. Mott and the Stella team (original)
  * J.L. Allen (Java translation)
  */
-public class JSSystem implements IfcSystem, java.io.Serializable {
+public class JSSystem implements IfcSystem, IfcDecodeCacheSupport, IfcIdleLoopSupport, java.io.Serializable {
     private final static long serialVersionUID = 258470027807684384L;
     
     /**
@@ -68,6 +70,25 @@ public class JSSystem implements IfcSystem, java.io.Serializable {
     
     private PageAccess[] myPageAccessTable=new PageAccess[PAGE_COUNT];
     
+    /*
+     * The memory map, flattened into parallel arrays (one element per page), so that
+     * peek() and poke() don't have to go through a PageAccess object for every access.
+     * setPageAccess(...) keeps these in step with myPageAccessTable, and they are
+     * rebuilt from it when a saved game is loaded.
+     */
+    private transient byte[][] myPagePeekMemory;
+    private transient int[] myPagePeekBase;
+    private transient byte[][] myPagePokeMemory;
+    private transient int[] myPagePokeBase;
+    private transient IfcDevice[] myPageDevice;
+    private transient byte[] myPageKind;
+    
+    // Kinds of device, for myPageKind (the TIA and the RIOT get their own, so their calls aren't virtual)
+    private final static byte PAGE_KIND_DEVICE=0;
+    private final static byte PAGE_KIND_TIA=1;
+    private final static byte PAGE_KIND_RIOT=2;
+    private final static byte PAGE_KIND_NULL=3;
+    
     
     private java.util.List<IfcDevice> myDeviceList=new java.util.ArrayList<IfcDevice>();
     private int myNumberOfDevices=0;
@@ -79,6 +100,11 @@ public class JSSystem implements IfcSystem, java.io.Serializable {
     private int myDataBusState=0;
     private boolean myDataBusLocked=false;
     
+    // Used by the CPU's decode cache (see IfcDecodeCacheSupport)
+    private transient int myMappingGeneration=0;
+    private transient int myCodeGeneration=0;
+    private transient byte[] myCodeImage=null;
+    
     
     
     
@@ -98,6 +124,7 @@ public class JSSystem implements IfcSystem, java.io.Serializable {
     public JSSystem(JSConsole aConsole) {
         assert((1 <= LOG_PAGESIZE) && (LOG_PAGESIZE <= LOG_MEMSIZE) && (LOG_MEMSIZE <= 16));  // Make sure the settings are reasonable
         myConsole=aConsole;
+        createPageTables();
         clearPageAccesses(); // Installs null devices for every page
         myDataBusLocked = false;  // Bus starts out unlocked (in other words, peek() changes myDataBusState)
         attach(new J6507(this)); //creates the CPU and installs it
@@ -107,9 +134,62 @@ public class JSSystem implements IfcSystem, java.io.Serializable {
     private void readObject(java.io.ObjectInputStream in)  throws IOException, ClassNotFoundException {
         
         in.defaultReadObject();
+        createPageTables();
+        for (int zPage=0; zPage<PAGE_COUNT; zPage++) {  updatePageTables(zPage);  }
+    }
+    
+    private void createPageTables() {
+        myPagePeekMemory=new byte[PAGE_COUNT][];
+        myPagePeekBase=new int[PAGE_COUNT];
+        myPagePokeMemory=new byte[PAGE_COUNT][];
+        myPagePokeBase=new int[PAGE_COUNT];
+        myPageDevice=new IfcDevice[PAGE_COUNT];
+        myPageKind=new byte[PAGE_COUNT];
     }
     
+    /**
+     * Copies the given page's PageAccess into the flattened page tables.
+     * @param aPage the page number
+     */
+    private void updatePageTables(int aPage) {
+        PageAccess zAccess=myPageAccessTable[aPage];
+        IfcDevice zDevice=zAccess.getDevice();
+        myPagePeekMemory[aPage]=zAccess.getDirectPeekMemory();
+        myPagePeekBase[aPage]=zAccess.getDirectPeekBaseIndex();
+        myPagePokeMemory[aPage]=zAccess.getDirectPokeMemory();
+        myPagePokeBase[aPage]=zAccess.getDirectPokeBaseIndex();
+        myPageDevice[aPage]=zDevice;
+        if (zDevice instanceof JSTIA) myPageKind[aPage]=PAGE_KIND_TIA;
+        else if (zDevice instanceof JSRiot) myPageKind[aPage]=PAGE_KIND_RIOT;
+        else if (zDevice instanceof NullDevice) myPageKind[aPage]=PAGE_KIND_NULL;
+        else myPageKind[aPage]=PAGE_KIND_DEVICE;
+    }
+    
+    
+    
+    /**
+     * Writes the system's state, and the CPU's (see JSConsole.saveState(...)).
+     * @param aOut where to write the state
+     * @throws java.io.IOException if the output throws one
+     */
+    public void saveState(DataOutput aOut) throws IOException {
+        aOut.writeInt(getCycles()); //publishes the CPU's cycles first
+        aOut.writeInt(myDataBusState);
+        aOut.writeBoolean(myDataBusLocked);
+        myCPU.saveState(aOut);
+    }
     
+    /**
+     * Puts back the state written by saveState(...).
+     * @param aIn where to read the state from
+     * @throws java.io.IOException if the input throws one
+     */
+    public void loadState(DataInput aIn) throws IOException {
+        myCycles=aIn.readInt();
+        myDataBusState=aIn.readInt();
+        myDataBusLocked=aIn.readBoolean();
+        myCPU.loadState(aIn);
+    }
     
     //public void lockDataBus() { myDataBusLocked = true; }
     //public void unlockDataBus() { myDataBusLocked = false;  }
@@ -125,7 +205,10 @@ public class JSSystem implements IfcSystem, java.io.Serializable {
      * last multiple processor cycles.
      * @return the number of processor cycles that have elapsed
      */
-    public int getCycles()    {  return myCycles;    }
+    public int getCycles()    {
+        if (myCPU!=null) myCPU.publishCycles(); // the CPU only reports its cycles when asked
+        return myCycles;
+    }
     /**
      * This does the same exact thing as processorCycle().<br>
      * (I'm can't remember why there are two different methods... JLA Sep 7 2007)
@@ -260,6 +343,7 @@ public class JSSystem implements IfcSystem, java.io.Serializable {
      * called by the TIA at the start of a new visual frame.
      */
     public void resetCycles() {
+        if (myCPU!=null) myCPU.publishCycles(); // cycles the CPU hasn't reported yet belong to the count being reset
         for (IfcDevice zDev : myDeviceList) {  zDev.systemCyclesReset();  } // First we let all of the device attached to me know about the reset
        // if (myCycles!=JSTIA.CPU_CYCLES_PER_FRAME) System.out.println("JSSystem warning: resetting cycles at " + myCycles);
         myCycles = 0;  // Now, we reset cycle count to zero
@@ -286,10 +370,49 @@ public class JSSystem implements IfcSystem, java.io.Serializable {
         assert(access.getDevice() != null);   // Make sure the access methods make sense
         
         myPageAccessTable[page].copyDataFrom(access);
+        updatePageTables(page);
+        myMappingGeneration++;
+        if ((access.isReadOnly()==true)&&(access.getDirectPeekMemory()!=myCodeImage)) {
+            myCodeImage=access.getDirectPeekMemory();
+            invalidateDecodeCache();
+        }//end : new ROM image
         
         //System.out.println("DEBUG - assigning page " + page + " to " + access.getDevice().name());
     }
     
+    /**
+     * Assigns a run of PageAccess objects to consecutive pages, as setPageAccess(...) would
+     * for each of them.  (Like setPageAccess(...), this copies the data, so the same array
+     * can be passed again later, e.g. every time a cartridge switches to a given bank.)
+     * @param aFirstPage the page number to assign the first PageAccess to
+     * @param aAccesses the PageAccess objects
+     */
+    public void setPageAccesses(int aFirstPage, PageAccess[] aAccesses) {
+        for (int i=0; i<aAccesses.length; i++) {  setPageAccess(aFirstPage + i, aAccesses[i]);  }
+    }
+    
+    /**
+     * Replaces one array used by a device's direct peek/poke pages with another (e.g. when
+     * a cartridge switches from a shared ROM image to its own copy of it).  Pages that
+     * belong to other devices, or that use other arrays, are left alone.
+     * @param aDevice the device
+     * @param aOldMemory the array the pages were using
+     * @param aNewMemory the array they should use instead
+     */
+    public void replaceDirectMemory(IfcDevice aDevice, byte[] aOldMemory, byte[] aNewMemory) {
+        for (int zPage=0; zPage<PAGE_COUNT; zPage++) {
+            PageAccess zAccess=myPageAccessTable[zPage];
+            if ((zAccess.getDevice()==aDevice)&&(zAccess.replaceMemory(aOldMemory, aNewMemory)==true)) {
+                updatePageTables(zPage);
+                myMappingGeneration++;
+            }//end : replaced
+        }//end : for zPage
+        if (myCodeImage==aOldMemory) {
+            myCodeImage=aNewMemory;
+            invalidateDecodeCache();
+        }//end : was the code image
+    }
+    
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     /**
      * Retrieves the PageAccess for a given page.
@@ -311,8 +434,18 @@ public class JSSystem implements IfcSystem, java.io.Serializable {
     
     public int peek(int addr) {
         assert(addr>=0);
+        final int zPage=(addr & ADDRESS_MASK) >>> PAGE_SHIFT;
+        final byte[] zMemory=myPagePeekMemory[zPage];
         int result=0;
-        result=pageAccessAtAddress(addr).peek(addr);
+        if (zMemory!=null) result=zMemory[myPagePeekBase[zPage] + (addr & PAGE_MASK)] & 0xFF;
+        else {
+            switch (myPageKind[zPage]) {
+                case PAGE_KIND_TIA : result=((JSTIA)myPageDevice[zPage]).peek(addr); break;
+                case PAGE_KIND_RIOT : result=((JSRiot)myPageDevice[zPage]).peek(addr); break;
+                case PAGE_KIND_NULL : result=myNullDevice.peek(addr); break;
+                default : result=myPageDevice[zPage].peek(addr); break;
+            }//end : switch
+        }//end : indirect
         
         myDataBusState = result;
         return result;
@@ -329,8 +462,17 @@ public class JSSystem implements IfcSystem, java.io.Serializable {
      */
     public void poke(int addr, int aByteValue) {
         assert((aByteValue>=0)&&(aByteValue<0x100));
-      
-        pageAccessAtAddress(addr).poke(addr, aByteValue);
+        final int zPage=(addr & ADDRESS_MASK) >>> PAGE_SHIFT;
+        final byte[] zMemory=myPagePokeMemory[zPage];
+        if (zMemory!=null) zMemory[myPagePokeBase[zPage] + (addr & PAGE_MASK)]=(byte)aByteValue;
+        else {
+            switch (myPageKind[zPage]) {
+                case PAGE_KIND_TIA : ((JSTIA)myPageDevice[zPage]).poke(addr, aByteValue); break;
+                case PAGE_KIND_RIOT : ((JSRiot)myPageDevice[zPage]).poke(addr, aByteValue); break;
+                case PAGE_KIND_NULL : myNullDevice.poke(addr, aByteValue); break;
+                default : myPageDevice[zPage].poke(addr, aByteValue); break;
+            }//end : switch
+        }//end : indirect
         myDataBusState = aByteValue;
     }
     
@@ -366,4 +508,48 @@ public class JSSystem implements IfcSystem, java.io.Serializable {
     
     
     
+// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+    /**
+     * Tells the CPU to throw away everything it has decoded from ROM.  This is called
+     * when a ROM image is changed (e.g. by Cartridge.patch(...)).
+     */
+    public void invalidateDecodeCache() {  myCodeGeneration++;  }
+    
+    public int getCodeIndex(int aAddress) {
+        return pageAccessAtAddress(aAddress).getReadOnlyIndex(aAddress);
+    }
+    
+    public int peekCode(int aAddress) {
+        return pageAccessAtAddress(aAddress).directPeek((char)(aAddress & PAGE_MASK));
+    }
+    
+    public int getMappingGeneration() {  return myMappingGeneration;  }
+    
+    public int getCodeGeneration() {  return myCodeGeneration;  }
+    
+    public void setDataBusState(int aByteValue) {  myDataBusState=aByteValue;  }
+    
+// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+    /**
+     * Returns the RIOT that reads of the given address go to, or null if they go
+     * somewhere else.  Only the RIOT's timer can be predicted for the CPU's idle loop skipping.
+     */
+    private JSRiot riotAtAddress(int aAddress) {
+        PageAccess zAccess=pageAccessAtAddress(aAddress);
+        if ((zAccess.usesDirectPeek()==false)&&(zAccess.getDevice() instanceof JSRiot)) return (JSRiot)zAccess.getDevice();
+        else return null;
+    }
+    
+    public int predictPeek(int aAddress, int aCyclesAhead) {
+        JSRiot zRiot=riotAtAddress(aAddress);
+        if (zRiot!=null) return zRiot.predictPeek(aAddress, getCycles() + aCyclesAhead);
+        else return -1;
+    }
+    
+    public int predictUnchangedCycles(int aAddress, int aCyclesAhead) {
+        JSRiot zRiot=riotAtAddress(aAddress);
+        if (zRiot!=null) return zRiot.predictUnchangedCycles(aAddress, getCycles() + aCyclesAhead);
+        else return 0;
+    }
+    
 }
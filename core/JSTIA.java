@@ -356,7 +356,7 @@ public class JSTIA implements IfcDevice, java.io.Serializable {
     
     
     
-    private JSAudio getAudio() { return myConsole.getAudio(); }
+    private JSAudio getAudio() { return myConsole.isAudioSuspended() ? null : myConsole.getAudio(); }
     
     
     
@@ -390,11 +390,124 @@ public class JSTIA implements IfcDevice, java.io.Serializable {
         return "TIA";
     }
     
+// - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+    public void saveState(DataOutput aOut) throws IOException {
+        aOut.writeBoolean(M0Disabled);
+        aOut.writeBoolean(M1Disabled);
+        writeInts(aOut, myCurrentM0Mask);
+        writeInts(aOut, myCurrentM1Mask);
+        writeInts(aOut, myCurrentP0Mask);
+        writeInts(aOut, myCurrentP1Mask);
+        writeInts(aOut, myCurrentBLMask);
+        writeInts(aOut, myTIAPokeRegister);
+        
+        aOut.writeBoolean(myColorLossEnabled);
+        aOut.writeBoolean(myPartialFrameFlag);
+        aOut.writeInt(myFramePointer);
+        aOut.writeInt(myFrameXStart);
+        aOut.writeInt(myClockWhenFrameStarted);
+        aOut.writeInt(myClockStartDisplay);
+        aOut.writeInt(myClockStopDisplay);
+        aOut.writeInt(myClockAtLastUpdate);
+        aOut.writeInt(myClocksToEndOfScanLine);
+        aOut.writeInt(myScanlineCountForLastFrame);
+        aOut.writeInt(myCurrentScanline);
+        aOut.writeInt(myMaximumNumberOfScanlines);
+        aOut.writeInt(myVSYNCFinishClock);
+        aOut.writeInt(myEnabledObjects);
+        aOut.writeInt(myPlayfieldPriorityAndScore);
+        aOut.writeInt(myVBlankOff);
+        aOut.writeInt(myVBlankOn);
+        aOut.writeInt(myVSyncOn);
+        aOut.writeInt(myDetectedYStart);
+        aOut.writeInt(myDetectedYStop);
+        
+        aOut.writeInt(myDGRP0);
+        aOut.writeInt(myDGRP1);
+        aOut.writeBoolean(myDENABL);
+        aOut.writeInt(myCollision);
+        aOut.writeInt(myPOSP0);
+        aOut.writeInt(myPOSP1);
+        aOut.writeInt(myPOSM0);
+        aOut.writeInt(myPOSM1);
+        aOut.writeInt(myPOSBL);
+        aOut.writeInt(myCurrentGRP0);
+        aOut.writeInt(myCurrentGRP1);
+        
+        aOut.writeInt(myDumpDisabledCycle);
+        aOut.writeBoolean(myDumpEnabled);
+        aOut.writeInt(myLastHMOVEClock);
+        aOut.writeBoolean(myHMOVEBlankEnabled);
+        aOut.writeBoolean(myAllowHMOVEBlanks);
+        aOut.writeBoolean(myM0CosmicArkMotionEnabled);
+        aOut.writeInt(myM0CosmicArkCounter);
+    }
+    
+    public void loadState(DataInput aIn) throws IOException {
+        M0Disabled=aIn.readBoolean();
+        M1Disabled=aIn.readBoolean();
+        readInts(aIn, myCurrentM0Mask);
+        readInts(aIn, myCurrentM1Mask);
+        readInts(aIn, myCurrentP0Mask);
+        readInts(aIn, myCurrentP1Mask);
+        readInts(aIn, myCurrentBLMask);
+        readInts(aIn, myTIAPokeRegister);
+        
+        myColorLossEnabled=aIn.readBoolean();
+        myPartialFrameFlag=aIn.readBoolean();
+        myFramePointer=aIn.readInt();
+        myFrameXStart=aIn.readInt();
+        myClockWhenFrameStarted=aIn.readInt();
+        myClockStartDisplay=aIn.readInt();
+        myClockStopDisplay=aIn.readInt();
+        myClockAtLastUpdate=aIn.readInt();
+        myClocksToEndOfScanLine=aIn.readInt();
+        myScanlineCountForLastFrame=aIn.readInt();
+        myCurrentScanline=aIn.readInt();
+        myMaximumNumberOfScanlines=aIn.readInt();
+        myVSYNCFinishClock=aIn.readInt();
+        myEnabledObjects=aIn.readInt();
+        myPlayfieldPriorityAndScore=aIn.readInt();
+        myVBlankOff=aIn.readInt();
+        myVBlankOn=aIn.readInt();
+        myVSyncOn=aIn.readInt();
+        myDetectedYStart=aIn.readInt();
+        myDetectedYStop=aIn.readInt();
+        
+        myDGRP0=aIn.readInt();
+        myDGRP1=aIn.readInt();
+        myDENABL=aIn.readBoolean();
+        myCollision=aIn.readInt();
+        myPOSP0=aIn.readInt();
+        myPOSP1=aIn.readInt();
+        myPOSM0=aIn.readInt();
+        myPOSM1=aIn.readInt();
+        myPOSBL=aIn.readInt();
+        myCurrentGRP0=aIn.readInt();
+        myCurrentGRP1=aIn.readInt();
+        
+        myDumpDisabledCycle=aIn.readInt();
+        myDumpEnabled=aIn.readBoolean();
+        myLastHMOVEClock=aIn.readInt();
+        myHMOVEBlankEnabled=aIn.readBoolean();
+        myAllowHMOVEBlanks=aIn.readBoolean();
+        myM0CosmicArkMotionEnabled=aIn.readBoolean();
+        myM0CosmicArkCounter=aIn.readInt();
+    }
+    
+    private static void writeInts(DataOutput aOut, int[] aValues) throws IOException {
+        for (int i=0; i<aValues.length; i++) {  aOut.writeInt(aValues[i]);  }
+    }
+    
+    private static void readInts(DataInput aIn, int[] aValues) throws IOException {
+        for (int i=0; i<aValues.length; i++) {  aValues[i]=aIn.readInt();  }
+    }
+    
 // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
     public void reset() {
         // Reset the sound device
         // dbg.out("RESETTING TIA");
-        getAudio().reset(); //The TIA is in charge of the audio, at least as far as system is concerned
+        if (getAudio()!=null) getAudio().reset(); //The TIA is in charge of the audio, at least as far as system is concerned
         
         for (int i=0; i<myTIAPokeRegister.length; i++) {
             myTIAPokeRegister[i]=0;
@@ -1974,7 +2087,7 @@ public class JSTIA implements IfcDevice, java.io.Serializable {
             case AUDF1:    // Audio frequency 1
             case AUDV0:    // Audio volume 0
             case AUDV1:    // Audio volume 1
-                getAudio().pokeAudioRegister(addr, aByteValue, mySystem.getCycles()); //outsource to JSAudio
+                if (getAudio()!=null) getAudio().pokeAudioRegister(addr, aByteValue, mySystem.getCycles()); //outsource to JSAudio (unless headless)
                 break;
                 
                 
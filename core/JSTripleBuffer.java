@@ -0,0 +1,116 @@
+/*
+ * JSTripleBuffer.java
+ *
+ * To change this template, choose Tools | Template Manager
+ * and open the template in the editor.
+ */
+
+package jstella.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands finished frames from the thread that emulates them to the thread that paints
+ * them, without either one ever having to wait for the other.
+ * <p>
+ * There are three slots.  The emulation thread always owns one (the back slot), and fills
+ * it with the next frame; the painting thread always owns another (the front slot), and
+ * paints from it; the third (the middle slot) holds the latest finished frame.  Publishing a
+ * frame swaps the back slot with the middle one, and taking a frame swaps the front slot
+ * with the middle one, each with a single atomic operation.  If the emulation gets ahead
+ * of the painting, the frames that were never taken are simply replaced by newer ones.
+ * </p>
+ * <p>
+ * Only one thread may call getBackSlot()/publish(), and only one (other) thread may call
+ * takeFrontSlot()/awaitFrontSlot(...).
+ * </p>
+ * @author J.L. Allen
+ */
+public class JSTripleBuffer {
+
+    private final static int INDEX_MASK=0x03;
+    private final static int NEW_FRAME=0x04; //set in myMiddle when the middle slot holds a frame that hasn't been taken
+
+    /**
+     * A finished frame : the palette indices of the current and the previous frame buffer
+     * (the previous one is needed for phosphor mode), and what it takes to paint them.
+     */
+    public static class Slot {
+        public final int[] myCurrentFrame;
+        public final int[] myPreviousFrame;
+        public int myWidth=0;
+        public int myHeight=0;
+        public boolean myGray=false;
+
+        private Slot(int aSize) {
+            myCurrentFrame=new int[aSize];
+            myPreviousFrame=new int[aSize];
+        }
+    }//END INNER CLASS
+
+    private final Slot[] mySlots;
+    private final AtomicInteger myMiddle=new AtomicInteger(1);
+    private int myBack=0;  //only touched by the emulation thread
+    private int myFront=2; //only touched by the painting thread
+    private volatile Thread myWaitingThread=null;
+
+
+    /**
+     * Creates a triple buffer.
+     * @param aFrameSize the number of pixels in each frame buffer
+     */
+    public JSTripleBuffer(int aFrameSize) {
+        mySlots=new Slot[] { new Slot(aFrameSize), new Slot(aFrameSize), new Slot(aFrameSize) };
+    }
+
+    /**
+     * Returns the slot that the next frame is to be put in.  (Emulation thread only.)
+     * @return the back slot
+     */
+    public Slot getBackSlot() {
+        return mySlots[myBack];
+    }
+
+    /**
+     * Makes the frame in the back slot the latest frame, and wakes the painting thread
+     * if it is waiting for one.  (Emulation thread only.)
+     */
+    public void publish() {
+        myBack=myMiddle.getAndSet(myBack | NEW_FRAME) & INDEX_MASK;
+        Thread zWaiting=myWaitingThread;
+        if (zWaiting!=null) LockSupport.unpark(zWaiting);
+    }
+
+    /**
+     * Takes the latest frame, if there is one that hasn't been taken yet.  The slot returned
+     * belongs to the caller until the next call.  (Painting thread only.)
+     * @return the slot holding the latest frame, or null if there is no new frame
+     */
+    public Slot takeFrontSlot() {
+        if ((myMiddle.get() & NEW_FRAME)==0) return null;
+        myFront=myMiddle.getAndSet(myFront) & INDEX_MASK;
+        return mySlots[myFront];
+    }
+
+    /**
+     * Waits for a new frame, and takes it (see takeFrontSlot()).  (Painting thread only.)
+     * @param aTimeoutNanos the longest to wait, in nanoseconds
+     * @return the slot holding the latest frame, or null if no new frame was published in time
+     * (or the thread was unparked for some other reason)
+     */
+    public Slot awaitFrontSlot(long aTimeoutNanos) {
+        Slot zReturn=takeFrontSlot();
+        if (zReturn==null) {
+            myWaitingThread=Thread.currentThread();
+            zReturn=takeFrontSlot(); //in case one was published before the emulation thread could see myWaitingThread
+            if (zReturn==null) {
+                LockSupport.parkNanos(this, aTimeoutNanos);
+                zReturn=takeFrontSlot();
+            }//end : waiting
+            myWaitingThread=null;
+        }//end : no frame yet
+        return zReturn;
+    }
+
+}//CLASS END
@@ -17,6 +17,7 @@ import java.awt.image.*;
 import java.awt.geom.*;
 import java.awt.font.*;
 import java.net.URL;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.*;
 
 import static jstella.core.JSConstants.*;
@@ -34,6 +35,8 @@ import static jstella.core.JSConstants.*;
  *     colors pertaining to that pixel.  It is the TIA's job to set the values of this
  *     array--it does so when JSConsole's doFrame() calls the TIA's processFrame() method.
  *     When the JSConsole calls the doVideo() method, this data should already be updated.
+ *     (The frame buffers themselves are kept by the JSFrameBuffer superclass, which is
+ *     all that a headless console uses.)
  *     So JSVideo first takes the values in the FrameBuffer array and uses them to 
  *     set the pixels on the back buffer image to the corresponding color.  It then has
  *     the back buffer painted onto the GUI's canvas.
@@ -47,13 +50,10 @@ import static jstella.core.JSConstants.*;
  * @author Bradford W. Mott and the Stella team (original)
  * J.L. Allen (Java translation)
  */
-public class JSVideo implements java.io.Serializable{
+public class JSVideo extends JSFrameBuffer {
     private final static long serialVersionUID = 701607876730703063L;
     
     
-    public final static int DEFAULT_WIDTH=160;
-    public final static int DEFAULT_HEIGHT=200; //not sure if this is still used
-    
     public final static int DEFAULT_PHOSPHOR_BLEND=77; 
     
     private static java.util.Random myRandomGenerator=new java.util.Random();
@@ -61,6 +61,7 @@ public class JSVideo implements java.io.Serializable{
     
     
     private final static int[] PALETTE_GRAY_STANDARD;
+    private final static long PRESENTATION_WAIT_NANOS=100000000L; //how long the presentation thread waits for a frame before checking if it should stop
     
     static {
         PALETTE_GRAY_STANDARD=new int[256];
@@ -70,17 +71,11 @@ public class JSVideo implements java.io.Serializable{
         
     }//end : static
     
-    private JSConsole myConsole=null;
-    
     // TIA palettes for normal and phosphor modes
     private transient int[] myNormalPalette=new int[256];
     private transient int[][] myBlendedPalette=new int[256][256];
     private transient int[] myGrayPalette=new int[256];
     
-    private transient int[] myCurrentFrameBuffer=null;
-    private transient int[] myPreviousFrameBuffer=null;
-    
-    
     private transient int[] myResidualColorBuffer=null;
     
     private boolean myGrayPaletteMode=false;
@@ -94,6 +89,11 @@ public class JSVideo implements java.io.Serializable{
     private transient BufferedImage myBackBuffer=null;//(DEFAULT_WIDTH, DEFAULT_HEIGHT); //new BufferedImage(DEFAULT_WIDTH, DEFAULT_HEIGHT, BufferedImage.TYPE_INT_ARGB);
     private transient int[] myBackBufferData=null; //new byte[0];
     
+    // Threaded presentation (see setThreadedPresentation(...))
+    private transient JSTripleBuffer myTripleBuffer=null;
+    private transient volatile Thread myPresentationThread=null;
+    private transient AtomicBoolean myRedrawRequest=new AtomicBoolean(true);
+    
     
     private transient ImageIcon myTestPattern=null;
     
@@ -105,14 +105,11 @@ public class JSVideo implements java.io.Serializable{
      * @param aConsole the parent console
      */
     protected JSVideo(JSConsole aConsole) {
-        myConsole=aConsole;
+        super(aConsole);
         myRedrawTIAIndicator=true;
         myUsePhosphor=false;
         myPhosphorBlendPercent=DEFAULT_PHOSPHOR_BLEND;
        
-        // Allocate buffers for two frame buffers
-        myCurrentFrameBuffer = new int[CLOCKS_PER_LINE_VISIBLE * FRAME_Y_MAX];
-        myPreviousFrameBuffer = new int[CLOCKS_PER_LINE_VISIBLE * FRAME_Y_MAX];
         initBackBuffer(DEFAULT_WIDTH, DEFAULT_HEIGHT);
         initPalettes();
         loadImages();
@@ -131,9 +128,8 @@ public class JSVideo implements java.io.Serializable{
     private void readObject(java.io.ObjectInputStream in)  throws IOException, ClassNotFoundException {
         in.defaultReadObject();
         if (myClipRect==null) myClipRect=new ClipRectangle();
+        myRedrawRequest=new AtomicBoolean(true);
       //  if (myBackBuffer==null) myBackBuffer=createBackBuffer(getWidth(), getHeight()); //new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_ARGB);
-        if (myCurrentFrameBuffer==null)  myCurrentFrameBuffer = new int[CLOCKS_PER_LINE_VISIBLE * FRAME_Y_MAX];
-        if (myPreviousFrameBuffer==null) myPreviousFrameBuffer = new int[CLOCKS_PER_LINE_VISIBLE * FRAME_Y_MAX];
         initBackBuffer(getWidth(), getHeight());
         initPalettes();
         loadImages();
@@ -202,59 +198,6 @@ public class JSVideo implements java.io.Serializable{
         myGrayPalette=new int[256];
     }
     
-    /**
-     * Clears the buffers.
-     */
-    protected void clearBuffers() {
-        for(int i = 0; i < myCurrentFrameBuffer.length; ++i) {
-            myCurrentFrameBuffer[i] = 0;
-            myPreviousFrameBuffer[i] = 0;
-        }
-        
-    }
-    
-    /**
-     * This is called once a frame to swap the previous and the current frame buffers.
-     * The previous becomes the current, and the former current becomes the previous.
-     */
-    protected void swapFrameBuffers() {
-        int[] tmp = myCurrentFrameBuffer;
-        myCurrentFrameBuffer = myPreviousFrameBuffer;
-        myPreviousFrameBuffer = tmp;
-    }
-    
-    /**
-     * Returns the current frame buffer.
-     * <p>
-     *    The current frame buffer represents all the pixels on the display screen (with
-     *    each integer representing the index of a color in the current palette).
-     * </p>
-     * @return the current frame buffer
-     */
-    protected int[] getCurrentFrameBuffer() { return myCurrentFrameBuffer; }
-    /**
-     * Returns the previous frame buffer.
-     * There are two frame buffers, a current and a previous, and they are switched every
-     * frame.  This way, JSVideo can keep track of which pixels have changed, so that
-     * it only has to redraw things that have changed.
-     * @return previous frame buffer
-     */
-    protected int[] getPreviousFrameBuffer() { return myPreviousFrameBuffer; }
-    
-    /**
-     * Calls the console's getWidth() method.
-     * @return width of the display (as far as TIA is concerned)
-     */
-    protected int getWidth() { return myConsole.getDisplayWidth();}
-    /**
-     * Calls the console's getHeight() method.
-     * @return height of the display (as far as TIA is concerned)
-     */
-    protected int getHeight() { return myConsole.getDisplayHeight(); }
-    
-    
-    
-    
     /**
      * Is used to paint the current frame in shades of gray...is used when paused.
      * This method first changes the palette to grayscale, then repaints the 
@@ -299,7 +242,7 @@ public class JSVideo implements java.io.Serializable{
     /**
      * Erases any images on the back buffer
      */
-    protected  void clearBackBuffer() {
+    protected synchronized void clearBackBuffer() {
         Graphics2D z2D=myBackBuffer.createGraphics();
         z2D.setColor(Color.BLACK);
         z2D.fillRect(0,0, myBackBuffer.getWidth(), myBackBuffer.getHeight());
@@ -314,7 +257,7 @@ public class JSVideo implements java.io.Serializable{
      * @param aNewWidth new display width
      * @param aNewHeight new display height
      */
-    protected void adjustBackBuffer(int aNewWidth, int aNewHeight) {
+    protected synchronized void adjustBackBuffer(int aNewWidth, int aNewHeight) {
         if ((aNewWidth>myBackBuffer.getWidth())||(aNewHeight > myBackBuffer.getHeight())) {
          //   myBackBuffer=createBackBuffer(
              initBackBuffer(Math.max(myBackBuffer.getWidth(), aNewWidth), Math.max(myBackBuffer.getHeight(), aNewHeight));//new BufferedImage(Math.max(myBackBuffer.getWidth(), aNewWidth), Math.max(myBackBuffer.getHeight(), aNewHeight), BufferedImage.TYPE_INT_ARGB);
@@ -344,6 +287,7 @@ public class JSVideo implements java.io.Serializable{
      */
     protected void refresh() {
         myRedrawTIAIndicator = true;
+        myRedrawRequest.set(true);
     }
     
     /**
@@ -361,7 +305,7 @@ public class JSVideo implements java.io.Serializable{
     /**
      * Draws static ("snow") on the back buffer, and paints the back buffer to the canvas.
      */
-    protected void doSnow() {
+    protected synchronized void doSnow() {
         if (myBackBuffer!=null) {
             snowBackBuffer();
             if (getCanvas()!=null) getCanvas().paintCanvas(myBackBuffer, myBackBuffer.getWidth(), myBackBuffer.getHeight());
@@ -405,12 +349,19 @@ public class JSVideo implements java.io.Serializable{
      * repaint itself immediately.
      */
     protected void doFrameVideo() {
+        if (myPresentationThread!=null) {
+            publishFrame();
+            return;
+        }//end : the presentation thread paints it
        
        // long zTimeA=System.nanoTime();
-        prepareBackBuffer();
-      //  long zTimeB=System.nanoTime();
+        synchronized (this) {
+            prepareBackBuffer(getCurrentFrameBuffer(), getPreviousFrameBuffer(), getWidth(), getHeight(), myGrayPaletteMode, myRedrawTIAIndicator);
+            myRedrawTIAIndicator=false;
+          //  long zTimeB=System.nanoTime();
      
-        paintBackBufferToCanvas();
+            paintBackBufferToCanvas(getWidth(), getHeight());
+        }//end : synchronized
      //    long zTimeC=System.nanoTime();
    /*        if (JSConsole.DEBUG_MODE_ON==true)
         {
@@ -426,14 +377,21 @@ public class JSVideo implements java.io.Serializable{
     
     /**
      * This method takes data from the TIA object and uses it to draw the back buffer.
-     */
-    private void prepareBackBuffer() {
+     * @param aCurrentBuffer the frame's palette indices
+     * @param aPrevBuffer the previous frame's palette indices (for phosphor mode)
+     * @param aWidth the frame's width
+     * @param aHeight the frame's height
+     * @param aGray true to draw it in shades of gray
+     * @param aRedraw true to draw every pixel, not just the ones that have changed
+     */
+    private void prepareBackBuffer(int[] aCurrentBuffer, int[] aPrevBuffer, int aWidth, int aHeight, boolean aGray, boolean aRedraw) {
       
-            int[] zCurrentBuffer=getCurrentFrameBuffer();
-            int[] zPrevBuffer=getPreviousFrameBuffer();
-            if (myResidualColorBuffer==null) myResidualColorBuffer=new int[zCurrentBuffer.length]; //maybe a better way to set it
-            int zWidth  = Math.min(getWidth(), myBackBuffer.getWidth());
-            int zHeight = Math.min(getHeight(), myBackBuffer.getHeight());
+            int[] zCurrentBuffer=aCurrentBuffer;
+            int[] zPrevBuffer=aPrevBuffer;
+            int[] zPalette=aGray ? myGrayPalette : myNormalPalette;
+            if (myResidualColorBuffer==null) myResidualColorBuffer=new int[FRAME_BUFFER_SIZE]; //maybe a better way to set it
+            int zWidth  = Math.min(aWidth, myBackBuffer.getWidth());
+            int zHeight = Math.min(aHeight, myBackBuffer.getHeight());
             
             int zBufferIndexAtLineStart = 0;
             
@@ -447,9 +405,9 @@ public class JSVideo implements java.io.Serializable{
                     
                     //TODO : make the following code more "elegant", and self-explanatory
                     int zOldPaintedColor= myResidualColorBuffer[zBufferIndex];
-                    int zNewPaintedColor= myUsePhosphor ? getBlendedColorInt(zOldColorIndex, zNewColorIndex) : getColorInt(zNewColorIndex);
+                    int zNewPaintedColor= myUsePhosphor ? getBlendedColorInt(zOldColorIndex, zNewColorIndex) : zPalette[zNewColorIndex & 0xFF];
                     
-                    if((zNewPaintedColor != zOldPaintedColor) || (myRedrawTIAIndicator) ) {   // either the color has changed, or we have been ordered to draw it regardless
+                    if((zNewPaintedColor != zOldPaintedColor) || (aRedraw) ) {   // either the color has changed, or we have been ordered to draw it regardless
                         myClipRect.addPoint(x,y);                   // expands the clip rectangle, telling it there is another part of the screen in need of update
                         
                         myResidualColorBuffer[zBufferIndex]=zNewPaintedColor;
@@ -464,7 +422,6 @@ public class JSVideo implements java.io.Serializable{
                 
                 zBufferIndexAtLineStart += zWidth;  //moving to next line
             }//end : for y to height loop
-            myRedrawTIAIndicator=false;
        
     }//::
     
@@ -476,15 +433,17 @@ public class JSVideo implements java.io.Serializable{
     
     /**
      * This method paints the back buffer to the previously specified canvas
+     * @param aWidth the frame's width
+     * @param aHeight the frame's height
      */
-    private void paintBackBufferToCanvas() {
+    private void paintBackBufferToCanvas(int aWidth, int aHeight) {
         
         if (getCanvas()!=null) {
             //Tells the canvas to call the paint command...the coordinates are very important...drawing the screen is incredibly slow, so you must only
             //draw a portion of it at a time.  The portion that has changed is contained in myClipRect
             //The calculations are there to scale, converting double into ints by rounding the correct direction
             
-            getCanvas().paintCanvas(myBackBuffer, getWidth(), getHeight(), myClipRect);
+            getCanvas().paintCanvas(myBackBuffer, aWidth, aHeight, myClipRect);
             
             
             myClipRect.resetRect();
@@ -492,11 +451,80 @@ public class JSVideo implements java.io.Serializable{
         
     }
     
+    // - - - - - - - - - - - - - - THREADED PRESENTATION - - - - - - - - - - - - - -
+    
+    /**
+     * Turns threaded presentation on or off.  Normally, doFrameVideo() turns the frame's
+     * palette indices into colors on the back buffer and has the canvas paint it, all on the
+     * thread that is running the emulator.  With threaded presentation, doFrameVideo() only
+     * copies the indices into a JSTripleBuffer, and a presentation thread of its own does
+     * the rest, so that the emulation of the next frame can go on while (perhaps on another
+     * processor) the last one is being drawn, and a slow repaint never holds up the emulation.
+     * If the emulation gets ahead of the presentation thread, the frames it didn't get to
+     * are skipped.
+     * @param aEnable true to turn threaded presentation on
+     */
+    protected void setThreadedPresentation(boolean aEnable) {
+        if ((aEnable==true)&&(myPresentationThread==null)) {
+            if (myTripleBuffer==null) myTripleBuffer=new JSTripleBuffer(FRAME_BUFFER_SIZE);
+            Thread zThread=new Thread(new Runnable() {
+                public void run() { runPresentation(); }
+            }, "JStella-Presentation");
+            zThread.setDaemon(true);
+            myPresentationThread=zThread;
+            zThread.start();
+        }//end : start
+        else if ((aEnable==false)&&(myPresentationThread!=null)) {
+            Thread zThread=myPresentationThread;
+            myPresentationThread=null;
+            java.util.concurrent.locks.LockSupport.unpark(zThread);
+            try {
+                if (zThread!=Thread.currentThread()) zThread.join();
+            }//end : try
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }//end : stop
+    }
+    
+    protected boolean isThreadedPresentation() {
+        return (myPresentationThread!=null);
+    }
+    
+    /**
+     * Copies the frame into the triple buffer for the presentation thread.
+     */
+    private void publishFrame() {
+        JSTripleBuffer.Slot zSlot=myTripleBuffer.getBackSlot();
+        int zWidth=getWidth();
+        int zHeight=getHeight();
+        int zSize=Math.min(zWidth * zHeight, FRAME_BUFFER_SIZE);
+        System.arraycopy(getCurrentFrameBuffer(), 0, zSlot.myCurrentFrame, 0, zSize);
+        System.arraycopy(getPreviousFrameBuffer(), 0, zSlot.myPreviousFrame, 0, zSize);
+        zSlot.myWidth=zWidth;
+        zSlot.myHeight=zHeight;
+        zSlot.myGray=myGrayPaletteMode;
+        myTripleBuffer.publish();
+    }
+    
+    private void runPresentation() {
+        while (myPresentationThread==Thread.currentThread()) {
+            JSTripleBuffer.Slot zSlot=myTripleBuffer.awaitFrontSlot(PRESENTATION_WAIT_NANOS);
+            if (zSlot!=null) {
+                synchronized (this) {
+                    boolean zRedraw=myRedrawRequest.getAndSet(false);
+                    prepareBackBuffer(zSlot.myCurrentFrame, zSlot.myPreviousFrame, zSlot.myWidth, zSlot.myHeight, zSlot.myGray, zRedraw);
+                    paintBackBufferToCanvas(zSlot.myWidth, zSlot.myHeight);
+                }//end : synchronized
+            }//end : new frame
+        }//end : while
+    }
+    
     /**
      * The "test pattern" is the image of colored bars that may be display when 
      * no ROM is loaded.  This method draws it to the canvas.
      */
-    protected void doTestPattern()
+    protected synchronized void doTestPattern()
     {
          Graphics2D z2D=myBackBuffer.createGraphics();
             double zScaleX=(double)myBackBuffer.getWidth() / myTestPattern.getIconWidth();
@@ -580,17 +608,6 @@ public class JSVideo implements java.io.Serializable{
     //     return new Color(myNormalPalette[aIndex]);
     // }
     
-    /**
-     * Retrieves the color integer from a certain array.
-     * The integer stores color information in the ARGB format (I think)
-     * @param aIndex The array index of the desired color
-     * @return An integer representing the desired color
-     */
-    private int getColorInt(int aIndex) {
-        if (myGrayPaletteMode==true) return myGrayPalette[aIndex & 0xFF];
-        else return myNormalPalette[aIndex & 0xFF];
-    }
-    
     /**
      * This is used in phosphor (aka anti-flicker) mode to get a blend
      * of the colors represented by the two indices
@@ -38,8 +38,8 @@ public class NullDevice implements IfcDevice, java.io.Serializable {
         //System.out.println("DEBUG:ERROR - peek at null device address : " + address);   
         assert(false);  return 0; }
     public void poke(int address, int aByteValue){ assert(false); /* throw and error message*/}
-    public boolean save(java.io.DataOutputStream out){ return true;}
-    public boolean load(java.io.DataInputStream in){ return true;}
+    public void saveState(java.io.DataOutput aOut){ }
+    public void loadState(java.io.DataInput aIn){ }
     public void systemCyclesReset() { }
     
     
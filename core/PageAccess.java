@@ -22,10 +22,15 @@ public class PageAccess implements java.io.Serializable {
        
         private int myDirectPeekBaseIndex=0;
         private int myDirectPokeBaseIndex=0;
-        private int[] myDirectPeekMemory=null;
-        private int[] myDirectPokeMemory=null;
+        private byte[] myDirectPeekMemory=null;
+        private byte[] myDirectPokeMemory=null;
     
         private IfcDevice myDevice=null;
+        /**
+         * True if the direct peek memory is read-only (ROM), meaning the CPU is allowed to
+         * cache what it decodes from this page.
+         */
+        private boolean myReadOnly=false;
         
         
      
@@ -51,22 +56,36 @@ public class PageAccess implements java.io.Serializable {
              in.defaultReadObject();
           /*   myDirectPeekBaseIndex=in.readInt();
              myDirectPokeBaseIndex=in.readInt(); //out.write(directPokeBaseIndex);
-             myDirectPeekMemory=(int[])in.readObject();
-             myDirectPokeMemory=(int[])in.readObject();
+             myDirectPeekMemory=(byte[])in.readObject();
+             myDirectPokeMemory=(byte[])in.readObject();
              myDevice=(IfcDevice) in.readObject(); 
            */
           }
         
         
         
-        public static PageAccess createDirectPeekAccess(IfcDevice aDevice, int[] aDirectPeekMemory, int aDirectPeekBaseIndex)
+        public static PageAccess createDirectPeekAccess(IfcDevice aDevice, byte[] aDirectPeekMemory, int aDirectPeekBaseIndex)
         {
             PageAccess zReturn=new PageAccess(aDevice);
             zReturn.setDirectPeekMemory(aDirectPeekMemory, aDirectPeekBaseIndex);
             return zReturn;
         }
         
-        public static PageAccess createDirectPokeAccess(IfcDevice aDevice, int[] aDirectPokeMemory, int aDirectPokeBaseIndex)
+        /**
+         * Creates a direct peek access for read-only memory (i.e. cartridge ROM).
+         * @param aDevice the device
+         * @param aROM the read-only memory
+         * @param aDirectPeekBaseIndex the index in aROM of the first byte of the page
+         * @return a new page access
+         */
+        public static PageAccess createReadOnlyAccess(IfcDevice aDevice, byte[] aROM, int aDirectPeekBaseIndex)
+        {
+            PageAccess zReturn=createDirectPeekAccess(aDevice, aROM, aDirectPeekBaseIndex);
+            zReturn.myReadOnly=true;
+            return zReturn;
+        }
+        
+        public static PageAccess createDirectPokeAccess(IfcDevice aDevice, byte[] aDirectPokeMemory, int aDirectPokeBaseIndex)
         {
             PageAccess zReturn=new PageAccess(aDevice);
             zReturn.setDirectPokeMemory(aDirectPokeMemory, aDirectPokeBaseIndex);
@@ -88,13 +107,27 @@ public class PageAccess implements java.io.Serializable {
             myDirectPokeMemory=aPA.myDirectPokeMemory;
             myDirectPeekBaseIndex=aPA.myDirectPeekBaseIndex;
             myDirectPokeBaseIndex=aPA.myDirectPokeBaseIndex;
-            
+            myReadOnly=aPA.myReadOnly;
         }
      
         public boolean usesDirectPeek() {
            return (myDirectPeekMemory!=null);
         }
         
+        public boolean isReadOnly() {
+            return myReadOnly;
+        }
+        
+        /**
+         * Returns the index in the read-only memory of the byte at the given address.
+         * @param aAddress the address
+         * @return the index, or -1 if this page isn't read-only
+         */
+        public int getReadOnlyIndex(int aAddress) {
+            if (myReadOnly==true) return myDirectPeekBaseIndex + (aAddress & PAGE_MASK);
+            else return -1;
+        }
+        
         public boolean usesDirectPoke() {
          return (myDirectPokeMemory!=null);
         }
@@ -102,7 +135,7 @@ public class PageAccess implements java.io.Serializable {
         public void directPoke(char aPageOffset,int aByteValue) {
             assert((aByteValue>=0)&&(aByteValue<0x100));
             assert(myDirectPokeMemory!=null);
-            myDirectPokeMemory[myDirectPokeBaseIndex + aPageOffset]=aByteValue;
+            myDirectPokeMemory[myDirectPokeBaseIndex + aPageOffset]=(byte)aByteValue;
         }
         
         public int directPeek(char aPageOffset) {
@@ -110,7 +143,7 @@ public class PageAccess implements java.io.Serializable {
             
             assert(myDirectPeekMemory!=null);
             
-            zReturn=myDirectPeekMemory[myDirectPeekBaseIndex + aPageOffset];
+            zReturn=myDirectPeekMemory[myDirectPeekBaseIndex + aPageOffset] & 0xFF;
             if (zReturn<0)
             {
                 assert(false);
@@ -171,7 +204,7 @@ public class PageAccess implements java.io.Serializable {
         setDirectPokeMemory(null, 0);
     }
         
-    public int[] getDirectPeekMemory() {
+    public byte[] getDirectPeekMemory() {
         return myDirectPeekMemory;
     }
 
@@ -180,19 +213,42 @@ public class PageAccess implements java.io.Serializable {
      * @param aDirectPeekMemory the array to route peek requests to
      * @param aDirectPeekBaseIndex the base index that the given address (converted to page offset) will be added to
      */
-    public void setDirectPeekMemory(int[] aDirectPeekMemory, int aDirectPeekBaseIndex ) {
+    public void setDirectPeekMemory(byte[] aDirectPeekMemory, int aDirectPeekBaseIndex ) {
         this.myDirectPeekMemory = aDirectPeekMemory;
         myDirectPeekBaseIndex=aDirectPeekBaseIndex;
+        myReadOnly=false;
     }
 
-    public int[] getDirectPokeMemory() {
+    public byte[] getDirectPokeMemory() {
         return myDirectPokeMemory;
     }
+    
+    public int getDirectPeekBaseIndex() {
+        return myDirectPeekBaseIndex;
+    }
+    
+    public int getDirectPokeBaseIndex() {
+        return myDirectPokeBaseIndex;
+    }
 
-    public void setDirectPokeMemory(int[] aDirectPokeMemory, int aDirectPokeBaseIndex) {
+    public void setDirectPokeMemory(byte[] aDirectPokeMemory, int aDirectPokeBaseIndex) {
         this.myDirectPokeMemory = aDirectPokeMemory;
         myDirectPokeBaseIndex=aDirectPokeBaseIndex;
     }
+    
+    /**
+     * Points the direct peek/poke modes that use one array to another array instead,
+     * leaving the base indices (and whether the memory is read-only) as they are.
+     * @param aOldMemory the array to replace
+     * @param aNewMemory the array to replace it with
+     * @return true if anything was changed
+     */
+    public boolean replaceMemory(byte[] aOldMemory, byte[] aNewMemory) {
+        boolean zReturn=false;
+        if (myDirectPeekMemory==aOldMemory) { myDirectPeekMemory=aNewMemory; zReturn=true; }
+        if (myDirectPokeMemory==aOldMemory) { myDirectPokeMemory=aNewMemory; zReturn=true; }
+        return zReturn;
+    }
 
  
         
@@ -0,0 +1,64 @@
+/*
+ * IfcDecodeCacheSupport.java
+ *
+ * To change this template, choose Tools | Template Manager
+ * and open the template in the editor.
+ */
+
+package jstella.j6507;
+
+/**
+ * An optional companion to IfcSystem.  If the system given to the processor also
+ * implements this interface, the processor can keep a cache of decoded blocks
+ * (straight runs of instructions) for code that is executed out of read-only
+ * memory, instead of fetching and decoding every opcode and operand through peek().
+ * <p>
+ * Read-only memory is identified by a "code index", which is the position of the
+ * byte in the read-only image (e.g. for a bank switched cartridge, the bank and the
+ * address within the bank).  The same code index always refers to the same byte, no
+ * matter where or when it is mapped, unless the code generation changes.
+ * </p>
+ * @author J.L. Allen
+ */
+public interface IfcDecodeCacheSupport {
+
+    /**
+     * Returns the code index of the read-only byte at the given address, or -1
+     * if the address is not mapped to read-only memory (e.g. RAM, I/O, or a bank
+     * switching hotspot).  Mappings are assumed to be contiguous over at least 64 bytes.
+     * @param aAddress The address (16 bit)
+     * @return the code index, or -1 if the address should not be cached
+     */
+    public int getCodeIndex(int aAddress);
+
+    /**
+     * Reads a byte of read-only memory without any side effects (in particular,
+     * without changing the state of the data bus).
+     * @param aAddress an address for which getCodeIndex(...) is not -1
+     * @return The byte (in int form) at the specified address.
+     */
+    public int peekCode(int aAddress);
+
+    /**
+     * Returns a number that changes every time the memory map changes (e.g.
+     * when a bank is switched).  The processor uses this to know when the rest of a
+     * block it is running may no longer be what is mapped at the PC.
+     * @return the current mapping generation
+     */
+    public int getMappingGeneration();
+
+    /**
+     * Returns a number that changes every time the contents of read-only memory
+     * change (e.g. a new image is mapped in, or the image is patched).  When this
+     * changes, the processor discards all of its decoded blocks.
+     * @return the current code generation
+     */
+    public int getCodeGeneration();
+
+    /**
+     * Called by the processor to set the state of the data bus to the last
+     * byte it fetched from a decoded block, since that fetch did not go through peek().
+     * @param aByteValue the byte value (in int form) last fetched
+     */
+    public void setDataBusState(int aByteValue);
+}
@@ -0,0 +1,43 @@
+/*
+ * IfcIdleLoopSupport.java
+ *
+ * To change this template, choose Tools | Template Manager
+ * and open the template in the editor.
+ */
+
+package jstella.j6507;
+
+/**
+ * An optional companion to IfcSystem and IfcDecodeCacheSupport.  If the system given
+ * to the processor also implements this interface, the processor can skip over loops
+ * that do nothing but poll an address until its value changes (e.g. a game waiting
+ * for a timer to run down), instead of executing every pass through the loop.
+ * <p>
+ * The system only has to be able to say what a read of a polled address would
+ * return at some point in the future, assuming that nothing is written to the system
+ * in the meantime.  When it can't say for certain (or when that read would change
+ * anything), it returns -1, and the processor executes the loop normally.
+ * </p>
+ * @author J.L. Allen
+ */
+public interface IfcIdleLoopSupport {
+
+    /**
+     * Predicts the value that peek(aAddress) would return if it were called after
+     * aCyclesAhead more cycles, provided that nothing else is read or written until then.
+     * @param aAddress The address (16 bit)
+     * @param aCyclesAhead The number of cycles from now (counting cycles the processor hasn't reported yet)
+     * @return the byte that would be read, or -1 if it can't be predicted, or if the read would have side effects
+     */
+    public int predictPeek(int aAddress, int aCyclesAhead);
+
+    /**
+     * Returns how many cycles after the read described by predictPeek(aAddress, aCyclesAhead)
+     * the same address would keep returning the same value with no side effects.
+     * Only meaningful when predictPeek(...) with the same arguments did not return -1.
+     * @param aAddress The address (16 bit)
+     * @param aCyclesAhead The number of cycles from now
+     * @return the number of further cycles (0 if the value may change on the very next cycle)
+     */
+    public int predictUnchangedCycles(int aAddress, int aCyclesAhead);
+}
@@ -38,6 +38,8 @@ public interface IfcSystem {
     /**
      * This method is called by the processor to indicate that 
      * the specified number of processor cycles have elapsed.
+     * The processor counts cycles itself and reports them in batches, so while it is
+     * executing, call J6507.publishCycles() before relying on the count.
      * @param aCyclesElapsed number of processor cycles that have elapsed
      */
     public void processorCycle(int aCyclesElapsed);
@@ -328,35 +328,38 @@ public class J6507 implements java.io.Serializable {
      */
     private IfcSystem myCurrentSystem=null;
     
+    /** Negative flag bit of the processor status register */
+    public final static int FLAG_N=0x80;
+    /** Overflow flag bit */
+    public final static int FLAG_V=0x40;
+    /** Break command bit */
+    public final static int FLAG_B=0x10;
+    /** Decimal flag bit */
+    public final static int FLAG_D=0x08;
+    /** Interrupt disable flag bit ("Do not disturb") */
+    public final static int FLAG_I=0x04;
+    /** Zero flag bit */
+    public final static int FLAG_Z=0x02;
+    /** Carry flag bit */
+    public final static int FLAG_C=0x01;
+    /** Bit 5 of the processor status register, which is always set */
+    private final static int FLAG_UNUSED=0x20;
+    
     /**
-     * Negative flag
-     */
-    private boolean N=false;     // N flag for processor status register
-    /**
-     * Overflow flag
-     */
-    private boolean V=false;     // V flag for processor status register
-    /**
-     * Break command bit
-     */
-    private boolean B=false;     // B flag for processor status register
-    /**
-     * Decimal flag
-     */
-    private boolean D=false;     // D flag for processor status register
-    /**
-     * Interrupt disable flag ("Do not disturb")
-     */
-    private boolean I=false;     // I flag for processor status register
-    /**
-     * The not-zero flag, holding the opposite of what the zero flag would 
-     * have held.
+     * The N and Z flag bits that result from a given byte value (e.g. the value just
+     * loaded into a register).
      */
-    private boolean notZ=false;  // Z flag complement for processor status register
+    private final static int[] ourNZTable=new int[256];
+    static {
+        for (int i=0; i<256; i++) {
+            ourNZTable[i]=(i & FLAG_N) | ((i==0) ? FLAG_Z : 0);
+        }//end : for i loop
+    }//END STATIC
+    
     /**
-     * Carry flag
+     * The processor status register, with each flag as a bit (see the FLAG constants).
      */
-    private boolean C=false;     // C flag for processor status register
+    private int P=FLAG_UNUSED;
     
     
     /**
@@ -405,16 +408,103 @@ public class J6507 implements java.io.Serializable {
     private int myBranchResult=0;
     
     /**
-     * The number of cycles that have been communicated to mySystem in this instruction
+     * The number of cycles that have been signaled so far in this instruction
      * cycle.  At the end of the instruction cycle, this number will be used to determine
-     * the remaining number of cycles that mySystem should be informed of.
+     * the remaining number of cycles that have elapsed.
      */
     private int myCyclesSignaled=0;
     
+    /**
+     * Processor cycles that have elapsed, but that mySystem hasn't been told about yet.
+     * Rather than calling processorCycle(1) on every memory access, the count is kept here
+     * and only handed over when mySystem needs it to be up to date (see publishCycles()),
+     * and at the end of execute(...).
+     */
+    private int myUnpublishedCycles=0;
+    
     private boolean myReadLast=false;
     
     private boolean debugStartDump=false;
     
+    /**
+     * The cores that are available to run the instruction loop.  SWITCH is the
+     * original core, which decodes each opcode with a large switch statement and
+     * then retrieves the operand according to the addressing mode table.  TABLE looks
+     * up a handler for the opcode (with the addressing mode already built into the
+     * handler) in an array, so that there is only a single dispatch per instruction.
+     * BLOCK_CACHE is the TABLE core, but code in read-only memory is decoded once into
+     * blocks which are kept in a cache (this needs the system to implement
+     * IfcDecodeCacheSupport...otherwise it behaves the same as TABLE).
+     */
+    public enum ExecutionCore { SWITCH, TABLE, BLOCK_CACHE };
+    
+    private ExecutionCore myExecutionCore=ExecutionCore.BLOCK_CACHE;
+    
+    /**
+     * The handler for a single opcode, used by the table-driven core.
+     */
+    private interface IfcOpcodeHandler {
+        void execute();
+    }
+    
+    /**
+     * One handler per opcode (a null entry means the instruction is not recognized).
+     * This holds lambdas, so it is rebuilt rather than serialized.
+     */
+    private transient IfcOpcodeHandler[] myOpcodeHandlers=createOpcodeHandlers();
+    
+    /**
+     * The maximum number of instructions in a decoded block.
+     */
+    private final static int BLOCK_MAX_INSTRUCTIONS=32;
+    /**
+     * The maximum number of bytes in a decoded block.  This keeps a block within two
+     * (64 byte) pages of the memory map, so only its first and last bytes need to be checked
+     * when it is entered.
+     */
+    private final static int BLOCK_MAX_BYTES=64;
+    /**
+     * The most passes through an idle loop that are skipped at once (this keeps the
+     * skipped cycles well within the range of an int).
+     */
+    private final static int IDLE_LOOP_MAX_PASSES=0x10000;
+    
+    /**
+     * A straight run of pre-decoded instructions, as stored in the decode cache.  The block
+     * ends after the first instruction that changes the PC (branch, jump, etc.), before
+     * an instruction that is not recognized, or where read-only memory ends.
+     */
+    private final static class DecodedBlock {
+        /** The instruction bytes (opcodes and operands), in order */
+        private int[] myBytes;
+        /** The index in myBytes of each instruction's opcode */
+        private int[] myOffsets;
+        /** The length of each instruction, in bytes */
+        private int[] myLengths;
+        /** The handler of each instruction (i.e. the opcode with its addressing mode resolved) */
+        private IfcOpcodeHandler[] myHandlers;
+        private int myInstructionCount=0;
+        private int myByteCount=0;
+        /** If the block is an idle loop (see isIdleLoop(...)), the address it polls; otherwise -1 */
+        private int myIdleLoopAddress=-1;
+        /** If the block is an idle loop, the number of cycles each pass through it takes */
+        private int myIdleLoopCycles=0;
+    }
+    
+    /**
+     * The decode cache, indexed by code index (see IfcDecodeCacheSupport).
+     */
+    private transient DecodedBlock[] myDecodedBlocks=null;
+    private transient int myCodeGeneration=0;
+    /**
+     * When not null, peekImmediate() takes its bytes from here (starting at myFetchIndex) rather
+     * than from the system.
+     */
+    private transient int[] myFetchBytes=null;
+    private transient int myFetchIndex=0;
+    private transient boolean myDataBusPending=false;
+    private transient int myPendingDataBus=0;
+    
   
     
     /**
@@ -430,6 +520,9 @@ public class J6507 implements java.io.Serializable {
      private void readObject(java.io.ObjectInputStream in)  throws IOException, ClassNotFoundException
     {
          in.defaultReadObject();         
+         myOpcodeHandlers=createOpcodeHandlers();
+         if (P==0) P=FLAG_UNUSED; //saved before the flags were packed into P
+         if (myExecutionCore==null) myExecutionCore=ExecutionCore.BLOCK_CACHE;
     }
     
     
@@ -481,11 +574,12 @@ public class J6507 implements java.io.Serializable {
     }
     
     public boolean isN() {
-        return N;
+        return ((P & FLAG_N)!=0);
     }
     
-    public void setN(boolean N) {
-        this.N = N;
+    public void setN(boolean aN) {
+        if (aN==true) P |= FLAG_N;
+        else P &= ~FLAG_N;
     }
     
     public void setN(int aInt) {
@@ -493,11 +587,12 @@ public class J6507 implements java.io.Serializable {
     }
     
     public boolean isV() {
-        return V;
+        return ((P & FLAG_V)!=0);
     }
     
-    public void setV(boolean V) {
-        this.V = V;
+    public void setV(boolean aV) {
+        if (aV==true) P |= FLAG_V;
+        else P &= ~FLAG_V;
     }
     
     public void setV(int aInt) {
@@ -505,24 +600,25 @@ public class J6507 implements java.io.Serializable {
     }
     
     public boolean isB() {
-        return B;
+        return ((P & FLAG_B)!=0);
     }
     
-    public void setB(boolean B) {
-        this.B = B;
+    public void setB(boolean aB) {
+        if (aB==true) P |= FLAG_B;
+        else P &= ~FLAG_B;
     }
     
     public void setB(int aInt) {
         setB(aInt!=0);
     }
     
-   
     public boolean isD() {
-        return D;
+        return ((P & FLAG_D)!=0);
     }
     
-    public void setD(boolean D) {
-        this.D = D;
+    public void setD(boolean aD) {
+        if (aD==true) P |= FLAG_D;
+        else P &= ~FLAG_D;
     }
     
     public void setD(int aInt) {
@@ -530,11 +626,12 @@ public class J6507 implements java.io.Serializable {
     }
     
     public boolean isI() {
-        return I;
+        return ((P & FLAG_I)!=0);
     }
     
-    public void setI(boolean I) {
-        this.I = I;
+    public void setI(boolean aI) {
+        if (aI==true) P |= FLAG_I;
+        else P &= ~FLAG_I;
     }
     
     public void setI(int aInt) {
@@ -542,11 +639,12 @@ public class J6507 implements java.io.Serializable {
     }
     
     public boolean isNotZ() {
-        return notZ;
+        return ((P & FLAG_Z)==0);
     }
     
-    public void setNotZ(boolean notZ) {
-        this.notZ = notZ;
+    public void setNotZ(boolean aNotZ) {
+        if (aNotZ==true) P &= ~FLAG_Z;
+        else P |= FLAG_Z;
     }
     
     public void setNotZ(int aInt) {
@@ -554,17 +652,27 @@ public class J6507 implements java.io.Serializable {
     }
     
     public boolean isC() {
-        return C;
+        return ((P & FLAG_C)!=0);
     }
     
-    public void setC(boolean C) {
-        this.C = C;
+    public void setC(boolean aC) {
+        if (aC==true) P |= FLAG_C;
+        else P &= ~FLAG_C;
     }
     
     public void setC(int aInt) {
         setC(aInt!=0);
     }
     
+    /**
+     * Sets the N and Z flags according to the given value, the way a load or
+     * most arithmetic/logic instructions do.
+     * @param aValue the result (only the lowest 8 bits are looked at)
+     */
+    private void setNZ(int aValue) {
+        P = (P & ~(FLAG_N | FLAG_Z)) | ourNZTable[aValue & 0xFF];
+    }
+    
     public int getA() {
         assert((A>=0)&&(A<0x100));
         return A;
@@ -667,6 +775,21 @@ public class J6507 implements java.io.Serializable {
     }
     
     
+    /**
+     * Selects the core used by {@link #execute(int)}.
+     * @param aCore the core to use
+     */
+    public void setExecutionCore(ExecutionCore aCore) {
+        myExecutionCore=aCore;
+    }
+    
+    /**
+     * @return the core currently being used by {@link #execute(int)}
+     */
+    public ExecutionCore getExecutionCore() {
+        return myExecutionCore;
+    }
+    
     /**
      * This is the main method of this class.  It will execute for
      * the number of loops specified (unless something stops it early),
@@ -678,8 +801,714 @@ public class J6507 implements java.io.Serializable {
      * @return number of instructions executed
      * @param aRepeats Number of loops (instructions) to execute
      * @throws jstella.j6507.J6507.J6507Exception 
+     * @see #setExecutionCore(ExecutionCore)
      */
     public int execute(int aRepeats) throws J6507Exception
+    {
+        try {
+            if (myExecutionCore==ExecutionCore.SWITCH) return executeSwitch(aRepeats);
+            else return executeTable(aRepeats);
+        }//end : try
+        finally {
+            publishCycles();
+        }//end : finally
+    }
+    
+    /**
+     * The table-driven core.  It behaves exactly as the switch core does (same
+     * bus accesses, in the same order, and the same cycle accounting), but each
+     * opcode is dispatched through myOpcodeHandlers.
+     * @param aRepeats Number of loops (instructions) to execute (negative for no limit)
+     * @return number of instructions executed
+     * @throws jstella.j6507.J6507.J6507Exception 
+     */
+    private int executeTable(int aRepeats) throws J6507Exception
+    {
+        myExecutionStatus &= FatalErrorBit; //clears all of the bits except fatal error bit
+        final IfcOpcodeHandler[] zHandlers=myOpcodeHandlers;
+        IfcDecodeCacheSupport zCache=null;
+        if ((myExecutionCore==ExecutionCore.BLOCK_CACHE)&&(myCurrentSystem instanceof IfcDecodeCacheSupport)) zCache=(IfcDecodeCacheSupport)myCurrentSystem;
+        IfcIdleLoopSupport zIdle=null;
+        if ((zCache!=null)&&(myCurrentSystem instanceof IfcIdleLoopSupport)) zIdle=(IfcIdleLoopSupport)myCurrentSystem;
+        DecodedBlock zBlock=null;
+        int zBlockPosition=0;
+        int zBlockPC=0; //the PC of the next instruction in zBlock
+        int zMappingGeneration=0;
+        int zCounter=0;
+        try {
+        while ((aRepeats<0)||(zCounter<aRepeats)) {
+            zCounter++;
+            
+            int[] zPreSnapshot=null;
+            if (DEBUG_MODE_ON) zPreSnapshot=getRegisterSnapshot();
+            int zOpPC=getPC();
+            
+            if (zCache!=null) {
+                // The current block can only be continued if the last instruction fell through to the next one and nothing has been remapped
+                if ((zBlock!=null)&&((zBlockPosition>=zBlock.myInstructionCount)||(PC!=zBlockPC)||(zCache.getMappingGeneration()!=zMappingGeneration))) zBlock=null;
+                if (zBlock==null) {
+                    zBlock=findDecodedBlock(zCache);
+                    zBlockPosition=0;
+                    zBlockPC=PC;
+                    zMappingGeneration=zCache.getMappingGeneration();
+                }//end : need a new block
+                if ((zIdle!=null)&&(zBlock!=null)&&(zBlockPosition==0)&&(zBlock.myIdleLoopAddress>=0)) {
+                    // At least one pass (two instructions) must be left to execute normally
+                    int zMaxPasses=(aRepeats<0) ? IDLE_LOOP_MAX_PASSES : Math.min(IDLE_LOOP_MAX_PASSES, (aRepeats - zCounter - 1) / 2);
+                    if (zMaxPasses>0) zCounter+=2 * skipIdleLoop(zBlock, zIdle, zMaxPasses);
+                }//end : at the start of an idle loop
+            }//end : using decode cache
+            
+            IfcOpcodeHandler zHandler=null;
+            if (zBlock!=null) {
+                myFetchBytes=zBlock.myBytes;
+                myFetchIndex=zBlock.myOffsets[zBlockPosition];
+                IR=peekImmediate(); //Cost : 1 cycle
+                zHandler=zBlock.myHandlers[zBlockPosition];
+                zBlockPC=(zBlockPC + zBlock.myLengths[zBlockPosition]) & 0xFFFF;
+                zBlockPosition++;
+            }//end : decoded
+            else {
+                myFetchBytes=null;
+                IR=peekImmediate(); //Cost : 1 cycle
+                zHandler=zHandlers[IR];
+            }//end : not decoded
+            
+            if (zHandler==null) {
+                String zMsg="Instruction not recognized - " + ourInstructionMnemonicTable[IR] +  " (0x" + Integer.toHexString(IR) + ") at " + Integer.toHexString(getPC()) + "\n" + "Instructions in this cycle=" + zCounter;
+                throw(new J6507Exception(J6507Exception.ExceptionType.INSTRUCTION_NOT_RECOGNIZED, zMsg));
+            }//end : not recognized
+            zHandler.execute();
+            myFetchBytes=null;
+            
+            if (DEBUG_MODE_ON) {
+                int[] zPostSnapshot=getRegisterSnapshot();
+                debugCommand(zOpPC, IR, myLastImmediateValues, zPreSnapshot, zPostSnapshot );
+            }
+            
+            int zCycles=calculateCycles(IR) - myCyclesSignaled;
+            assert(zCycles>=0); //make sure we haven't signalled more cycles than have occurred
+            myUnpublishedCycles+=zCycles;
+            myCyclesSignaled=0;
+            
+            if(((myExecutionStatus & MaskableInterruptBit)!=0) ||  ((myExecutionStatus & NonmaskableInterruptBit)!=0)) {
+                assert(false); //INTERRUPTS haven't been tested
+            }
+            
+            // See if execution has been stopped
+            if((myExecutionStatus & StopExecutionBit)!=0) break;
+        }//end : while
+        }//end : try
+        finally {
+            myFetchBytes=null;
+            flushDataBus();
+        }//end : finally
+        
+        return zCounter;
+    }
+    
+    /**
+     * Returns the decoded block that starts at the current PC, decoding it if it
+     * is not already in the cache.
+     * @param aCache the system, as a decode cache supporter
+     * @return the block, or null if the code at the PC can't be cached
+     */
+    private DecodedBlock findDecodedBlock(IfcDecodeCacheSupport aCache) {
+        int zGeneration=aCache.getCodeGeneration();
+        if ((myDecodedBlocks==null)||(zGeneration!=myCodeGeneration)) {
+            myDecodedBlocks=new DecodedBlock[0x1000];
+            myCodeGeneration=zGeneration;
+        }//end : read-only memory has changed
+        
+        int zIndex=aCache.getCodeIndex(PC);
+        if (zIndex<0) return null;
+        if (zIndex>=myDecodedBlocks.length) {
+            int zNewLength=myDecodedBlocks.length;
+            while (zNewLength<=zIndex) zNewLength*=2;
+            myDecodedBlocks=java.util.Arrays.copyOf(myDecodedBlocks, zNewLength);
+        }//end : grow the cache
+        
+        DecodedBlock zBlock=myDecodedBlocks[zIndex];
+        if (zBlock==null) {
+            zBlock=decodeBlock(aCache, PC, zIndex);
+            myDecodedBlocks[zIndex]=zBlock;
+        }//end : not cached
+        
+        if (zBlock.myInstructionCount==0) return null;
+        // The block's first byte is mapped here, but its last byte might not be (the block could go across a page boundary)
+        int zLast=zBlock.myByteCount - 1;
+        if (aCache.getCodeIndex((PC + zLast) & 0xFFFF)!=zIndex + zLast) return null;
+        return zBlock;
+    }
+    
+    /**
+     * Decodes the block of instructions that starts at the given address.
+     * @param aCache the system, as a decode cache supporter
+     * @param aPC address of the first instruction
+     * @param aIndex code index of the first instruction
+     * @return a new block (which may have no instructions)
+     */
+    private DecodedBlock decodeBlock(IfcDecodeCacheSupport aCache, int aPC, int aIndex) {
+        int[] zBytes=new int[BLOCK_MAX_BYTES];
+        int[] zOffsets=new int[BLOCK_MAX_INSTRUCTIONS];
+        int[] zLengths=new int[BLOCK_MAX_INSTRUCTIONS];
+        IfcOpcodeHandler[] zHandlers=new IfcOpcodeHandler[BLOCK_MAX_INSTRUCTIONS];
+        int zCount=0;
+        int zByteCount=0;
+        boolean zContinue=true;
+        while ((zContinue==true)&&(zCount<BLOCK_MAX_INSTRUCTIONS)) {
+            int zOpcode=readCodeByte(aCache, aPC, aIndex, zByteCount);
+            if ((zOpcode<0)||(myOpcodeHandlers[zOpcode]==null)) break;
+            int zLength=getInstructionLength(zOpcode);
+            if (zByteCount + zLength > BLOCK_MAX_BYTES) break;
+            
+            int[] zInstruction=new int[zLength];
+            zInstruction[0]=zOpcode;
+            for (int i=1; i<zLength; i++) {
+                zInstruction[i]=readCodeByte(aCache, aPC, aIndex, zByteCount + i);
+                if (zInstruction[i]<0) zContinue=false;
+            }//end : for i loop
+            if (zContinue==false) break; //the operands aren't all in read-only memory
+            
+            System.arraycopy(zInstruction, 0, zBytes, zByteCount, zLength);
+            zOffsets[zCount]=zByteCount;
+            zLengths[zCount]=zLength;
+            zHandlers[zCount]=myOpcodeHandlers[zOpcode];
+            zCount++;
+            zByteCount+=zLength;
+            if (endsBlock(zOpcode)==true) zContinue=false;
+        }//end : while
+        
+        DecodedBlock zReturn=new DecodedBlock();
+        zReturn.myBytes=java.util.Arrays.copyOf(zBytes, zByteCount);
+        zReturn.myOffsets=java.util.Arrays.copyOf(zOffsets, zCount);
+        zReturn.myLengths=java.util.Arrays.copyOf(zLengths, zCount);
+        zReturn.myHandlers=java.util.Arrays.copyOf(zHandlers, zCount);
+        zReturn.myInstructionCount=zCount;
+        zReturn.myByteCount=zByteCount;
+        if (isIdleLoop(zReturn)==true) {
+            zReturn.myIdleLoopAddress=zBytes[1] | (zBytes[2] << 8);
+            // 4 for the absolute read, 3 for the branch, plus one if the branch goes back across a page boundary
+            zReturn.myIdleLoopCycles=notSamePage(aPC + 5, aPC) ? 8 : 7;
+        }//end : idle loop
+        return zReturn;
+    }
+    
+    /**
+     * Determines whether a decoded block is an idle loop, i.e. a load (LDA, LDX, LDY
+     * or BIT) from an absolute address, followed by a branch back to that load.  Such
+     * a loop can only leave once the value read from that address changes.
+     * @param aBlock the block
+     * @return true if the block is an idle loop
+     */
+    private static boolean isIdleLoop(DecodedBlock aBlock) {
+        if ((aBlock.myInstructionCount!=2)||(aBlock.myByteCount!=5)) return false;
+        int zLoad=aBlock.myBytes[0];
+        if ((zLoad!=0xAD)&&(zLoad!=0xAE)&&(zLoad!=0xAC)&&(zLoad!=0x2C)) return false;
+        int zBranch=aBlock.myBytes[3];
+        return ((zBranch & 0x1F)==0x10)&&(aBlock.myBytes[4]==0xFB); // branch back 5 bytes, to the load
+    }
+    
+    /**
+     * Determines whether an idle loop would go round again, if its load read the given value.
+     * @param aBlock the idle loop
+     * @param aValue the value read by the load
+     * @return true if the branch would be taken
+     */
+    private boolean isIdleLoopTaken(DecodedBlock aBlock, int aValue) {
+        int zFlags=P & ~(FLAG_N | FLAG_Z);
+        if (aBlock.myBytes[0]==0x2C) {
+            zFlags=(zFlags & ~FLAG_V) | (aValue & (FLAG_N | FLAG_V));
+            if ((A & aValue)==0) zFlags|=FLAG_Z;
+        }//end : BIT
+        else zFlags|=ourNZTable[aValue];
+        switch (aBlock.myBytes[3]) {
+            case 0x10 : return (zFlags & FLAG_N)==0; //BPL
+            case 0x30 : return (zFlags & FLAG_N)!=0; //BMI
+            case 0x50 : return (zFlags & FLAG_V)==0; //BVC
+            case 0x70 : return (zFlags & FLAG_V)!=0; //BVS
+            case 0x90 : return (zFlags & FLAG_C)==0; //BCC
+            case 0xB0 : return (zFlags & FLAG_C)!=0; //BCS
+            case 0xD0 : return (zFlags & FLAG_Z)==0; //BNE
+            default : return (zFlags & FLAG_Z)!=0; //BEQ
+        }//end : switch
+    }
+    
+    /**
+     * Skips as many passes through an idle loop as can be skipped without changing
+     * the outcome.  The PC must be at the start of the loop.  A pass is only skipped if
+     * the system can predict the value its load would read (with no side effects),
+     * and that value would send the loop round again.  The registers and flags are left
+     * alone: the next pass, which is always executed normally, sets them just as the skipped
+     * passes would have.
+     * @param aBlock the idle loop
+     * @param aIdle the system, as an idle loop supporter
+     * @param aMaxPasses the most passes that may be skipped
+     * @return the number of passes skipped
+     */
+    private int skipIdleLoop(DecodedBlock aBlock, IfcIdleLoopSupport aIdle, int aMaxPasses) {
+        final int zAddress=aBlock.myIdleLoopAddress;
+        final int zPassCycles=aBlock.myIdleLoopCycles;
+        int zPasses=0;
+        while (zPasses<aMaxPasses) {
+            int zReadCycle=zPasses * zPassCycles + 4; //the load reads on its fourth cycle
+            int zValue=aIdle.predictPeek(zAddress, zReadCycle);
+            if ((zValue<0)||(isIdleLoopTaken(aBlock, zValue)==false)) break;
+            // Every pass that reads before the value changes goes round again
+            long zUnchanged=aIdle.predictUnchangedCycles(zAddress, zReadCycle);
+            zPasses=(int)Math.min((long)aMaxPasses, zPasses + zUnchanged / zPassCycles + 1);
+        }//end : while
+        myUnpublishedCycles+=zPasses * zPassCycles;
+        return zPasses;
+    }
+    
+    /**
+     * Reads a byte for decodeBlock(...).
+     * @return the byte, or -1 if it is not in the same contiguous run of read-only memory as the start of the block
+     */
+    private static int readCodeByte(IfcDecodeCacheSupport aCache, int aPC, int aIndex, int aOffset) {
+        int zAddress=(aPC + aOffset) & 0xFFFF;
+        if (aCache.getCodeIndex(zAddress)!=aIndex + aOffset) return -1;
+        else return aCache.peekCode(zAddress);
+    }
+    
+    /**
+     * Returns the number of bytes (opcode and operands) that the instruction occupies.
+     * @param aOpcode the opcode
+     * @return the instruction length, in bytes
+     */
+    private static int getInstructionLength(int aOpcode) {
+        switch (ourAddressingModeTable[aOpcode]) {
+            case Absolute :
+            case AbsoluteX :
+            case AbsoluteY :
+            case Indirect : return 3;
+            case Immediate :
+            case Zero :
+            case ZeroX :
+            case ZeroY :
+            case IndirectX :
+            case IndirectY :
+            case Relative : return 2;
+            default : return 1;
+        }//end : switch
+    }
+    
+    /**
+     * @param aOpcode the opcode
+     * @return true if the instruction (possibly) changes the PC to something other than the next instruction
+     */
+    private static boolean endsBlock(int aOpcode) {
+        if (ourInstructionPageCrossDelay[aOpcode]==2) return true; //branches
+        switch (aOpcode) {
+            case 0x00 : //BRK
+            case 0x20 : //JSR
+            case 0x40 : //RTI
+            case 0x4C : //JMP
+            case 0x60 : //RTS
+            case 0x6C : return true; //JMP (indirect)
+            default : return false;
+        }//end : switch
+    }
+    
+    /**
+     * Fetches the next instruction byte from the current decoded block.  This has the same
+     * effect as peekImmediate() going through the system, except that the data bus is
+     * only brought up to date when something else is going to look at it.
+     */
+    private int fetchDecoded() {
+        myReadLast=true;
+        myLastOperandAddress=PC;
+        signalCycle();
+        int zReturn=myFetchBytes[myFetchIndex++];
+        myPendingDataBus=zReturn;
+        myDataBusPending=true;
+        return zReturn;
+    }
+    
+    private void flushDataBus() {
+        if (myDataBusPending==true) {
+            myDataBusPending=false;
+            ((IfcDecodeCacheSupport)myCurrentSystem).setDataBusState(myPendingDataBus);
+        }//end : pending
+    }
+    
+    /**
+     * Builds the handler table used by the table-driven core.  Each handler
+     * fetches its operand with the addressing mode of its opcode (i.e. the same mode listed
+     * in ourAddressingModeTable) and then calls the instruction method.  Opcodes
+     * that the switch core does not recognize are left null.
+     * @return a new handler table
+     */
+    private IfcOpcodeHandler[] createOpcodeHandlers() {
+        IfcOpcodeHandler[] zTable=new IfcOpcodeHandler[256];
+
+        // BRK
+        zTable[0x00]=() -> INSTR_BRK();
+
+        // ADC
+        zTable[0x69]=() -> INSTR_ADC(peekImmediate());
+        zTable[0x65]=() -> INSTR_ADC(peekZeroPage());
+        zTable[0x75]=() -> INSTR_ADC(peekZeroPage(X));
+        zTable[0x6D]=() -> INSTR_ADC(peekAbsolute());
+        zTable[0x7D]=() -> INSTR_ADC(peekAbsoluteIndex(X));
+        zTable[0x79]=() -> INSTR_ADC(peekAbsoluteIndex(Y));
+        zTable[0x61]=() -> INSTR_ADC(peekIndirectX());
+        zTable[0x71]=() -> INSTR_ADC(peekIndirectY());
+
+        // LDA
+        zTable[0xA9]=() -> INSTR_LDA(peekImmediate());
+        zTable[0xA5]=() -> INSTR_LDA(peekZeroPage());
+        zTable[0xB5]=() -> INSTR_LDA(peekZeroPage(X));
+        zTable[0xAD]=() -> INSTR_LDA(peekAbsolute());
+        zTable[0xBD]=() -> INSTR_LDA(peekAbsoluteIndex(X));
+        zTable[0xB9]=() -> INSTR_LDA(peekAbsoluteIndex(Y));
+        zTable[0xA1]=() -> INSTR_LDA(peekIndirectX());
+        zTable[0xB1]=() -> INSTR_LDA(peekIndirectY());
+
+        // LDX
+        zTable[0xA2]=() -> INSTR_LDX(peekImmediate());
+        zTable[0xA6]=() -> INSTR_LDX(peekZeroPage());
+        zTable[0xB6]=() -> INSTR_LDX(peekZeroPage(Y));
+        zTable[0xAE]=() -> INSTR_LDX(peekAbsolute());
+        zTable[0xBE]=() -> INSTR_LDX(peekAbsoluteIndex(Y));
+
+        // LDY
+        zTable[0xA0]=() -> INSTR_LDY(peekImmediate());
+        zTable[0xA4]=() -> INSTR_LDY(peekZeroPage());
+        zTable[0xB4]=() -> INSTR_LDY(peekZeroPage(X));
+        zTable[0xAC]=() -> INSTR_LDY(peekAbsolute());
+        zTable[0xBC]=() -> INSTR_LDY(peekAbsoluteIndex(X));
+
+        // AND
+        zTable[0x29]=() -> INSTR_AND(peekImmediate());
+        zTable[0x25]=() -> INSTR_AND(peekZeroPage());
+        zTable[0x35]=() -> INSTR_AND(peekZeroPage(X));
+        zTable[0x2D]=() -> INSTR_AND(peekAbsolute());
+        zTable[0x3D]=() -> INSTR_AND(peekAbsoluteIndex(X));
+        zTable[0x39]=() -> INSTR_AND(peekAbsoluteIndex(Y));
+        zTable[0x21]=() -> INSTR_AND(peekIndirectX());
+        zTable[0x31]=() -> INSTR_AND(peekIndirectY());
+
+        // ASLA
+        zTable[0x0A]=() -> INSTR_ASLA();
+
+        // ASL
+        zTable[0x06]=() -> INSTR_ASL(peekZeroPage(), myLastOperandAddress);
+        zTable[0x16]=() -> INSTR_ASL(peekZeroPage(X), myLastOperandAddress);
+        zTable[0x0E]=() -> INSTR_ASL(peekAbsolute(), myLastOperandAddress);
+        zTable[0x1E]=() -> INSTR_ASL(peekAbsoluteIndex(X), myLastOperandAddress);
+
+        // BIT
+        zTable[0x24]=() -> INSTR_BIT(peekZeroPage());
+        zTable[0x2C]=() -> INSTR_BIT(peekAbsolute());
+
+        // CLC
+        zTable[0x18]=() -> INSTR_CLC();
+
+        // SEC
+        zTable[0x38]=() -> INSTR_SEC();
+
+        // CLI
+        zTable[0x58]=() -> INSTR_CLI();
+
+        // SEI
+        zTable[0x78]=() -> INSTR_SEI();
+
+        // CLV
+        zTable[0xB8]=() -> INSTR_CLV();
+
+        // CLD
+        zTable[0xD8]=() -> INSTR_CLD();
+
+        // SED
+        zTable[0xF8]=() -> INSTR_SED();
+
+        // CMP
+        zTable[0xC9]=() -> INSTR_CMP(peekImmediate());
+        zTable[0xC5]=() -> INSTR_CMP(peekZeroPage());
+        zTable[0xD5]=() -> INSTR_CMP(peekZeroPage(X));
+        zTable[0xCD]=() -> INSTR_CMP(peekAbsolute());
+        zTable[0xDD]=() -> INSTR_CMP(peekAbsoluteIndex(X));
+        zTable[0xD9]=() -> INSTR_CMP(peekAbsoluteIndex(Y));
+        zTable[0xC1]=() -> INSTR_CMP(peekIndirectX());
+        zTable[0xD1]=() -> INSTR_CMP(peekIndirectY());
+
+        // CPX
+        zTable[0xE0]=() -> INSTR_CPX(peekImmediate());
+        zTable[0xE4]=() -> INSTR_CPX(peekZeroPage());
+        zTable[0xEC]=() -> INSTR_CPX(peekAbsolute());
+
+        // CPY
+        zTable[0xC0]=() -> INSTR_CPY(peekImmediate());
+        zTable[0xC4]=() -> INSTR_CPY(peekZeroPage());
+        zTable[0xCC]=() -> INSTR_CPY(peekAbsolute());
+
+        // DEC
+        zTable[0xC6]=() -> INSTR_DEC(peekZeroPage(), myLastOperandAddress);
+        zTable[0xD6]=() -> INSTR_DEC(peekZeroPage(X), myLastOperandAddress);
+        zTable[0xCE]=() -> INSTR_DEC(peekAbsolute(), myLastOperandAddress);
+        zTable[0xDE]=() -> INSTR_DEC(peekAbsoluteIndex(X), myLastOperandAddress);
+
+        // EOR
+        zTable[0x49]=() -> INSTR_EOR(peekImmediate());
+        zTable[0x45]=() -> INSTR_EOR(peekZeroPage());
+        zTable[0x55]=() -> INSTR_EOR(peekZeroPage(X));
+        zTable[0x4D]=() -> INSTR_EOR(peekAbsolute());
+        zTable[0x5D]=() -> INSTR_EOR(peekAbsoluteIndex(X));
+        zTable[0x59]=() -> INSTR_EOR(peekAbsoluteIndex(Y));
+        zTable[0x41]=() -> INSTR_EOR(peekIndirectX());
+        zTable[0x51]=() -> INSTR_EOR(peekIndirectY());
+
+        // INC
+        zTable[0xE6]=() -> INSTR_INC(peekZeroPage(), myLastOperandAddress);
+        zTable[0xF6]=() -> INSTR_INC(peekZeroPage(X), myLastOperandAddress);
+        zTable[0xEE]=() -> INSTR_INC(peekAbsolute(), myLastOperandAddress);
+        zTable[0xFE]=() -> INSTR_INC(peekAbsoluteIndex(X), myLastOperandAddress);
+
+        // TAX
+        zTable[0xAA]=() -> INSTR_TAX();
+
+        // TXA
+        zTable[0x8A]=() -> INSTR_TXA();
+
+        // DEX
+        zTable[0xCA]=() -> INSTR_DEX();
+
+        // INX
+        zTable[0xE8]=() -> INSTR_INX();
+
+        // TAY
+        zTable[0xA8]=() -> INSTR_TAY();
+
+        // TYA
+        zTable[0x98]=() -> INSTR_TYA();
+
+        // DEY
+        zTable[0x88]=() -> INSTR_DEY();
+
+        // INY
+        zTable[0xC8]=() -> INSTR_INY();
+
+        // JMP
+        zTable[0x4C]=() -> { peekAbsoluteJMP(); INSTR_JMP(0, myLastOperandAddress); };
+        zTable[0x6C]=() -> { peekIndirect(); INSTR_JMP(0, myLastOperandAddress); };
+
+        // JSR
+        zTable[0x20]=() -> INSTR_JSR();
+
+        // LSRA
+        zTable[0x4A]=() -> INSTR_LSRA();
+
+        // LSR
+        zTable[0x46]=() -> INSTR_LSR(peekZeroPage(), myLastOperandAddress);
+        zTable[0x56]=() -> INSTR_LSR(peekZeroPage(X), myLastOperandAddress);
+        zTable[0x4E]=() -> INSTR_LSR(peekAbsolute(), myLastOperandAddress);
+        zTable[0x5E]=() -> INSTR_LSR(peekAbsoluteIndex(X), myLastOperandAddress);
+
+        // NOP
+        zTable[0xEA]=() -> INSTR_NOP();
+
+        // ORA
+        zTable[0x09]=() -> INSTR_ORA(peekImmediate());
+        zTable[0x05]=() -> INSTR_ORA(peekZeroPage());
+        zTable[0x15]=() -> INSTR_ORA(peekZeroPage(X));
+        zTable[0x0D]=() -> INSTR_ORA(peekAbsolute());
+        zTable[0x1D]=() -> INSTR_ORA(peekAbsoluteIndex(X));
+        zTable[0x19]=() -> INSTR_ORA(peekAbsoluteIndex(Y));
+        zTable[0x01]=() -> INSTR_ORA(peekIndirectX());
+        zTable[0x11]=() -> INSTR_ORA(peekIndirectY());
+
+        // TXS
+        zTable[0x9A]=() -> INSTR_TXS();
+
+        // TSX
+        zTable[0xBA]=() -> INSTR_TSX();
+
+        // PHA
+        zTable[0x48]=() -> INSTR_PHA();
+
+        // PLA
+        zTable[0x68]=() -> INSTR_PLA();
+
+        // PHP
+        zTable[0x08]=() -> INSTR_PHP();
+
+        // PLP
+        zTable[0x28]=() -> INSTR_PLP();
+
+        // ROLA
+        zTable[0x2A]=() -> INSTR_ROLA();
+
+        // ROL
+        zTable[0x26]=() -> INSTR_ROL(peekZeroPage(), myLastOperandAddress);
+        zTable[0x36]=() -> INSTR_ROL(peekZeroPage(X), myLastOperandAddress);
+        zTable[0x2E]=() -> INSTR_ROL(peekAbsolute(), myLastOperandAddress);
+        zTable[0x3E]=() -> INSTR_ROL(peekAbsoluteIndex(X), myLastOperandAddress);
+
+        // RORA
+        zTable[0x6A]=() -> INSTR_RORA();
+
+        // ROR
+        zTable[0x66]=() -> INSTR_ROR(peekZeroPage(), myLastOperandAddress);
+        zTable[0x76]=() -> INSTR_ROR(peekZeroPage(X), myLastOperandAddress);
+        zTable[0x6E]=() -> INSTR_ROR(peekAbsolute(), myLastOperandAddress);
+        zTable[0x7E]=() -> INSTR_ROR(peekAbsoluteIndex(X), myLastOperandAddress);
+
+        // RTI
+        zTable[0x40]=() -> INSTR_RTI();
+
+        // RTS
+        zTable[0x60]=() -> INSTR_RTS();
+
+        // SBC
+        zTable[0xE9]=() -> INSTR_SBC(peekImmediate());
+        zTable[0xE5]=() -> INSTR_SBC(peekZeroPage());
+        zTable[0xF5]=() -> INSTR_SBC(peekZeroPage(X));
+        zTable[0xED]=() -> INSTR_SBC(peekAbsolute());
+        zTable[0xFD]=() -> INSTR_SBC(peekAbsoluteIndex(X));
+        zTable[0xF9]=() -> INSTR_SBC(peekAbsoluteIndex(Y));
+        zTable[0xE1]=() -> INSTR_SBC(peekIndirectX());
+        zTable[0xF1]=() -> INSTR_SBC(peekIndirectY());
+
+        // STA
+        zTable[0x85]=() -> INSTR_STA(peekZeroPage(), myLastOperandAddress);
+        zTable[0x95]=() -> INSTR_STA(peekZeroPage(X), myLastOperandAddress);
+        zTable[0x8D]=() -> INSTR_STA(peekAbsolute(), myLastOperandAddress);
+        zTable[0x9D]=() -> INSTR_STA(peekAbsoluteIndex(X), myLastOperandAddress);
+        zTable[0x99]=() -> INSTR_STA(peekAbsoluteIndex(Y), myLastOperandAddress);
+        zTable[0x81]=() -> INSTR_STA(peekIndirectX(), myLastOperandAddress);
+        zTable[0x91]=() -> INSTR_STA(peekIndirectY(), myLastOperandAddress);
+
+        // STX
+        zTable[0x86]=() -> INSTR_STX(peekZeroPage(), myLastOperandAddress);
+        zTable[0x96]=() -> INSTR_STX(peekZeroPage(Y), myLastOperandAddress);
+        zTable[0x8E]=() -> INSTR_STX(peekAbsolute(), myLastOperandAddress);
+
+        // STY
+        zTable[0x84]=() -> INSTR_STY(peekZeroPage(), myLastOperandAddress);
+        zTable[0x94]=() -> INSTR_STY(peekZeroPage(X), myLastOperandAddress);
+        zTable[0x8C]=() -> INSTR_STY(peekAbsolute(), myLastOperandAddress);
+
+        // BPL
+        zTable[0x10]=() -> INSTR_BPL(peekImmediate());
+
+        // BMI
+        zTable[0x30]=() -> INSTR_BMI(peekImmediate());
+
+        // BVC
+        zTable[0x50]=() -> INSTR_BVC(peekImmediate());
+
+        // BVS
+        zTable[0x70]=() -> INSTR_BVS(peekImmediate());
+
+        // BCC
+        zTable[0x90]=() -> INSTR_BCC(peekImmediate());
+
+        // BCS
+        zTable[0xB0]=() -> INSTR_BCS(peekImmediate());
+
+        // BNE
+        zTable[0xD0]=() -> INSTR_BNE(peekImmediate());
+
+        // BEQ
+        zTable[0xF0]=() -> INSTR_BEQ(peekImmediate());
+
+        // sax
+        zTable[0x87]=() -> INSTR_sax(peekZeroPage(), myLastOperandAddress);
+        zTable[0x97]=() -> INSTR_sax(peekZeroPage(Y), myLastOperandAddress);
+        zTable[0x83]=() -> INSTR_sax(peekIndirectX(), myLastOperandAddress);
+        zTable[0x8F]=() -> INSTR_sax(peekAbsolute(), myLastOperandAddress);
+
+        // lax
+        zTable[0xA3]=() -> INSTR_lax(peekIndirectX());
+        zTable[0xA7]=() -> INSTR_lax(peekZeroPage());
+        zTable[0xB3]=() -> INSTR_lax(peekIndirectY());
+        zTable[0xAF]=() -> INSTR_lax(peekAbsolute());
+        zTable[0xB7]=() -> INSTR_lax(peekZeroPage(Y));
+        zTable[0xBF]=() -> INSTR_lax(peekAbsoluteIndex(Y));
+
+        // sbx
+        zTable[0xCB]=() -> INSTR_sbx(peekImmediate());
+
+        // nop
+        zTable[0x04]=() -> INSTR_nop(peekZeroPage());
+        zTable[0x0C]=() -> INSTR_nop(peekAbsolute());
+        zTable[0x14]=() -> INSTR_nop(peekZeroPage(X));
+        zTable[0x1C]=() -> INSTR_nop(peekAbsoluteIndex(X));
+        zTable[0x1A]=() -> { };  // implied, no operand fetched
+        zTable[0x34]=() -> INSTR_nop(peekZeroPage(X));
+        zTable[0x3C]=() -> INSTR_nop(peekAbsoluteIndex(X));
+        zTable[0x3A]=() -> { };  // implied, no operand fetched
+        zTable[0x44]=() -> INSTR_nop(peekZeroPage());
+        zTable[0x54]=() -> INSTR_nop(peekZeroPage(X));
+        zTable[0x5C]=() -> INSTR_nop(peekAbsoluteIndex(X));
+        zTable[0x5A]=() -> { };  // implied, no operand fetched
+        zTable[0x64]=() -> INSTR_nop(peekZeroPage());
+        zTable[0x74]=() -> INSTR_nop(peekZeroPage(X));
+        zTable[0x7C]=() -> INSTR_nop(peekAbsoluteIndex(X));
+        zTable[0x7A]=() -> { };  // implied, no operand fetched
+        zTable[0x80]=() -> INSTR_nop(peekImmediate());
+        zTable[0x82]=() -> INSTR_nop(peekImmediate());
+        zTable[0x89]=() -> INSTR_nop(peekImmediate());
+        zTable[0xC2]=() -> INSTR_nop(peekImmediate());
+        zTable[0xD4]=() -> INSTR_nop(peekZeroPage(X));
+        zTable[0xDC]=() -> INSTR_nop(peekAbsoluteIndex(X));
+        zTable[0xDA]=() -> { };  // implied, no operand fetched
+        zTable[0xE2]=() -> INSTR_nop(peekImmediate());
+        zTable[0xF4]=() -> INSTR_nop(peekZeroPage(X));
+        zTable[0xFC]=() -> INSTR_nop(peekAbsoluteIndex(X));
+        zTable[0xFA]=() -> { };  // implied, no operand fetched
+
+        // dcp
+        zTable[0xC3]=() -> INSTR_dcp(peekIndirectX(), myLastOperandAddress);
+        zTable[0xC7]=() -> INSTR_dcp(peekZeroPage(), myLastOperandAddress);
+        zTable[0xCF]=() -> INSTR_dcp(peekAbsolute(), myLastOperandAddress);
+        zTable[0xD3]=() -> INSTR_dcp(peekIndirectY(), myLastOperandAddress);
+        zTable[0xD7]=() -> INSTR_dcp(peekZeroPage(X), myLastOperandAddress);
+        zTable[0xDB]=() -> INSTR_dcp(peekAbsoluteIndex(Y), myLastOperandAddress);
+        zTable[0xDF]=() -> INSTR_dcp(peekAbsoluteIndex(X), myLastOperandAddress);
+
+        // isb
+        zTable[0xE3]=() -> INSTR_isb(peekIndirectX(), myLastOperandAddress);
+        zTable[0xE7]=() -> INSTR_isb(peekZeroPage(), myLastOperandAddress);
+        zTable[0xEF]=() -> INSTR_isb(peekAbsolute(), myLastOperandAddress);
+        zTable[0xF3]=() -> INSTR_isb(peekIndirectY(), myLastOperandAddress);
+        zTable[0xF7]=() -> INSTR_isb(peekZeroPage(X), myLastOperandAddress);
+        zTable[0xFB]=() -> INSTR_isb(peekAbsoluteIndex(Y), myLastOperandAddress);
+        zTable[0xFF]=() -> INSTR_isb(peekAbsoluteIndex(X), myLastOperandAddress);
+
+        // slo
+        zTable[0x03]=() -> INSTR_slo(peekIndirectX(), myLastOperandAddress);
+        zTable[0x07]=() -> INSTR_slo(peekZeroPage(), myLastOperandAddress);
+        zTable[0x0F]=() -> INSTR_slo(peekAbsolute(), myLastOperandAddress);
+        zTable[0x13]=() -> INSTR_slo(peekIndirectY(), myLastOperandAddress);
+        zTable[0x17]=() -> INSTR_slo(peekZeroPage(X), myLastOperandAddress);
+        zTable[0x1B]=() -> INSTR_slo(peekAbsoluteIndex(Y), myLastOperandAddress);
+        zTable[0x1F]=() -> INSTR_slo(peekAbsoluteIndex(X), myLastOperandAddress);
+
+        // asr
+        zTable[0x4B]=() -> INSTR_asr(peekImmediate());
+
+        // rla
+        zTable[0x27]=() -> INSTR_rla(peekZeroPage(), myLastOperandAddress);
+        zTable[0x37]=() -> INSTR_rla(peekZeroPage(X), myLastOperandAddress);
+        zTable[0x2F]=() -> INSTR_rla(peekAbsolute(), myLastOperandAddress);
+        zTable[0x3F]=() -> INSTR_rla(peekAbsoluteIndex(X), myLastOperandAddress);
+        zTable[0x3B]=() -> INSTR_rla(peekAbsoluteIndex(Y), myLastOperandAddress);
+        zTable[0x23]=() -> INSTR_rla(peekIndirectX(), myLastOperandAddress);
+        zTable[0x33]=() -> INSTR_rla(peekIndirectY(), myLastOperandAddress);
+        
+        return zTable;
+    }
+    
+    /**
+     * The original (switch-based) core.
+     * @param aRepeats Number of loops (instructions) to execute
+     * @return number of instructions executed
+     * @throws jstella.j6507.J6507.J6507Exception 
+     */
+    private int executeSwitch(int aRepeats) throws J6507Exception
     {
        // boolean zReturn=false;
         //int zReturn=0;
@@ -1241,7 +2070,7 @@ public class J6507 implements java.io.Serializable {
                 int zDebug=20;
             }
             assert(zCycles>=0); //make sure we haven't signalled more cycles than have occurred
-            myCurrentSystem.processorCycle(zCycles);
+            myUnpublishedCycles+=zCycles;
             myCyclesSignaled=0;
             
             
@@ -1265,10 +2094,73 @@ public class J6507 implements java.io.Serializable {
     }
     
     private void signalCycle() {
-        myCurrentSystem.processorCycle(1);
+        myUnpublishedCycles++;
         myCyclesSignaled++;
     }
     
+    /**
+     * Writes the registers and the rest of the processor's state, so that they can be
+     * put back later by loadState(...).  (The caches of decoded code aren't included; they
+     * are rebuilt as needed.)
+     * @param aOut where to write the state
+     * @throws java.io.IOException if the output throws one
+     */
+    public void saveState(DataOutput aOut) throws IOException {
+        publishCycles();
+        aOut.writeInt(P);
+        aOut.writeInt(A);
+        aOut.writeInt(X);
+        aOut.writeInt(Y);
+        aOut.writeInt(SP);
+        aOut.writeInt(IR);
+        aOut.writeInt(PC);
+        aOut.writeInt(myExecutionStatus);
+        aOut.writeInt(myLastOperandAddress);
+        aOut.writeInt(myLastImmediateValues[0]);
+        aOut.writeInt(myLastImmediateValues[1]);
+        aOut.writeBoolean(myPageCrossed);
+        aOut.writeInt(myBranchResult);
+        aOut.writeInt(myCyclesSignaled);
+        aOut.writeBoolean(myReadLast);
+    }
+    
+    /**
+     * Puts back the state written by saveState(...).
+     * @param aIn where to read the state from
+     * @throws java.io.IOException if the input throws one
+     */
+    public void loadState(DataInput aIn) throws IOException {
+        P=aIn.readInt();
+        A=aIn.readInt();
+        X=aIn.readInt();
+        Y=aIn.readInt();
+        SP=aIn.readInt();
+        IR=aIn.readInt();
+        PC=aIn.readInt();
+        myExecutionStatus=aIn.readInt();
+        myLastOperandAddress=aIn.readInt();
+        myLastImmediateValues[0]=aIn.readInt();
+        myLastImmediateValues[1]=aIn.readInt();
+        myPageCrossed=aIn.readBoolean();
+        myBranchResult=aIn.readInt();
+        myCyclesSignaled=aIn.readInt();
+        myReadLast=aIn.readBoolean();
+        myUnpublishedCycles=0;
+    }
+    
+    /**
+     * Tells the system (via processorCycle(...)) about any processor cycles that have
+     * elapsed since it was last told.  A system should call this before it relies on its
+     * cycle count while the processor is executing (e.g. when a device is peeked or poked).
+     */
+    public void publishCycles() {
+        if (myUnpublishedCycles!=0) {
+            int zCycles=myUnpublishedCycles;
+            myUnpublishedCycles=0;
+            myCurrentSystem.processorCycle(zCycles);
+        }//end : cycles to publish
+    }
+    
     private int calculateCycles(int aIR) {
         int zCycleNum=ourInstructionProcessorCycleTable[aIR];
         boolean zIsBranch=(ourInstructionPageCrossDelay[aIR]==2);
@@ -1389,6 +2281,7 @@ public class J6507 implements java.io.Serializable {
     
     private int peek(int aAddress, boolean aSignalCycle) { 
         assert(aAddress>=0);
+        if (myDataBusPending==true) flushDataBus();
         myReadLast=true;
         myLastOperandAddress=aAddress;
         if (aSignalCycle==true) signalCycle();
@@ -1403,7 +2296,7 @@ public class J6507 implements java.io.Serializable {
     
     private int peekImmediate() {
         
-        int zReturn=peek(PC); // +1 cycle
+        int zReturn=(myFetchBytes!=null) ? fetchDecoded() : peek(PC); // +1 cycle
         PC++;
         myLastImmediateValues[1]=myLastImmediateValues[0];
         myLastImmediateValues[0]=zReturn;
@@ -1569,6 +2462,7 @@ public class J6507 implements java.io.Serializable {
     
     private void poke(int aAddress, int aByteValue) {
          assert((aByteValue<0x100)&&(aByteValue>=0x00));
+        if (myDataBusPending==true) flushDataBus();
         if (aAddress>=0) {
       
             myCurrentSystem.poke(aAddress, aByteValue);
@@ -1587,13 +2481,7 @@ public class J6507 implements java.io.Serializable {
      * @param aByteValue The byte value to set the flags to.  Each bit represents a single flag.
      */
     private void setFlags(int aByteValue) {
-        N = ((aByteValue & 0x80)!=0);
-        V = ((aByteValue & 0x40)!=0);
-        B = ((aByteValue & 0x10)!=0); //;  The 6507's B flag always true
-        D = ((aByteValue & 0x08)!=0);
-        I = ((aByteValue & 0x04)!=0);
-        notZ = !((aByteValue & 0x02)!=0);
-        C = ((aByteValue & 0x01)!=0);
+        P = (aByteValue & 0xFF) | FLAG_UNUSED;
     }
     
     /**
@@ -1602,25 +2490,11 @@ public class J6507 implements java.io.Serializable {
      * @return All of the flags, combined in a single byte
      */
     private int getFlags() {
-        
-        int ps=0x20;
-        if(N) ps |= 0x80;
-        if(V) ps |= 0x40;
-        if(B) ps |= 0x10;
-        if(D) ps |= 0x08;
-        if(I) ps |= 0x04;
-        if(!notZ) ps |= 0x02;
-        if(C) ps |= 0x01;
-        
-        return ps;
+        return P;
     }
     
     
     
-    private static boolean getBit(int aByte, int aBitNumber) {
-        //boolean zReturn=false;
-        return ((aByte & (0x01 << aBitNumber))!=0);
-    }
     
     
     
@@ -1631,44 +2505,42 @@ public class J6507 implements java.io.Serializable {
     {
         /*unsigned byte*/ int oldA = A;
         assert((operand>=0)&&(operand<0x100));
-        if(!D) //not decimal
+        if((P & FLAG_D)==0) //not decimal
         {
             int zSignedSum=(int)((byte)A + operand);
-            if (C==true) zSignedSum++;
+            if ((P & FLAG_C)!=0) zSignedSum++;
             
             //short sum = (short)(((byte)A) + (short)((byte)operand) + (C ? 1 : 0));
-            V = ((zSignedSum > 127) || (zSignedSum < -128)); //overflow
+            setV((zSignedSum > 127) || (zSignedSum < -128)); //overflow
             
             int zUSum = A +operand;
-            if (C==true) zUSum++;
+            if ((P & FLAG_C)!=0) zUSum++;
             //(short)((short)A + (short)operand + (C ? 1 : 0));
             
             setC(zUSum > 0xff);
             setA(zUSum & 0xFF);
            
-            setNotZ((zUSum & 0xff)!=0);
-            setN(getBit(A, 7));
+            setNZ(A);
         } else {
             
-            int sum = BCDTable[0][A] + BCDTable[0][operand] + (C ? 1 : 0);
+            int sum = BCDTable[0][A] + BCDTable[0][operand] + (P & FLAG_C);
             
             setC(sum > 99);
             setA(BCDTable[1][sum & 0xff]);
-            setNotZ(A!=0);
+            setNZ(A);
             //  N = (A.getBit(7));
-            setN(getBit(A, 7));
-            V=(((oldA ^ A) & 0x80)!=0) && (((A ^ operand) & 0x80)!=0);
+            setV((((oldA ^ A) & 0x80)!=0) && (((A ^ operand) & 0x80)!=0));
         }
     }
     
     private void INSTR_SBC(int operand) { 
        int oldA = A & 0xFF;
         assert((operand>=0)&&(operand<0x100));
-        if(!D) {
+        if((P & FLAG_D)==0) {
           //TODO: This is a very awkward method...needs to be more straight-forward/transparent (JLA)
             
             int zRevOperand = (~operand) & 0xFF; 
-            int zAmountToAdd=toSignedByteValue(zRevOperand) + (C ? 1 : 0); //if carry is on, amountToAdd= -1 * amountToSubtract, else it's one less (i.e. more negative)
+            int zAmountToAdd=toSignedByteValue(zRevOperand) + (P & FLAG_C); //if carry is on, amountToAdd= -1 * amountToSubtract, else it's one less (i.e. more negative)
             
             int zSignedResult = toSignedByteValue(A) + zAmountToAdd ;       
             setV(((zSignedResult > 127) || (zSignedResult < -128)));
@@ -1678,25 +2550,23 @@ public class J6507 implements java.io.Serializable {
             int zNewA = A + zAmountToAdd;
             
            
-            int zAmountToSubtract=operand + (C ? 0 : 1);  
+            int zAmountToSubtract=operand + ((P & FLAG_C) ^ 1);  
             setC(zAmountToSubtract<= oldA);
            
             
             //setC(!(difference > 0xff));
             setA(zNewA & 0xFF);
-            setNotZ(A!=0);
-            setN((A & 0x80)!=0);
+            setNZ(A);
         } else {
-            int difference = BCDTable[0][A] - BCDTable[0][operand] - (C ? 0 : 1);
+            int difference = BCDTable[0][A] - BCDTable[0][operand] - ((P & FLAG_C) ^ 1);
             
             if(difference < 0)
                 difference += 100;
             
             setA(BCDTable[1][difference]);
-            setNotZ(A!=0);
-            setN((A & 0x80)!=0);
+            setNZ(A);
             
-            setC((oldA >= (operand + (C ? 0 : 1))));
+            setC((oldA >= (operand + ((P & FLAG_C) ^ 1))));
             setV((((oldA ^ A) & 0x80)!=0) && (((A ^ operand) & 0x80)!=0));
         }
     }
@@ -1704,24 +2574,21 @@ public class J6507 implements java.io.Serializable {
     
     private void INSTR_LDA(int aValue) {
         setA(aValue);
-        notZ = (A!=0);
-        N = ((A & 0x80)!=0);
+        setNZ(A);
     }
     
     
     private void INSTR_LDX(int operand) {
         assert(operand<0x100);
         setX(operand);
-        notZ = (X!=0);
-        N = ((X & 0x80)!=0);
+        setNZ(X);
         
     }//::
     
     private void INSTR_LDY(int operand) {
         
         Y = operand;
-        notZ = (Y!=0);
-        N = ((Y & 0x80)!=0);
+        setNZ(Y);
         
     }//::
     
@@ -1732,23 +2599,20 @@ public class J6507 implements java.io.Serializable {
     private void INSTR_AND(int aValue) { //OK
         int zNewA=getA() & aValue;
         setA(zNewA);
-        setNotZ(zNewA!=0);
-        setN((zNewA & 0x80)!=0);
+        setNZ(zNewA);
     }
     
     private void INSTR_EOR(int aValue) { //OK
         int zNewA=getA() ^ aValue;
         setA(zNewA);
-        setNotZ(zNewA!=0);
-        setN((zNewA & 0x80)!=0);
+        setNZ(zNewA);
 
     }
     
     private void INSTR_ORA(int aValue) { //OK
         int zNewA=getA() | aValue;
         setA(zNewA);
-        setNotZ(zNewA!=0);
-        setN((zNewA & 0x80)!=0);
+        setNZ(zNewA);
 //  A |= operand;
         // notZ = (A!=0);
         // N = ((A & 0x80)!=0);
@@ -1766,8 +2630,7 @@ public class J6507 implements java.io.Serializable {
         aValue &= 0xFF;
         poke(operandAddress, aValue);
         
-        setNotZ(aValue!=0);
-        setN(aValue & 0x80);
+        setNZ(aValue);
     }
     
     private void INSTR_ASLA() {
@@ -1778,8 +2641,7 @@ public class J6507 implements java.io.Serializable {
         zNewA&=0xFF;
         setA(zNewA);
         
-        setNotZ(A!=0);
-        setN((A & 0x80)!=0);
+        setNZ(A);
     }
     
     
@@ -1796,14 +2658,14 @@ public class J6507 implements java.io.Serializable {
     }
     
     
-    private void INSTR_BCC(int operand) { branch(!C, operand); }    
-    private void INSTR_BCS(int operand) { branch(C, operand);  }    
-    private void INSTR_BEQ(int operand) { branch(!notZ, operand);  }    
-    private void INSTR_BMI(int operand) { branch(N, operand);  }    
-    private void INSTR_BNE(int operand) { branch(notZ, operand);  }    
-    private void INSTR_BPL(int operand) { branch(!N, operand);   }    
-    private void INSTR_BVC(int operand) { branch(!V, operand);   }    
-    private void INSTR_BVS(int operand) { branch(V, operand);   }
+    private void INSTR_BCC(int operand) { branch((P & FLAG_C)==0, operand); }    
+    private void INSTR_BCS(int operand) { branch((P & FLAG_C)!=0, operand);  }    
+    private void INSTR_BEQ(int operand) { branch((P & FLAG_Z)!=0, operand);  }    
+    private void INSTR_BMI(int operand) { branch((P & FLAG_N)!=0, operand);  }    
+    private void INSTR_BNE(int operand) { branch((P & FLAG_Z)==0, operand);  }    
+    private void INSTR_BPL(int operand) { branch((P & FLAG_N)==0, operand);   }    
+    private void INSTR_BVC(int operand) { branch((P & FLAG_V)==0, operand);   }    
+    private void INSTR_BVS(int operand) { branch((P & FLAG_V)!=0, operand);   }
     
     
     
@@ -1818,21 +2680,19 @@ public class J6507 implements java.io.Serializable {
     
     
     private void INSTR_BIT(int operand) { //OK
-        setNotZ(A & operand);
-        setN(operand & 0x80);
-        setV(operand & 0x40);
+        P = (P & ~(FLAG_N | FLAG_V | FLAG_Z)) | (operand & (FLAG_N | FLAG_V)) | (((A & operand)==0) ? FLAG_Z : 0);
     }
     
     private void INSTR_BRK() { //OK
         peek(PC++);
       //  System.out.println("6507 DEBUG : BRK");
-        B = true;
+        P |= FLAG_B;
         
         poke(0x0100 + SPdec(), PC >> 8);
         poke(0x0100 + SPdec(), PC & 0x00ff);
         poke(0x0100 + SPdec(), getFlags());
         
-        I = true;
+        P |= FLAG_I;
         
         PC=peek(0xfffe);
         PC |= (peek(0xffff) << 8);
@@ -1852,24 +2712,21 @@ public class J6507 implements java.io.Serializable {
     private void INSTR_CMP(int operand) { //OK
         int value = A - operand;
         
-        setNotZ(value);
-        setN(value & 0x0080);
+        setNZ(value);
         setC(((value & 0x0100)==0));
     }
     
     private void INSTR_CPX(int operand) { //OK
         int value = X - operand;
         
-        setNotZ(value);
-        setN(value & 0x0080);
+        setNZ(value);
         setC((value & 0x0100)==0);
     }
     
     private void INSTR_CPY(int operand) { //OK
         int value = Y - operand;
         
-        setNotZ(value);
-        setN(value & 0x0080);
+        setNZ(value);
         setC((value & 0x0100)==0);
     }
     
@@ -1880,15 +2737,13 @@ public class J6507 implements java.io.Serializable {
         value &= 0xFF;
         poke(operandAddress, value);
         
-        setNotZ(value);
-        setN(value & 0x80);
+        setNZ(value);
     }
     
     private void INSTR_DEX() { //OK
         X--;
         X&=0xFF; //masking, in case it went below zero
-        notZ = (X!=0);
-        N = ((X & 0x80)!=0);
+        setNZ(X);
     }
     
     
@@ -1896,8 +2751,7 @@ public class J6507 implements java.io.Serializable {
         Y--;
         
         Y&=0xFF; //masking, in case it went below zero
-        notZ = (Y!=0);
-        N = ((Y & 0x80)!=0);
+        setNZ(Y);
     }
     
     
@@ -1907,23 +2761,20 @@ public class J6507 implements java.io.Serializable {
         value &=0xFF;
         poke(operandAddress, value);
         
-        setNotZ(value);
-        setN(value & 0x80);
+        setNZ(value);
     }
     
     private void INSTR_INX() { //OK
         X++;
         X &=0xFF;
         assert(X<0x100);
-        notZ = (X!=0);
-        N = ((X & 0x80)!=0);
+        setNZ(X);
     }
     
     private void INSTR_INY() { //OK
         Y++;
         Y &=0xFF;
-        notZ = (Y!=0);
-        N = ((Y & 0x80)!=0);
+        setNZ(Y);
     }
 
     
@@ -1970,8 +2821,7 @@ public class J6507 implements java.io.Serializable {
         operand = (operand >> 1) & 0x7f;
         poke(operandAddress, operand);
         
-        notZ = (operand!=0);
-        setN(operand & 0x80);
+        setNZ(operand);
     }
     
     
@@ -1981,8 +2831,7 @@ public class J6507 implements java.io.Serializable {
         
         setA( (getA() >> 1) & 0x7f);
         
-        setNotZ(A!=0);
-        setN((A & 0x80)!=0);
+        setNZ(A);
     }
     
     
@@ -2004,8 +2853,7 @@ public class J6507 implements java.io.Serializable {
     private void INSTR_PLA() { //OK
         peek(0x0100 + SPinc());
         setA(peek(0x0100 + SP));
-        setNotZ(A!=0);
-        setN((A & 0x80)!=0);
+        setNZ(A);
     }
     
     private void INSTR_PLP() { //OK
@@ -2016,53 +2864,49 @@ public class J6507 implements java.io.Serializable {
 
     
     private void INSTR_ROL(int operand, int operandAddress) { //OK
-        boolean oldC=C;
+        int zOldC=P & FLAG_C;
         
         // Set carry flag according to the left-most bit in operand
         setC(operand & 0x80);
         
-        operand = ((operand << 1) | (oldC ? 1 : 0))& 0xFF;
+        operand = ((operand << 1) | zOldC)& 0xFF;
         poke(operandAddress, operand);
         
-        notZ = (operand!=0);
-        setN(operand & 0x80);
+        setNZ(operand);
     }
     
     private void INSTR_ROLA() { //OK
-        boolean oldC=C;
+        int zOldC=P & FLAG_C;
         
         // Set carry flag according to the left-most bit
         setC(A & 0x80);
-        int zNewA=(getA() << 1) | (oldC ? 1 : 0);
+        int zNewA=(getA() << 1) | zOldC;
         setA(zNewA & 0xFF);
         
-        setNotZ(A!=0);
-        N = ((A & 0x80)!=0);
+        setNZ(A);
     }
     
     private void INSTR_ROR(int operand, int operandAddress) { 
-        boolean oldC=C;
+        int zOldC=P & FLAG_C;
         
         // Set carry flag according to the right-most bit
         setC(operand & 0x01);
         
-        operand = ((operand >> 1) & 0x7f) | (oldC ? 0x80 : 0x00);
+        operand = ((operand >> 1) & 0x7f) | (zOldC << 7);
         poke(operandAddress, operand);
         
-        notZ = (operand!=0);
-        setN(operand & 0x80);
+        setNZ(operand);
     }
     
     private void INSTR_RORA() {
-        boolean oldC=C;
+        int zOldC=P & FLAG_C;
         
         // Set carry flag according to the right-most bit
         setC(A & 0x01);
         int zOldA=getA();
-        int zNewA=((getA() >> 1) & 0x7f) | (oldC ? 0x80 : 0x00);
+        int zNewA=((getA() >> 1) & 0x7f) | (zOldC << 7);
         setA(zNewA);
-        notZ = (zNewA!=0);
-        N = ((zNewA & 0x80)!=0);
+        setNZ(zNewA);
     }
     
 
@@ -2096,26 +2940,22 @@ public class J6507 implements java.io.Serializable {
     
     private void INSTR_TAX() { //OK
         X = A;
-        notZ = (X!=0);
-        N = ((X & 0x80)!=0);
+        setNZ(X);
     }
     
     private void INSTR_TAY() { //OK
         Y = A;
-        notZ = (Y!=0);
-        N = ((Y & 0x80)!=0);
+        setNZ(Y);
     }
     
     private void INSTR_TSX() { //OK
         X = SP;
-        notZ = (X!=0);
-        N = ((X & 0x80)!=0);
+        setNZ(X);
     }
     
     private void INSTR_TXA() { //OK
         setA(X);
-        notZ = (A!=0);
-        N = ((A & 0x80)!=0);
+        setNZ(A);
     }
     
     private void INSTR_TXS() { //OK
@@ -2124,8 +2964,7 @@ public class J6507 implements java.io.Serializable {
     
     private void INSTR_TYA() { //OK
         setA(Y);
-        notZ = (A!=0);
-        N = ((A & 0x80)!=0);
+        setNZ(A);
     }
     
     
@@ -2143,8 +2982,7 @@ public class J6507 implements java.io.Serializable {
    private void INSTR_lax(int aValue) { 
         setA(aValue);
         setX(aValue);
-        notZ = (A!=0);
-        N = ((A & 0x80)!=0);
+        setNZ(A);
     }
      
     
@@ -2155,8 +2993,7 @@ public class J6507 implements java.io.Serializable {
             setC((difference & 0x100)==0);
             difference &= 0xff;
             setX(difference);
-            setNotZ(difference!=0);
-            setN((difference & 0x80)!=0);
+            setNZ(difference);
     }
 
 
@@ -2167,22 +3004,20 @@ public class J6507 implements java.io.Serializable {
  	    myA = (myA >> 1) & 0x7f;
 
             setA(myA);
-            setNotZ(myA!=0);
-            setN((myA & 0x80)!=0);
+            setNZ(myA);
 
 
      }
     
     
    private void INSTR_rla(int operand, int operandAddress) { //TODO: Double check code--it is untested
-       int zValue = (operand << 1) | (C ? 1 : 0);
+       int zValue = (operand << 1) | (P & FLAG_C);
        poke(operandAddress, zValue);
 
        int zNewA = A & zValue; 
        setA(zNewA & 0xFF);
        setC(operand & 0x80);
-       setNotZ(zNewA);
-       setN(zNewA & 0x80);
+       setNZ(zNewA);
      }
     
 
@@ -2198,8 +3033,7 @@ public class J6507 implements java.io.Serializable {
         //this is CMP
         value = A - value;
         
-        setNotZ(value);
-        setN(value & 0x0080);
+        setNZ(value);
         setC(((value & 0x0100)==0));
     }
 
@@ -2215,36 +3049,34 @@ public class J6507 implements java.io.Serializable {
 
         // this is SBC
         int oldA = A;
-        if(!D) {
+        if((P & FLAG_D)==0) {
           
             int zRevOperand = (~value) & 0xFF; 
          
-            int Sdifference = toSignedByteValue(A) + toSignedByteValue(zRevOperand) + (C ? 1 : 0);
+            int Sdifference = toSignedByteValue(A) + toSignedByteValue(zRevOperand) + (P & FLAG_C);
        
             setV(((Sdifference > 127) || (Sdifference < -128)));
             int zSBV=toSignedByteValue(zRevOperand);
          
-            int difference = A + zSBV + (C ? 1 : 0);
+            int difference = A + zSBV + (P & FLAG_C);
             
            
-            int zSubAmount=value + (C ? 0 : 1);
+            int zSubAmount=value + ((P & FLAG_C) ^ 1);
             setC(zSubAmount<= oldA);
             
             //setC(!(difference > 0xff));
             setA(difference & 0xFF);
-            setNotZ(A!=0);
-            setN((A & 0x80)!=0);
+            setNZ(A);
         } else {
-            int difference = BCDTable[0][A&0xff] - BCDTable[0][value&0xff] - (C ? 0 : 1);
+            int difference = BCDTable[0][A&0xff] - BCDTable[0][value&0xff] - ((P & FLAG_C) ^ 1);
             
             if(difference < 0)
                 difference += 100;
             
             setA(BCDTable[1][difference&0xff]);
-            setNotZ(A!=0);
-            setN((A & 0x80)!=0);
+            setNZ(A);
             
-            setC((oldA >= (value + (C ? 0 : 1))));
+            setC((oldA >= (value + ((P & FLAG_C) ^ 1))));
             setV((((oldA ^ A) & 0x80)!=0) && (((A ^ value) & 0x80)!=0));
         }
     }
@@ -0,0 +1,278 @@
+/*
+ * FramePacer.java
+ *
+ * To change this template, choose Tools | Template Manager
+ * and open the template in the editor.
+ */
+
+package jstella.runner;
+
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs frames at a steady rate on a thread of its own, using System.nanoTime() instead of
+ * a timer.  (A java.util.Timer can only be given whole milliseconds, so 60 frames a second
+ * has to be approximated, e.g. by 17 milliseconds, or about 58.8 frames a second.)
+ * <p>
+ * Each frame has a deadline, and the deadlines are a whole number of periods from the
+ * first one, so the rate doesn't drift however late any one frame happens to be.  To reach
+ * a deadline, the thread sleeps until it is close, and then spins (yielding) for the rest,
+ * since sleeping alone can oversleep by a millisecond or more.  If the frames fall far behind
+ * (e.g. the computer was busy), the deadlines start over from the present, rather than
+ * running a burst of frames to catch up.
+ * </p>
+ * <p>
+ * The pacer keeps track of how long it has actually been between the starts of the last
+ * few hundred frames, so that the real frame rate and the jitter can be looked at (see
+ * getMeasuredFrameRate(), getIntervalPercentile(...), getJitterPercentile(...)), as well
+ * as the number of frames that finished after the next frame's deadline had passed.
+ * </p>
+ * @author J.L. Allen
+ */
+public class FramePacer {
+
+    /**
+     * Runs the frames of a FramePacer.
+     */
+    public interface IfcFrameTask {
+        /**
+         * Called by the pacer's thread for every frame.
+         * @param aPacer the pacer
+         * @return true to keep going, false to stop the pacer
+         */
+        public boolean runFrame(FramePacer aPacer);
+    }
+
+    private final static long SPIN_NANOS=2000000L; //sleeping ends this far before the deadline, and spinning takes over
+    private final static long MAX_LAG_NANOS=100000000L; //how far behind the frames can fall before the deadlines start over
+    private final static int HISTORY_SIZE=512;
+
+    private final IfcFrameTask myTask;
+    private final String myName;
+    private volatile long myPeriodNanos=0;
+    private volatile Thread myThread=null;
+
+    // Statistics (guarded by this)
+    private final long[] myIntervals=new long[HISTORY_SIZE];
+    private int myIntervalIndex=0;
+    private int myIntervalCount=0;
+    private long myIntervalTotal=0;
+    private long myFrameCount=0;
+    private long myMissedDeadlines=0;
+
+
+    /**
+     * Creates a frame pacer.  It doesn't run anything until start() is called.
+     * @param aTask what to run every frame
+     * @param aName the name of the pacer's thread
+     */
+    public FramePacer(IfcFrameTask aTask, String aName) {
+        myTask=aTask;
+        myName=aName;
+    }
+
+    /**
+     * Sets the number of frames to run per second.  This can be changed while the pacer
+     * is running...the new deadlines start from the next frame.
+     * @param aFramesPerSecond the frame rate, or 0 to run the frames as fast as they can go
+     */
+    public void setFrameRate(double aFramesPerSecond) {
+        myPeriodNanos=(aFramesPerSecond>0.0) ? (long)(1000000000.0 / aFramesPerSecond) : 0;
+    }
+
+    /**
+     * Returns the rate that the pacer is trying to run the frames at.
+     * @return frames per second, or 0 if the frames aren't being paced
+     */
+    public double getFrameRate() {
+        long zPeriod=myPeriodNanos;
+        return (zPeriod>0) ? (1000000000.0 / (double)zPeriod) : 0.0;
+    }
+
+    /**
+     * Starts running frames.  Does nothing if the pacer is already running.
+     */
+    public synchronized void start() {
+        if (myThread==null) {
+            Thread zThread=new Thread(new Runnable() {
+                public void run() { runPacer(); }
+            }, myName);
+            zThread.setDaemon(true);
+            zThread.setPriority(Thread.NORM_PRIORITY + 1);
+            myThread=zThread;
+            zThread.start();
+        }//end : not running
+    }
+
+    /**
+     * Stops running frames.  Unless it is called from the frame task itself, this waits
+     * for the frame in progress (if any) to finish.
+     */
+    public void stop() {
+        Thread zThread;
+        synchronized (this) {
+            zThread=myThread;
+            myThread=null;
+        }
+        if ((zThread!=null)&&(zThread!=Thread.currentThread())) {
+            try {
+                zThread.join();
+            }//end : try
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }//end : not called from the pacer's thread
+    }
+
+    public boolean isRunning() {
+        return (myThread!=null);
+    }
+
+
+    // - - - - - - - - - - - - - - STATISTICS - - - - - - - - - - - - - -
+
+    /**
+     * Forgets the frame intervals and the counts collected so far.
+     */
+    public synchronized void resetStatistics() {
+        myIntervalIndex=0;
+        myIntervalCount=0;
+        myIntervalTotal=0;
+        myFrameCount=0;
+        myMissedDeadlines=0;
+    }
+
+    /**
+     * Returns the number of frames run since the statistics were last reset.
+     * @return the frame count
+     */
+    public synchronized long getFrameCount() { return myFrameCount; }
+
+    /**
+     * Returns the number of frames that finished after the next frame was supposed to
+     * have started.
+     * @return the number of missed deadlines
+     */
+    public synchronized long getMissedDeadlineCount() { return myMissedDeadlines; }
+
+    /**
+     * Returns the frame rate, as measured over the last few hundred frames.
+     * @return frames per second, or 0 if not enough frames have been run
+     */
+    public synchronized double getMeasuredFrameRate() {
+        if (myIntervalTotal<=0) return 0.0;
+        else return (double)myIntervalCount * 1000000000.0 / (double)myIntervalTotal;
+    }
+
+    /**
+     * Returns a percentile of the time between the starts of consecutive frames, over the
+     * last few hundred frames.
+     * @param aPercentile the percentile, from 0 to 100 (e.g. 50 for the median)
+     * @return the interval in nanoseconds, or 0 if not enough frames have been run
+     */
+    public long getIntervalPercentile(double aPercentile) {
+        return percentile(getIntervals(false), aPercentile);
+    }
+
+    /**
+     * Returns a percentile of the jitter...how far the time between consecutive frames
+     * was from what it should have been (in either direction), over the last few hundred frames.
+     * @param aPercentile the percentile, from 0 to 100 (e.g. 99)
+     * @return the jitter in nanoseconds, or 0 if not enough frames have been run (or they aren't being paced)
+     */
+    public long getJitterPercentile(double aPercentile) {
+        return percentile(getIntervals(true), aPercentile);
+    }
+
+    /**
+     * Returns a one-line summary of the statistics, e.g. for a debug window or the console.
+     * @return the summary
+     */
+    public String getStatisticsSummary() {
+        return String.format("%.2f fps (target %.2f), interval p50=%.2f ms, jitter p50=%.3f ms p95=%.3f ms p99=%.3f ms, missed deadlines=%d of %d",
+                getMeasuredFrameRate(), getFrameRate(), getIntervalPercentile(50) / 1000000.0,
+                getJitterPercentile(50) / 1000000.0, getJitterPercentile(95) / 1000000.0, getJitterPercentile(99) / 1000000.0,
+                getMissedDeadlineCount(), getFrameCount());
+    }
+
+    private synchronized long[] getIntervals(boolean aJitter) {
+        long zPeriod=myPeriodNanos;
+        if ((aJitter==true)&&(zPeriod<=0)) return new long[0];
+        long[] zReturn=new long[myIntervalCount];
+        for (int i=0; i<myIntervalCount; i++) {
+            zReturn[i]=(aJitter==true) ? Math.abs(myIntervals[i] - zPeriod) : myIntervals[i];
+        }//end : for i loop
+        return zReturn;
+    }
+
+    private static long percentile(long[] aValues, double aPercentile) {
+        if (aValues.length==0) return 0;
+        Arrays.sort(aValues);
+        int zIndex=(int)Math.ceil(aPercentile / 100.0 * aValues.length) - 1;
+        return aValues[Math.max(0, Math.min(aValues.length - 1, zIndex))];
+    }
+
+    private synchronized void recordFrame(long aInterval, boolean aMissedDeadline) {
+        myFrameCount++;
+        if (aMissedDeadline==true) myMissedDeadlines++;
+        if (aInterval>0) {
+            if (myIntervalCount==HISTORY_SIZE) myIntervalTotal-=myIntervals[myIntervalIndex];
+            else myIntervalCount++;
+            myIntervals[myIntervalIndex]=aInterval;
+            myIntervalTotal+=aInterval;
+            myIntervalIndex=(myIntervalIndex + 1) % HISTORY_SIZE;
+        }//end : not the first frame
+    }
+
+
+    // - - - - - - - - - - - - - - PACING - - - - - - - - - - - - - -
+
+    private void runPacer() {
+        long zPeriod=0;
+        long zDeadline=System.nanoTime();
+        long zPreviousStart=0;
+
+        while (myThread==Thread.currentThread()) {
+            //STEP 1 : wait until the frame's deadline
+            long zNewPeriod=myPeriodNanos;
+            if (zNewPeriod!=zPeriod) {
+                zPeriod=zNewPeriod;
+                zDeadline=System.nanoTime(); //the frame rate changed...start the deadlines over
+            }//end : period changed
+            if (zPeriod>0) waitUntil(zDeadline);
+
+            //STEP 2 : run the frame
+            long zStart=System.nanoTime();
+            boolean zContinue=myTask.runFrame(this);
+
+            //STEP 3 : set the next deadline, one period after the last (not after now, so the rate doesn't drift)
+            long zNow=System.nanoTime();
+            boolean zMissed=false;
+            if (zPeriod>0) {
+                zDeadline+=zPeriod;
+                if (zNow > zDeadline) {
+                    zMissed=true;
+                    if (zNow - zDeadline > MAX_LAG_NANOS) zDeadline=zNow; //too far behind to catch up
+                }//end : late
+            }//end : paced
+
+            recordFrame((zPreviousStart!=0) ? (zStart - zPreviousStart) : 0, zMissed);
+            zPreviousStart=zStart;
+            if (zContinue==false) break;
+        }//end : while running
+        synchronized (this) {
+            if (myThread==Thread.currentThread()) myThread=null;
+        }
+    }
+
+    private static void waitUntil(long aDeadline) {
+        while (true) {
+            long zRemaining=aDeadline - System.nanoTime();
+            if (zRemaining<=0) break;
+            else if (zRemaining > SPIN_NANOS) LockSupport.parkNanos(zRemaining - SPIN_NANOS);
+            else Thread.yield();
+        }//end : while
+    }
+
+}//CLASS END
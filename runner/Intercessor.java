@@ -38,17 +38,27 @@ import static jstella.core.JSConstants.*;
 public class Intercessor implements InputMaster.IfcInputMasterClient, IfcConsoleClient {
     
     //NTSC and PAL are television formats...NTSC is used the U.S.
-    // -NTSC televisions update the screen 60 times/sec (i.e. 60 Hertz).  To emulate this,
-    // a util timer is used, with a delay of 17 milliseconds.  Thus, there are (1000 ms /17 ms) or about 58.8 cycles
-    // per second using this delay.
-    
-    private final static int TIMER_DELAY_NTSC=17;
-    private final static int TIMER_DELAY_PAL=20;
-    private final static int TIMER_DELAY_SNOW=100;
+    // -NTSC televisions update the screen 60 times/sec (i.e. 60 Hertz), and PAL televisions 50 times/sec.
+    // The frames are run by a FramePacer at the console's nominal frame rate (the snow, which is just
+    // for show, is run at a much lower rate).
+    
+    private final static double FRAME_RATE_SNOW=10.0;
+    private final static long AUDIO_RATE_UPDATE_NANOS=1000000000L; //how often the sound is told the measured frame rate
+    
+    // Turbo mode : the frames are run one after the other, as fast as they can be (or up to the
+    // speed cap), painting only one frame out of every so many, with the sound off.
+    private final static int DEFAULT_TURBO_FRAME_SKIP=8;
+    private final static long TURBO_SPEED_UPDATE_NANOS=500000000L; //how often the on-screen speed is updated
+    
+    // Rewind : a snapshot is taken every frame (see JSRewindBuffer), and while rewinding, each frame
+    // goes back this many frames (i.e. the game plays backwards at this multiple of normal speed)
+    private final static int REWIND_MAX_FRAMES=60 * 60 * 5; //five minutes (NTSC)
+    private final static int REWIND_MAX_BYTES=4 * 1024 * 1024;
+    private final static int REWIND_SPEED=2;
   
     
    
-    private java.util.Timer myUtilTimer=null; 
+    private FramePacer myFramePacer=new FramePacer(new MainFrameTask(), "JStella-Frames");
     private InputMaster myInputMaster=new InputMaster(this);
     private JStellaCanvas myCanvas=null;
     
@@ -60,13 +70,31 @@ public class Intercessor implements InputMaster.IfcInputMasterClient, IfcConsole
   
     
     
-    private int myCurrentTimerDelay=TIMER_DELAY_NTSC;
+    private volatile double myNormalFrameRate=60.0;
     
     private boolean myAutoPauseMode=false;
     
     private boolean myPausedByPlayer=false;
     private boolean myPausedByFocusLoss=false;
     
+    private volatile boolean myTurboMode=false;
+    private volatile int myTurboFrameSkip=DEFAULT_TURBO_FRAME_SKIP;
+    private volatile double myTurboSpeedCap=0.0;
+    private int myRunAheadFrames=0;
+    private JSDisplayCache myDisplayCache=null;
+    
+    private final JSRewindBuffer myRewindBuffer=new JSRewindBuffer(REWIND_MAX_FRAMES, REWIND_MAX_BYTES);
+    private volatile boolean myRewindEnabled=true;
+    private volatile boolean myRewinding=false;
+    /** True once rewinding has run out of frames, until setRewinding(false) is called */
+    private volatile boolean myRewindExhausted=false;
+    private volatile double myTurboSpeed=0.0;
+    
+    // Used only by the frame pacer's thread
+    private long myTurboFrameCounter=0;
+    private long myTurboSpeedTime=0;
+    private long myAudioRateTime=0;
+    
     
     
     
@@ -109,6 +137,10 @@ public class Intercessor implements InputMaster.IfcInputMasterClient, IfcConsole
         }//end : destroy old console
         myConsole=aConsole;
         myConsole.setConsoleClient(this);
+        myConsole.setThreadedPresentation(true);
+        myConsole.setRunAheadFrames(myRunAheadFrames);
+        myConsole.setDisplayCache(myDisplayCache);
+        myRewindBuffer.clear();
     
         
         //myConsole.setTelevisionMode(JSConstants.TELEVISION_MODE_TEST_PATTERN);
@@ -123,7 +155,7 @@ public class Intercessor implements InputMaster.IfcInputMasterClient, IfcConsole
         
     
         myCanvas.requestFocusInWindow();
-        updateTimerDelay();
+        updateFrameRate();
         // myConsole.pauseAudio();
     }
     
@@ -135,11 +167,23 @@ public class Intercessor implements InputMaster.IfcInputMasterClient, IfcConsole
         return myConsole.getCartridge();
     }
     
-    private void updateTimerDelay() {
-        if (myConsole.getTelevisionMode()==TELEVISION_MODE_SNOW) myCurrentTimerDelay=TIMER_DELAY_SNOW;
-        else if (myConsole.getDisplayFormat()==DisplayFormat.PAL) myCurrentTimerDelay=TIMER_DELAY_PAL;
-        else myCurrentTimerDelay=TIMER_DELAY_NTSC;
-       myConsole.getAudio().setRealDisplayFrameRate(1000.0 / (double)myCurrentTimerDelay);  
+    private void updateFrameRate() {
+        if (myConsole.getTelevisionMode()==TELEVISION_MODE_SNOW) myNormalFrameRate=FRAME_RATE_SNOW;
+        else myNormalFrameRate=myConsole.getNominalFrameRate();
+        
+        if (myTurboMode==true) myFramePacer.setFrameRate(myNormalFrameRate * myTurboSpeedCap); //0 (no cap) runs them as fast as they can go
+        else myFramePacer.setFrameRate(myNormalFrameRate);
+        myFramePacer.resetStatistics();
+        if (myConsole.getAudio()!=null) myConsole.getAudio().setRealDisplayFrameRate(myNormalFrameRate);  
+    }
+    
+    /**
+     * Returns the frame pacer that runs the emulator, e.g. to look at the measured
+     * frame rate and jitter (see FramePacer.getStatisticsSummary()).
+     * @return the frame pacer
+     */
+    public FramePacer getFramePacer() {
+        return myFramePacer;
     }
     
     
@@ -167,7 +211,7 @@ public class Intercessor implements InputMaster.IfcInputMasterClient, IfcConsole
        myConsole.updateVideoFrame();
         
        // myConsole.doFrame();
-        updateTimerDelay();
+        updateFrameRate();
     }
     
     public boolean isVirtualJoystickEnabled() {
@@ -210,40 +254,14 @@ public class Intercessor implements InputMaster.IfcInputMasterClient, IfcConsole
     public void startTimer() {
         
         myIntercessorClient.informUserOfPause(false);
-       // if (USE_UTIL_TIMER==true) {
-            if (myUtilTimer!=null) {
-                myUtilTimer.cancel();
-            }//end : resetting timer
-            
-            myUtilTimer=new java.util.Timer(true);
-            myUtilTimer.scheduleAtFixedRate(new MainTimerTask(), myCurrentTimerDelay, myCurrentTimerDelay);
-      //  }//end : use java.util.Timer
-      /*  else {
-            
-            if (mySwingTimer==null) mySwingTimer=new javax.swing.Timer(myCurrentTimerDelay, new MainTimerTask());
-            mySwingTimer.start();
-            
-        }//end : use javax.swing.timer
-       */
+        myFramePacer.start();
     }
     
     /**
      * Stop the "running" of the 2600 emulator...is called during pauses.
      */
     public void stopTimer() {
-     //   if (USE_UTIL_TIMER==true) {
-            if (myUtilTimer!=null) {
-                myUtilTimer.cancel();
-                myUtilTimer=null;
-                
-            }
-      //  }//end : use java.util.Timer
-  /*      else {
-            if (mySwingTimer!=null) {
-                mySwingTimer.stop();
-            }//end : not null
-        }//end : use javax.swing.Timer
-   */
+        myFramePacer.stop();
         myIntercessorClient.informUserOfPause(true);
     }
     
@@ -262,53 +280,64 @@ public class Intercessor implements InputMaster.IfcInputMasterClient, IfcConsole
     /**
      * Used to load a saved game.  The GUI class is responsible for opening
      * an input stream that contains the saved game, and this method will handle
-     * the rest.
+     * the rest.  The saved game (see JSSavedGame) is loaded into the current console.
+     * Saved games from versions of JStella before the binary format (a serialized
+     * console) can't be loaded.
      * @param aInputStream Stream containing a previously saved game
-     * @throws java.io.IOException 
-     * @throws java.lang.ClassNotFoundException 
+     * @throws java.io.IOException if the saved game can't be read, isn't in the binary format, or is damaged
      */
-    public void loadStateFromStream(InputStream aInputStream) throws IOException, ClassNotFoundException {
+    public void loadStateFromStream(InputStream aInputStream) throws IOException {
         try{
             //setPausedByPlayer(true);
             stopTimer();
-            ObjectInputStream zOIS=new ObjectInputStream(aInputStream);
-            Object zObj=zOIS.readObject();
-            zOIS.close();
+            BufferedInputStream zBIS=new BufferedInputStream(aInputStream);
+            byte[] zHeader=new byte[4];
+            zBIS.mark(zHeader.length);
+            int zHeaderLength=zBIS.read(zHeader);
+            zBIS.reset();
             
-            if (zObj instanceof JSConsole) {
-                JSConsole zNewConsole=(JSConsole)zObj;
-                
-                initConsole(zNewConsole);
-                
-                //myConsole.setTelevisionMode(TELEVISION_MODE_GAME);
-                myConsole.doFrame();
-                updatePause();
-                refocusKeyboard();
-                
-                //myIntercessorClient.informUserOfPause(true);
-                
-                
-            }//end : is a console
+            if ((zHeaderLength!=zHeader.length)||(JSSavedGame.isSavedGame(zHeader)==false)) {
+                throw new IOException("Not a JStella saved game (or one made by an older version of JStella, which can't be loaded)");
+            }//end : not a binary saved game
+            
+            DataInputStream zDIS=new DataInputStream(zBIS);
+            JSSavedGame.read(zDIS, myConsole);
+            zDIS.close();
+            
+            myRewindBuffer.clear();
+            updateFrameRate();
+            myCanvas.refreshCanvas();
+            myConsole.doFrame();
+            updatePause();
+            refocusKeyboard();
         }//end : try
+        catch (IOException e) {
+            updatePause(); //the console was left as it was...carry on with it
+            throw e;
+        }
         catch (JSException e) {
             e.printStackTrace();
         }
     }
     
     /**
-     * Save the current "game" to the stream.  The GUI class is responsible
-     * for creating a writable stream, and this method does the rest.
+     * Save the current "game" to the stream, in JStella's binary saved game format
+     * (see JSSavedGame).  The GUI class is responsible for creating a writable stream,
+     * and this method does the rest.
      * @param aOutputStream Stream that the saved game will be written to.
      * @throws java.io.IOException 
      */
     public void saveStateToStream(OutputStream aOutputStream) throws IOException {
         boolean zIsPaused=isPausedByPlayer();
         setPausedByPlayer(true);
-        ObjectOutputStream zOOS=new ObjectOutputStream(aOutputStream);
-        zOOS.writeObject(myConsole);
-        zOOS.close();
-        setPausedByPlayer(zIsPaused);
-        
+        try {
+            DataOutputStream zDOS=new DataOutputStream(new BufferedOutputStream(aOutputStream));
+            JSSavedGame.write(myConsole, zDOS);
+            zDOS.close();
+        }//end : try
+        finally {
+            setPausedByPlayer(zIsPaused);
+        }
     }
     
     /**
@@ -344,17 +373,221 @@ public class Intercessor implements InputMaster.IfcInputMasterClient, IfcConsole
     }
     
     
-    private void runMainLoop() {
+    private boolean runFrame(boolean aDisplayVideo, boolean aPlayAudio) {
         if (myConsole!=null) {
             try{
-                myConsole.doFrame();
+                myConsole.doFrame(aDisplayVideo, aPlayAudio);
+                if ((myRewindEnabled==true)&&(myConsole.getCartridge()!=null)) myRewindBuffer.push(myConsole);
             }//end : try
             catch (JSException e) {
                 stopTimer();
                 if (myIntercessorClient!=null) myIntercessorClient.respondToException(e);
+                return false;
+            }
+            catch (IOException e) {
+                stopTimer();
+                if (myIntercessorClient!=null) myIntercessorClient.respondToException(new JSException(JSException.ExceptionType.UNSPECIFIED, "Could not take a rewind snapshot : " + e.getMessage()));
+                return false;
             }
             
         }//end : my console == false
+        return true;
+    }
+    
+    
+    // - - - - - - - - - - - - - - REWIND - - - - - - - - - - - - - -
+    
+    /**
+     * Turns the recording of snapshots for rewinding on or off.  When it is turned off,
+     * what has been recorded so far is forgotten.
+     * @param aEnable true to record snapshots
+     */
+    public void setRewindEnabled(boolean aEnable) {
+        myRewindEnabled=aEnable;
+        if (aEnable==false) {
+            setRewinding(false);
+            myRewindBuffer.clear();
+        }//end : turned off
+    }
+    
+    public boolean isRewindEnabled() {
+        return myRewindEnabled;
+    }
+    
+    /**
+     * Starts or stops rewinding.  While rewinding, the game plays backwards (with no sound),
+     * until this is called with false or there is nothing left to rewind to; then the
+     * game carries on from there.  This is meant to be called when the rewind key is
+     * pressed and when it is released (once it has run out, calls with true are ignored
+     * until one with false, so that a key held down doesn't keep starting it again).
+     * @param aRewinding true to rewind
+     */
+    public void setRewinding(boolean aRewinding) {
+        if (aRewinding==false) myRewindExhausted=false;
+        else if (myRewindExhausted==true) return;
+        if (aRewinding!=myRewinding) {
+            myRewinding=(aRewinding && myRewindEnabled);
+            if (myCanvas!=null) myCanvas.setOverlayText(myRewinding ? "<< Rewind" : null);
+        }//end : changed
+    }
+    
+    public boolean isRewinding() {
+        return myRewinding;
+    }
+    
+    /**
+     * Goes back the given number of frames right away (e.g. from a menu), whether or
+     * not the emulator is running.
+     * @param aFrames the number of frames to go back
+     * @return the number of frames actually gone back
+     */
+    public int rewindFrames(int aFrames) {
+        try {
+            int zReturn=myRewindBuffer.rewind(myConsole, aFrames);
+            if (zReturn>0) {
+                myConsole.doFrame(true, false); //to show where it is now
+                myRewindBuffer.push(myConsole);
+            }//end : went back
+            return zReturn;
+        }//end : try
+        catch (IOException e) {
+            if (myIntercessorClient!=null) myIntercessorClient.respondToException(new JSException(JSException.ExceptionType.UNSPECIFIED, "Could not rewind : " + e.getMessage()));
+        }
+        catch (JSException e) {
+            if (myIntercessorClient!=null) myIntercessorClient.respondToException(e);
+        }
+        return 0;
+    }
+    
+    /**
+     * Returns the number of frames that can be rewound.
+     * @return the number of frames
+     */
+    public int getRewindFrameCount() {
+        return myRewindBuffer.getFrameCount();
+    }
+    
+    private boolean runRewindFrame() {
+        //Go back one more than needed, and then run a frame forward, so there is a frame to show
+        int zWanted=REWIND_SPEED + 1;
+        if (rewindFrames(zWanted)<zWanted) {
+            myRewindExhausted=true; //at the oldest frame, so play on from there
+            myRewinding=false;
+            if (myCanvas!=null) myCanvas.setOverlayText(null);
+        }//end : nothing left to rewind to
+        return true;
+    }
+    
+    
+    // - - - - - - - - - - - - - - TURBO MODE - - - - - - - - - - - - - -
+    
+    /**
+     * Turns turbo mode on or off.  In turbo mode, the emulator runs as fast as it can
+     * (or up to the speed cap...see setTurboSpeedCap(...)) instead of at the speed of
+     * a television.  Only one frame out of every getTurboFrameSkip() is painted, the
+     * sound is off, and the speed (as a multiple of normal speed) is shown on the canvas.
+     * If the emulator is paused, the new mode takes effect when it is unpaused.
+     * @param aEnable true to turn turbo mode on
+     */
+    public void setTurboMode(boolean aEnable) {
+        if (aEnable!=myTurboMode) {
+            myTurboMode=aEnable;
+            updateFrameRate();
+            if (aEnable==false) {
+                myTurboSpeed=0.0;
+                myCanvas.setOverlayText(null);
+            }//end : turned off
+        }//end : changed
+    }
+    
+    public boolean isTurboMode() {
+        return myTurboMode;
+    }
+    
+    /**
+     * Sets how many frames are run for every one that is painted in turbo mode.
+     * @param aFrameSkip the number of frames per painted frame (1 paints them all)
+     */
+    public void setTurboFrameSkip(int aFrameSkip) {
+        myTurboFrameSkip=Math.max(1, aFrameSkip);
+    }
+    
+    public int getTurboFrameSkip() {
+        return myTurboFrameSkip;
+    }
+    
+    /**
+     * Sets the fastest that turbo mode is allowed to run, as a multiple of normal speed
+     * (e.g. 4.0 for no more than four times as fast as a television would show it).
+     * @param aSpeedCap the speed cap, or 0 for no cap
+     */
+    public void setTurboSpeedCap(double aSpeedCap) {
+        myTurboSpeedCap=Math.max(0.0, aSpeedCap);
+        if (myTurboMode==true) updateFrameRate();
+    }
+    
+    public double getTurboSpeedCap() {
+        return myTurboSpeedCap;
+    }
+    
+    /**
+     * Sets the cache of detected display settings that the console uses when a ROM is
+     * loaded (see JSDisplayCache).  This carries over to any console that is loaded afterwards.
+     * @param aDisplayCache the cache, or null to always detect the settings
+     */
+    public void setDisplayCache(JSDisplayCache aDisplayCache) {
+        myDisplayCache=aDisplayCache;
+        if (myConsole!=null) myConsole.setDisplayCache(aDisplayCache);
+    }
+    
+    /**
+     * Sets the number of frames that the console runs ahead of what is displayed, to
+     * cut down on the input lag (see JSConsole.setRunAheadFrames(...)).  This carries over
+     * to any console that is loaded afterwards.
+     * @param aFrames the number of frames, or 0 to turn run-ahead off
+     */
+    public void setRunAheadFrames(int aFrames) {
+        myRunAheadFrames=Math.max(0, aFrames);
+        if (myConsole!=null) myConsole.setRunAheadFrames(myRunAheadFrames);
+    }
+    
+    public int getRunAheadFrames() {
+        return myRunAheadFrames;
+    }
+    
+    /**
+     * Returns how fast turbo mode has been running lately, as a multiple of normal speed.
+     * @return the speed, or 0 if turbo mode isn't running
+     */
+    public double getTurboSpeed() {
+        return myTurboSpeed;
+    }
+    
+    private boolean runTurboFrame(FramePacer aPacer) {
+        boolean zDisplay=((myTurboFrameCounter % myTurboFrameSkip)==0);
+        myTurboFrameCounter++;
+        boolean zReturn=runFrame(zDisplay, false);
+        
+        long zNow=System.nanoTime();
+        if (zNow - myTurboSpeedTime >= TURBO_SPEED_UPDATE_NANOS) {
+            myTurboSpeed=aPacer.getMeasuredFrameRate() / myNormalFrameRate;
+            myCanvas.setOverlayText(String.format("Turbo x%.1f", myTurboSpeed));
+            myTurboSpeedTime=zNow;
+        }//end : speed update
+        return zReturn;
+    }
+    
+    private boolean runNormalFrame(FramePacer aPacer) {
+        boolean zReturn=runFrame(true, true);
+        
+        //Let the sound know how fast the frames are really going, so it can make the right amount of it
+        long zNow=System.nanoTime();
+        if (zNow - myAudioRateTime >= AUDIO_RATE_UPDATE_NANOS) {
+            double zMeasuredRate=aPacer.getMeasuredFrameRate();
+            if ((zMeasuredRate>0.0)&&(myConsole.getAudio()!=null)) myConsole.getAudio().setRealDisplayFrameRate(zMeasuredRate);
+            myAudioRateTime=zNow;
+        }//end : audio rate update
+        return zReturn;
     }
     
     private void updatePause() {
@@ -480,7 +713,8 @@ public class Intercessor implements InputMaster.IfcInputMasterClient, IfcConsole
           
             if (zCart!=null) {
                 myConsole.insertCartridge(zCart, aDisplayHeight);
-                updateTimerDelay();
+                myRewindBuffer.clear();
+                updateFrameRate();
                 
                 myCanvas.refreshCanvas();
                 startTimer();
@@ -582,21 +816,16 @@ public class Intercessor implements InputMaster.IfcInputMasterClient, IfcConsole
     
     //==============================================
     
-    private class MainTimerTask extends java.util.TimerTask implements ActionListener {
+    private class MainFrameTask implements FramePacer.IfcFrameTask {
         /**
-         * This is called by a java.util.Timer
+         * This is called by the frame pacer, once per frame
+         * @param aPacer the frame pacer
+         * @return false if the emulator had to stop
          */
-        public void run() {
-            runMainLoop();
-        }
-        
-        
-        /**
-         * This is called by a javax.swing.Timer
-         * @param e
-         */
-        public void actionPerformed(ActionEvent e) {
-            runMainLoop();
+        public boolean runFrame(FramePacer aPacer) {
+            if (myRewinding==true) return runRewindFrame();
+            else if (myTurboMode==true) return runTurboFrame(aPacer);
+            else return runNormalFrame(aPacer);
         }
         
     }//END INNER CLASS
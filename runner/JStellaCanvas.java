@@ -46,6 +46,8 @@ public class JStellaCanvas extends JPanel implements jstella.core.IfcCanvas {
     
     private boolean myRefreshNeeded=false;
     
+    private volatile String myOverlayText=null;
+    
     /** Creates a new instance of JStellaCanvas */
    
     
@@ -83,6 +85,8 @@ public class JStellaCanvas extends JPanel implements jstella.core.IfcCanvas {
                 z2D.drawImage(myImage, myTransform, null);
                 //System.out.println("debug - image height=" + myImage.getHeight());
            }
+           String zOverlayText=myOverlayText;
+           if (zOverlayText!=null) paintOverlayText(z2D, zOverlayText);
             syncPainting();
            // java.awt.Toolkit.getDefaultTo
          //  long zNanoB=System.nanoTime();
@@ -101,6 +105,35 @@ public class JStellaCanvas extends JPanel implements jstella.core.IfcCanvas {
         }
         
         
+        /**
+         * Sets a line of text to be shown in the top left corner of the canvas, on top of
+         * the game (e.g. the speed while in turbo mode).
+         * @param aText the text, or null for none
+         */
+        public void setOverlayText(String aText)
+        {
+            String zOld=myOverlayText;
+            if ((aText==null) ? (zOld!=null) : (aText.equals(zOld)==false))
+            {
+                myOverlayText=aText;
+                myRefreshNeeded=true; //erases the old text where the game doesn't cover it
+                repaint();
+            }//end : text changed
+        }
+        
+        public String getOverlayText() { return myOverlayText; }
+        
+        private void paintOverlayText(Graphics2D a2D, String aText)
+        {
+            FontMetrics zMetrics=a2D.getFontMetrics();
+            int zX=4;
+            int zY=4 + zMetrics.getAscent();
+            a2D.setColor(Color.BLACK);
+            a2D.drawString(aText, zX + 1, zY + 1);
+            a2D.setColor(Color.YELLOW);
+            a2D.drawString(aText, zX, zY);
+        }
+        
         private void syncPainting() //not sure if this is necessary/prudent...needs checking
         {
             if (myDefaultToolkit==null) myDefaultToolkit=java.awt.Toolkit.getDefaultToolkit();
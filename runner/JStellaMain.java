@@ -51,6 +51,8 @@ public class JStellaMain extends javax.swing.JFrame implements Intercessor.IfcIn
     public final static String CONFIG_VALUE_DEFAULT_SCREEN_TEST_PATTERN="testpattern";
     
     public final static String CONFIG_FILENAME="jstella.cfg";
+    public final static String DISPLAY_CACHE_FILENAME="jstella-display.cache";
+    public final static String ROM_TYPES_FILENAME="jstella-types.txt";
     
     
     public final static String DEFAULT_STATE_NAME="mysavedgame.jssg";
@@ -91,6 +93,9 @@ public class JStellaMain extends javax.swing.JFrame implements Intercessor.IfcIn
         
         this.setTitle(WINDOW_TITLE);
         myIntercessor=new Intercessor(this);
+        String zWorkingDir=System.getProperty("user.dir");
+        myIntercessor.setDisplayCache(new JSDisplayCache(new File((zWorkingDir!=null) ? zWorkingDir : "", DISPLAY_CACHE_FILENAME)));
+        loadROMTypes(new File((zWorkingDir!=null) ? zWorkingDir : "", ROM_TYPES_FILENAME));
         myIntercessor.setControls(myConfiguration);
         myIntercessor.setAutoPauseMode(true);
         //  initConsole(new JSConsole());
@@ -144,6 +149,7 @@ public class JStellaMain extends javax.swing.JFrame implements Intercessor.IfcIn
         RBMIPlayer1Professional = new javax.swing.JRadioButtonMenuItem();
         MenuOptions = new javax.swing.JMenu();
         CBMIPaused = new javax.swing.JCheckBoxMenuItem();
+        CBMITurbo = new javax.swing.JCheckBoxMenuItem();
         SepOptionsA = new javax.swing.JSeparator();
         CBMISoundEnabled = new javax.swing.JCheckBoxMenuItem();
         MenuSoundChannels = new javax.swing.JMenu();
@@ -370,6 +376,16 @@ public class JStellaMain extends javax.swing.JFrame implements Intercessor.IfcIn
 
         MenuOptions.add(CBMIPaused);
 
+        CBMITurbo.setMnemonic('T');
+        CBMITurbo.setText("Turbo");
+        CBMITurbo.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                CBMITurboActionPerformed(evt);
+            }
+        });
+
+        MenuOptions.add(CBMITurbo);
+
         MenuOptions.add(SepOptionsA);
 
         CBMISoundEnabled.setMnemonic('S');
@@ -609,6 +625,10 @@ MenuAdvanced.setVisible(true);
         
     }//GEN-LAST:event_CBMIPausedActionPerformed
     
+    private void CBMITurboActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_CBMITurboActionPerformed
+        myIntercessor.setTurboMode(CBMITurbo.isSelected());
+    }//GEN-LAST:event_CBMITurboActionPerformed
+    
     private void MenuSwitchesActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_MenuSwitchesActionPerformed
         
     }//GEN-LAST:event_MenuSwitchesActionPerformed
@@ -731,6 +751,7 @@ MenuAdvanced.setVisible(true);
         else RBMIMonoSound.setSelected(true);
         
         CBMIPaused.setSelected(myIntercessor.isPausedByPlayer());
+        CBMITurbo.setSelected(myIntercessor.isTurboMode());
         
         if (myIntercessor.isTVTypeBW()==true) RBMIBWTelevision.setSelected(true);
         else RBMIColorTelevision.setSelected(true);
@@ -762,6 +783,22 @@ MenuAdvanced.setVisible(true);
         return zReturn;
     }
     
+    /**
+     * Adds the cartridge types in the given file (if there is one) to the ROM type database
+     * (see ROMTypeDatabase), for the ROMs whose type can't be detected.
+     * @param aFile the file
+     */
+    private void loadROMTypes(File aFile) {
+        if (aFile.exists()==false) return;
+        try {
+            int zCount=ROMTypeDatabase.load(aFile);
+            System.out.println("JStella : read " + zCount + " ROM types from " + aFile);
+        }//end : try
+        catch (IOException e) {
+            System.out.println("JStella : could not read the ROM types (" + e.getMessage() + ")");
+        }
+    }
+    
     private void loadROM(File aROMFile) throws IOException {
         FileInputStream zFIS=new FileInputStream(aROMFile);
         myCurrentROMFile=aROMFile;
@@ -880,17 +917,8 @@ MenuAdvanced.setVisible(true);
                 myDefaultStateName=FCMain.getSelectedFile().getName();
             }//end : approved
         }//end : try
-        catch (java.io.ObjectStreamException e)
-        {
-            JOptionPane.showMessageDialog(this, "Saved game is incompatible with this version of JStella", "Error loading game", JOptionPane.ERROR_MESSAGE);
-            e.printStackTrace();
-        }
         catch (java.io.IOException e) {
-            JOptionPane.showMessageDialog(this, "Could not load saved game: " + FCMain.getSelectedFile().getName(), "Error loading game", JOptionPane.ERROR_MESSAGE);
-            
-            e.printStackTrace();
-        } catch (ClassNotFoundException e) {
-            JOptionPane.showMessageDialog(this, "Could not load saved game: " + FCMain.getSelectedFile().getName(), "Error loading game", JOptionPane.ERROR_MESSAGE);
+            JOptionPane.showMessageDialog(this, "Could not load saved game: " + FCMain.getSelectedFile().getName() + "\n" + e.getMessage(), "Error loading game", JOptionPane.ERROR_MESSAGE);
             
             e.printStackTrace();
         }
@@ -1095,6 +1123,7 @@ MenuAdvanced.setVisible(true);
     private javax.swing.JCheckBoxMenuItem CBMILetterBoxMode;
     private javax.swing.JCheckBoxMenuItem CBMIPaused;
     private javax.swing.JCheckBoxMenuItem CBMIPhosphorEnabled;
+    private javax.swing.JCheckBoxMenuItem CBMITurbo;
     private javax.swing.JCheckBoxMenuItem CBMISoundEnabled;
     private javax.swing.JDialog DialogAbout;
     private javax.swing.JFileChooser FCMain;
@@ -1181,6 +1210,11 @@ MenuAdvanced.setVisible(true);
     private class JStellaKeyListener extends java.awt.event.KeyAdapter {
         public void keyPressed(KeyEvent e) {
             if (e.getKeyCode()==KeyEvent.VK_F12) loadNextGame();
+            else if (e.getKeyCode()==KeyEvent.VK_BACK_SPACE) myIntercessor.setRewinding(true);
+        }
+        
+        public void keyReleased(KeyEvent e) {
+            if (e.getKeyCode()==KeyEvent.VK_BACK_SPACE) myIntercessor.setRewinding(false);
         }
         
     }
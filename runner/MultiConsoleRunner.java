@@ -0,0 +1,169 @@
+/*
+ * MultiConsoleRunner.java
+ *
+ * To change this template, choose Tools | Template Manager
+ * and open the template in the editor.
+ */
+
+package jstella.runner;
+
+import java.util.*;
+import java.util.concurrent.*;
+import jstella.core.*;
+
+/**
+ * Runs any number of consoles side by side, advancing all of them by one or more
+ * frames per call to stepFrames(...).  The frames are spread over the threads of a
+ * ForkJoinPool (one per processor, by default), which steal work from each other when
+ * some consoles' frames take longer than others.  Unlike the Intercessor, there are no
+ * timers...the consoles run as fast as they can, and it is up to the caller to decide
+ * when to call stepFrames(...) again.
+ * <p>
+ * Every console finishes a frame before any console starts the next one, so between
+ * frames (see IfcFrameBoundaryListener) all of the consoles are idle, and can be read
+ * (e.g. their frame buffers) or changed (e.g. their controllers) safely.
+ * </p>
+ * <p>
+ * The consoles should be headless (see JSConsole(IfcConsoleClient, boolean)), since each
+ * frame is run on whatever pool thread picks it up.  A console must not be added to
+ * more than one runner, or be run by anything else (e.g. an Intercessor) at the same time.
+ * </p>
+ * @author J.L. Allen
+ */
+public class MultiConsoleRunner {
+
+    /**
+     * Notified after every frame of stepFrames(...), once all of the consoles have finished it.
+     */
+    public interface IfcFrameBoundaryListener {
+        /**
+         * Called on the thread that called stepFrames(...), while none of the consoles are running.
+         * @param aRunner the runner
+         * @param aFrameNumber the number of frames the runner has run, counting this one
+         */
+        public void frameBoundary(MultiConsoleRunner aRunner, long aFrameNumber);
+    }
+
+    private final ForkJoinPool myPool;
+    private final List<JSConsole> myConsoles=new ArrayList<JSConsole>();
+    private long myFrameCount=0;
+
+
+    /**
+     * Creates a runner with one thread for every available processor.
+     */
+    public MultiConsoleRunner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a runner.
+     * @param aParallelism the number of threads to run the consoles on
+     */
+    public MultiConsoleRunner(int aParallelism) {
+        myPool=new ForkJoinPool(aParallelism);
+    }
+
+    public synchronized void addConsole(JSConsole aConsole) {
+        if (myConsoles.contains(aConsole)==false) myConsoles.add(aConsole);
+    }
+
+    public synchronized boolean removeConsole(JSConsole aConsole) {
+        return myConsoles.remove(aConsole);
+    }
+
+    /**
+     * Returns the consoles, in the order in which they were added.
+     * @return a copy of the list of consoles
+     */
+    public synchronized List<JSConsole> getConsoles() {
+        return new ArrayList<JSConsole>(myConsoles);
+    }
+
+    public synchronized int getConsoleCount() { return myConsoles.size(); }
+
+    /**
+     * Returns the number of frames that stepFrames(...) has run.
+     * @return the frame count
+     */
+    public synchronized long getFrameCount() { return myFrameCount; }
+
+    public int getParallelism() { return myPool.getParallelism(); }
+
+    /**
+     * Runs every console for the given number of frames.
+     * @param aFrames the number of frames
+     * @throws jstella.core.JSException if a console's doFrame() throws one (the first such
+     * console's exception is thrown, after all of the consoles have finished the frame)
+     */
+    public void stepFrames(int aFrames) throws JSException {
+        stepFrames(aFrames, null);
+    }
+
+    /**
+     * Runs every console for the given number of frames, notifying the listener after each one.
+     * @param aFrames the number of frames
+     * @param aListener the listener, or null
+     * @throws jstella.core.JSException if a console's doFrame() throws one (see stepFrames(int))
+     */
+    public synchronized void stepFrames(int aFrames, IfcFrameBoundaryListener aListener) throws JSException {
+        JSConsole[] zConsoles=myConsoles.toArray(new JSConsole[myConsoles.size()]);
+        JSException[] zExceptions=new JSException[zConsoles.length];
+        for (int i=0; i<aFrames; i++) {
+            if (zConsoles.length>0) myPool.invoke(new FrameTask(zConsoles, zExceptions, 0, zConsoles.length)); //returns once every console has finished the frame
+            for (int c=0; c<zExceptions.length; c++) {
+                if (zExceptions[c]!=null) throw zExceptions[c];
+            }//end : for c loop
+            myFrameCount++;
+            if (aListener!=null) aListener.frameBoundary(this, myFrameCount);
+        }//end : for i loop
+    }
+
+    /**
+     * Stops the runner's threads.  The runner can't be used after this is called.
+     */
+    public void shutdown() {
+        myPool.shutdown();
+    }
+
+
+//=============================================================================
+//========================== INNER CLASSES ====================================
+//=============================================================================
+
+    /**
+     * Runs one frame of a range of consoles, splitting the range in half until each task
+     * has a single console, so that idle threads can steal the halves that haven't started yet.
+     */
+    private static class FrameTask extends RecursiveAction {
+        private final static long serialVersionUID = 2360961488230717754L;
+
+        private final JSConsole[] myConsoles;
+        private final JSException[] myExceptions;
+        private final int myStart;
+        private final int myEnd;
+
+        public FrameTask(JSConsole[] aConsoles, JSException[] aExceptions, int aStart, int aEnd) {
+            myConsoles=aConsoles;
+            myExceptions=aExceptions;
+            myStart=aStart;
+            myEnd=aEnd;
+        }
+
+        protected void compute() {
+            if (myEnd - myStart == 1) {
+                try {
+                    myConsoles[myStart].doFrame();
+                }//end : try
+                catch (JSException e) {
+                    myExceptions[myStart]=e;
+                }
+            }//end : one console
+            else {
+                int zMiddle=(myStart + myEnd) >>> 1;
+                invokeAll(new FrameTask(myConsoles, myExceptions, myStart, zMiddle), new FrameTask(myConsoles, myExceptions, zMiddle, myEnd));
+            }//end : split
+        }
+    }//END INNER CLASS
+
+}//CLASS END
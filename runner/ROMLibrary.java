@@ -0,0 +1,606 @@
+/*
+ * ROMLibrary.java
+ *
+ * To change this template, choose Tools | Template Manager
+ * and open the template in the editor.
+ */
+
+package jstella.runner;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+import jstella.cart.*;
+import jstella.core.*;
+
+import static jstella.core.JSConstants.*;
+
+/**
+ * An index of the ROMs in one or more directories (including the ROMs inside zip files),
+ * kept in a file, so that a front end can list and launch thousands of games without
+ * reading any of them first.  For each ROM, the index has its MD5, its cartridge type, and
+ * (if they are known) its display format, y start, and display height.
+ * <p>
+ * scan(...) walks the directories, and reads the files in parallel (one thread per processor,
+ * by default).  The index remembers the modification time and size of every file it has
+ * seen, so a file whose time and size haven't changed since the last scan isn't read again
+ * (even if it had no ROMs in it, or couldn't be read); its entries are taken from the index
+ * as they are.  For a zip file, the time and size are those of the zip itself, so an
+ * unchanged zip isn't even opened.
+ * </p>
+ * <p>
+ * The display settings come from the display cache (see setDisplayCache(...)) if the ROM is
+ * in it.  If it isn't, and display detection is on (see setDetectDisplay(...)), the ROM is run
+ * on a headless console until they are detected, and they are added to the cache, so that
+ * the console won't have to detect them again when the game is launched.  To launch a game,
+ * pass openROM(...) and the entry's type to Intercessor.playROM(...), which then has nothing
+ * left to detect.
+ * </p>
+ * <p>
+ * The index file is binary : a magic number ("JSIX"), the version, the number of files
+ * and then each file's path, time, and size, and then the number of entries and the entries.  If it can't be read (or is from another version), the next scan
+ * reads every ROM again.
+ * </p>
+ * @author J.L. Allen
+ */
+public class ROMLibrary {
+
+    /** The first four bytes of an index file ("JSIX"). */
+    public final static int INDEX_MAGIC=0x4A534958;
+    /** Raise this whenever the format changes, or the type detection does. */
+    private final static int INDEX_VERSION=2;
+
+    public final static String[] ROM_EXTENSIONS={"bin", "a26"};
+    public final static String ZIP_EXTENSION="zip";
+    private final static int MAX_ROM_SIZE=512 * 1024; //anything bigger isn't a 2600 ROM
+    private final static String ZIP_SEPARATOR="!";
+
+    private final File myIndexFile;
+    private final Map<String, Entry> myEntries=new LinkedHashMap<String, Entry>(); //by key (see Entry.getKey())
+    private final Map<String, Entry> myEntriesByMD5=new HashMap<String, Entry>();
+    private final Map<String, FileRecord> myFiles=new HashMap<String, FileRecord>(); //by path, every file scanned (whether or not it has ROMs)
+    private boolean myLoaded=false;
+
+    private JSDisplayCache myDisplayCache=null;
+    private boolean myDetectDisplay=false;
+    private int myParallelism=Runtime.getRuntime().availableProcessors();
+
+
+    /**
+     * One ROM in the library.
+     */
+    public static class Entry {
+        /** The file the ROM is in (the zip file, for a ROM in a zip). */
+        public final String myPath;
+        /** The name of the ROM in the zip file, or null if the ROM is a file by itself. */
+        public final String myZipEntry;
+        /** The modification time of myPath when the ROM was indexed. */
+        public final long myModified;
+        /** The size of myPath when the ROM was indexed. */
+        public final long mySize;
+        public final String myMD5;
+        public final String myType;
+        /** The display format, or null if the display settings aren't known. */
+        public final DisplayFormat myDisplayFormat;
+        public final int myYStart;
+        public final int myDisplayHeight;
+
+        public Entry(String aPath, String aZipEntry, long aModified, long aSize, String aMD5, String aType,
+                DisplayFormat aDisplayFormat, int aYStart, int aDisplayHeight) {
+            myPath=aPath;
+            myZipEntry=aZipEntry;
+            myModified=aModified;
+            mySize=aSize;
+            myMD5=aMD5;
+            myType=aType;
+            myDisplayFormat=aDisplayFormat;
+            myYStart=aYStart;
+            myDisplayHeight=aDisplayHeight;
+        }
+
+        /**
+         * Returns what identifies the ROM in the index : its path, followed by "!" and its
+         * name in the zip file, if it is in one.
+         * @return the key
+         */
+        public String getKey() {
+            return (myZipEntry!=null) ? myPath + ZIP_SEPARATOR + myZipEntry : myPath;
+        }
+
+        /**
+         * Returns the name to show for the ROM : its file name (or its name in the zip file),
+         * without the folders or the extension.
+         * @return the name
+         */
+        public String getName() {
+            String zReturn=(myZipEntry!=null) ? myZipEntry : myPath;
+            zReturn=zReturn.substring(Math.max(zReturn.lastIndexOf('/'), zReturn.lastIndexOf(File.separatorChar)) + 1);
+            int zExtensionStart=zReturn.lastIndexOf('.');
+            return (zExtensionStart>0) ? zReturn.substring(0, zExtensionStart) : zReturn;
+        }
+
+        public boolean hasDisplaySettings() { return (myDisplayFormat!=null); }
+
+        public String toString() { return getName(); }
+    }//END INNER CLASS
+
+
+    /**
+     * Creates a library.
+     * @param aIndexFile the file to keep the index in (it is read the first time it is needed,
+     * and written after each scan)
+     */
+    public ROMLibrary(File aIndexFile) {
+        myIndexFile=aIndexFile;
+    }
+
+    /**
+     * Sets the display cache that the display settings are looked up in (and, if display
+     * detection is on, added to).  This should be the same cache the console uses.
+     * @param aDisplayCache the display cache, or null
+     */
+    public synchronized void setDisplayCache(JSDisplayCache aDisplayCache) { myDisplayCache=aDisplayCache; }
+    public synchronized JSDisplayCache getDisplayCache() { return myDisplayCache; }
+
+    /**
+     * Sets whether a scan detects the display settings of the ROMs that aren't in the display
+     * cache.  This runs about a hundred frames of each such ROM, so the first scan of a large
+     * library takes a good deal longer with it on.
+     * @param aDetect true to detect the display settings
+     */
+    public synchronized void setDetectDisplay(boolean aDetect) { myDetectDisplay=aDetect; }
+    public synchronized boolean isDetectDisplay() { return myDetectDisplay; }
+
+    /**
+     * Sets the number of files that a scan reads at the same time.
+     * @param aParallelism the number of threads
+     */
+    public synchronized void setParallelism(int aParallelism) { myParallelism=Math.max(1, aParallelism); }
+    public synchronized int getParallelism() { return myParallelism; }
+
+    /**
+     * Returns every ROM in the library.
+     * @return a copy of the list of entries, in the order they were found
+     */
+    public synchronized List<Entry> getEntries() {
+        if (myLoaded==false) load();
+        return new ArrayList<Entry>(myEntries.values());
+    }
+
+    public synchronized int getEntryCount() {
+        if (myLoaded==false) load();
+        return myEntries.size();
+    }
+
+    /**
+     * Returns the ROM with the given MD5.
+     * @param aMD5 the MD5 (see Cartridge.getMD5())
+     * @return the entry (the first one found, if there are copies), or null if it isn't in the library
+     */
+    public synchronized Entry getEntryByMD5(String aMD5) {
+        if (myLoaded==false) load();
+        return (aMD5!=null) ? myEntriesByMD5.get(aMD5) : null;
+    }
+
+    /**
+     * Returns the ROM at the given path.
+     * @param aKey the entry's key (see Entry.getKey())
+     * @return the entry, or null if it isn't in the library
+     */
+    public synchronized Entry getEntry(String aKey) {
+        if (myLoaded==false) load();
+        return myEntries.get(aKey);
+    }
+
+    /**
+     * Forgets every ROM, and deletes the index file.
+     */
+    public synchronized void clear() {
+        myEntries.clear();
+        myEntriesByMD5.clear();
+        myFiles.clear();
+        myLoaded=true;
+        if (myIndexFile.exists()==true) myIndexFile.delete();
+    }
+
+
+    // - - - - - - - - - - - - - - - - READING ROMS - - - - - - - - - - - - - - - -
+
+    /**
+     * Opens the given ROM, e.g. to pass to Intercessor.playROM(...).  The caller must close the stream.
+     * @param aEntry the ROM
+     * @return the stream
+     * @throws java.io.IOException if the ROM can't be opened (e.g. the file has been deleted)
+     */
+    public static InputStream openROM(Entry aEntry) throws IOException {
+        return new ByteArrayInputStream(readROM(aEntry));
+    }
+
+    /**
+     * Reads the given ROM.
+     * @param aEntry the ROM
+     * @return the ROM image
+     * @throws java.io.IOException if the ROM can't be read
+     */
+    public static byte[] readROM(Entry aEntry) throws IOException {
+        if (aEntry.myZipEntry==null) return readFile(new File(aEntry.myPath));
+        ZipFile zZip=new ZipFile(aEntry.myPath);
+        try {
+            ZipEntry zZipEntry=zZip.getEntry(aEntry.myZipEntry);
+            if (zZipEntry==null) throw new FileNotFoundException(aEntry.getKey());
+            return readZipEntry(zZip, zZipEntry);
+        }//end : try
+        finally {
+            zZip.close();
+        }
+    }
+
+    private static byte[] readFile(File aFile) throws IOException {
+        long zLength=aFile.length();
+        if (zLength>MAX_ROM_SIZE) throw new IOException("Not a ROM (too big) : " + aFile);
+        byte[] zReturn=new byte[(int)zLength];
+        DataInputStream zIn=new DataInputStream(new FileInputStream(aFile));
+        try {
+            zIn.readFully(zReturn);
+        }//end : try
+        finally {
+            zIn.close();
+        }
+        return zReturn;
+    }
+
+    private static byte[] readZipEntry(ZipFile aZip, ZipEntry aZipEntry) throws IOException {
+        InputStream zIn=aZip.getInputStream(aZipEntry);
+        try {
+            ByteArrayOutputStream zOut=new ByteArrayOutputStream((aZipEntry.getSize()>0) ? (int)aZipEntry.getSize() : 4096);
+            byte[] zBuffer=new byte[8192];
+            int zRead;
+            while ((zRead=zIn.read(zBuffer))>0) {
+                zOut.write(zBuffer, 0, zRead);
+                if (zOut.size()>MAX_ROM_SIZE) throw new IOException("Not a ROM (too big) : " + aZipEntry.getName());
+            }//end : while
+            return zOut.toByteArray();
+        }//end : try
+        finally {
+            zIn.close();
+        }
+    }
+
+    private static boolean hasExtension(String aName, String aExtension) {
+        return aName.toLowerCase().endsWith("." + aExtension);
+    }
+
+    private static boolean isROMName(String aName) {
+        for (int i=0; i<ROM_EXTENSIONS.length; i++) {
+            if (hasExtension(aName, ROM_EXTENSIONS[i])==true) return true;
+        }//end : for i loop
+        return false;
+    }
+
+
+    // - - - - - - - - - - - - - - - - SCANNING - - - - - - - - - - - - - - - -
+
+    /**
+     * Brings the library up to date with the given directories (and the directories in them) :
+     * the ROMs that are new or have changed are read, and the ROMs that are no longer there
+     * are dropped.  ROMs in other directories are left as they are.  The index file is saved
+     * afterward.
+     * @param aDirectories the directories
+     * @return the number of files that had to be read (the rest were unchanged)
+     * @throws java.io.IOException if the index file can't be saved
+     */
+    public int scan(File... aDirectories) throws IOException {
+        List<File> zFiles=new ArrayList<File>();
+        List<String> zRoots=new ArrayList<String>();
+        for (File zDirectory : aDirectories) {
+            File zAbsolute=zDirectory.getAbsoluteFile();
+            zRoots.add(zAbsolute.getPath());
+            findFiles(zAbsolute, zFiles);
+        }//end : for
+        List<FileRecord> zRecords=new ArrayList<FileRecord>(zFiles.size());
+        for (File zFile : zFiles) {  zRecords.add(new FileRecord(zFile.lastModified(), zFile.length()));  }
+
+        //STEP 1 : keep the entries of the files that haven't changed
+        Map<String, List<Entry>> zOldByPath=new HashMap<String, List<Entry>>();
+        Map<String, FileRecord> zOldFiles;
+        synchronized (this) {
+            if (myLoaded==false) load();
+            zOldFiles=new HashMap<String, FileRecord>(myFiles);
+            for (Entry zEntry : myEntries.values()) {
+                List<Entry> zList=zOldByPath.get(zEntry.myPath);
+                if (zList==null) {
+                    zList=new ArrayList<Entry>();
+                    zOldByPath.put(zEntry.myPath, zList);
+                }//end : first entry for the file
+                zList.add(zEntry);
+            }//end : for
+        }//end : synchronized
+
+        List<List<Entry>> zResults=new ArrayList<List<Entry>>(zFiles.size());
+        List<Future<List<Entry>>> zFutures=new ArrayList<Future<List<Entry>>>();
+        JSDisplayCache zDisplayCache;
+        boolean zDetectDisplay;
+        int zParallelism;
+        synchronized (this) {
+            zDisplayCache=myDisplayCache;
+            zDetectDisplay=myDetectDisplay;
+            zParallelism=myParallelism;
+        }//end : synchronized
+
+        //STEP 2 : read the rest, in parallel
+        ExecutorService zExecutor=Executors.newFixedThreadPool(zParallelism);
+        try {
+            for (int i=0; i<zFiles.size(); i++) {
+                File zFile=zFiles.get(i);
+                FileRecord zRecord=zRecords.get(i);
+                if (zRecord.equals(zOldFiles.get(zFile.getPath()))==true) {
+                    List<Entry> zOld=zOldByPath.get(zFile.getPath());
+                    zResults.add((zOld!=null) ? zOld : Collections.<Entry>emptyList());
+                }//end : unchanged
+                else {
+                    zResults.add(null); //filled in below
+                    zFutures.add(zExecutor.submit(new IndexTask(zFile, zRecord, zDisplayCache, zDetectDisplay)));
+                }//end : new or changed
+            }//end : for i loop
+
+            int zFutureIndex=0;
+            for (int i=0; i<zResults.size(); i++) {
+                if (zResults.get(i)!=null) continue;
+                try {
+                    zResults.set(i, zFutures.get(zFutureIndex++).get());
+                }//end : try
+                catch (ExecutionException e) {
+                    System.out.println("JStella : could not index " + zFiles.get(i) + " (" + e.getCause().getMessage() + ")");
+                    zResults.set(i, Collections.<Entry>emptyList());
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while indexing ROMs");
+                }
+            }//end : for i loop
+        }//end : try
+        finally {
+            zExecutor.shutdownNow();
+        }
+
+        //STEP 3 : put the display settings that were just detected in the cache (all at once, so it is only saved once)
+        if ((zDisplayCache!=null)&&(zDetectDisplay==true)) {
+            Map<String, JSDisplayCache.Entry> zDetected=new HashMap<String, JSDisplayCache.Entry>();
+            for (List<Entry> zList : zResults) {
+                for (Entry zEntry : zList) {
+                    if ((zEntry.hasDisplaySettings()==true)&&(zDisplayCache.get(zEntry.myMD5)==null)) {
+                        zDetected.put(zEntry.myMD5, new JSDisplayCache.Entry(zEntry.myDisplayFormat, zEntry.myYStart, zEntry.myDisplayHeight));
+                    }//end : not cached yet
+                }//end : for
+            }//end : for
+            if (zDetected.isEmpty()==false) zDisplayCache.putAll(zDetected);
+        }//end : detecting
+
+        //STEP 4 : replace the entries under the directories with what was found
+        synchronized (this) {
+            Iterator<Entry> zIterator=myEntries.values().iterator();
+            while (zIterator.hasNext()) {
+                if (isUnder(zIterator.next().myPath, zRoots)==true) zIterator.remove();
+            }//end : while
+            Iterator<String> zPathIterator=myFiles.keySet().iterator();
+            while (zPathIterator.hasNext()) {
+                if (isUnder(zPathIterator.next(), zRoots)==true) zPathIterator.remove();
+            }//end : while
+            for (List<Entry> zList : zResults) {
+                for (Entry zEntry : zList) {  myEntries.put(zEntry.getKey(), zEntry);  }
+            }//end : for
+            for (int i=0; i<zFiles.size(); i++) {  myFiles.put(zFiles.get(i).getPath(), zRecords.get(i));  }
+            rebuildMD5Map();
+            save();
+        }//end : synchronized
+        return zFutures.size();
+    }
+
+    private static void findFiles(File aDirectory, List<File> aFiles) {
+        File[] zChildren=aDirectory.listFiles();
+        if (zChildren==null) return; //not a directory, or can't be read
+        Arrays.sort(zChildren);
+        for (File zChild : zChildren) {
+            if (zChild.isDirectory()==true) findFiles(zChild, aFiles);
+            else if ((isROMName(zChild.getName())==true)||(hasExtension(zChild.getName(), ZIP_EXTENSION)==true)) aFiles.add(zChild);
+        }//end : for
+    }
+
+    private static boolean isUnder(String aPath, List<String> aRoots) {
+        for (String zRoot : aRoots) {
+            if ((aPath.equals(zRoot)==true)||(aPath.startsWith(zRoot.endsWith(File.separator) ? zRoot : zRoot + File.separator)==true)) return true;
+        }//end : for
+        return false;
+    }
+
+    private void rebuildMD5Map() {
+        myEntriesByMD5.clear();
+        for (Entry zEntry : myEntries.values()) {
+            if (myEntriesByMD5.containsKey(zEntry.myMD5)==false) myEntriesByMD5.put(zEntry.myMD5, zEntry);
+        }//end : for
+    }
+
+
+    // - - - - - - - - - - - - - - - - THE INDEX FILE - - - - - - - - - - - - - - - -
+
+    private void load() {
+        myLoaded=true;
+        if (myIndexFile.exists()==false) return;
+        try {
+            DataInputStream zIn=new DataInputStream(new BufferedInputStream(new FileInputStream(myIndexFile)));
+            try {
+                if ((zIn.readInt()!=INDEX_MAGIC)||(zIn.readInt()!=INDEX_VERSION)) return; //another version...start over
+                int zFileCount=zIn.readInt();
+                for (int i=0; i<zFileCount; i++) {
+                    String zPath=zIn.readUTF();
+                    long zModified=zIn.readLong();
+                    long zSize=zIn.readLong();
+                    myFiles.put(zPath, new FileRecord(zModified, zSize));
+                }//end : for i loop
+                int zCount=zIn.readInt();
+                for (int i=0; i<zCount; i++) {
+                    String zPath=zIn.readUTF();
+                    String zZipEntry=(zIn.readBoolean()==true) ? zIn.readUTF() : null;
+                    long zModified=zIn.readLong();
+                    long zSize=zIn.readLong();
+                    String zMD5=zIn.readUTF();
+                    String zType=zIn.readUTF();
+                    String zFormat=zIn.readUTF();
+                    int zYStart=zIn.readShort();
+                    int zDisplayHeight=zIn.readShort();
+                    Entry zEntry=new Entry(zPath, zZipEntry, zModified, zSize, zMD5, zType,
+                            (zFormat.length()>0) ? DisplayFormat.valueOf(zFormat) : null, zYStart, zDisplayHeight);
+                    myEntries.put(zEntry.getKey(), zEntry);
+                }//end : for i loop
+            }//end : try
+            finally {
+                zIn.close();
+            }
+        }//end : try
+        catch (IOException e) {
+            System.out.println("JStella : could not read the ROM index (" + e.getMessage() + ")");
+            myEntries.clear();
+            myFiles.clear();
+        }
+        catch (IllegalArgumentException e) {
+            System.out.println("JStella : could not read the ROM index (" + e.getMessage() + ")"); //an unknown display format
+            myEntries.clear();
+            myFiles.clear();
+        }
+        rebuildMD5Map();
+    }
+
+    private void save() throws IOException {
+        JSFileReplacer.replace(myIndexFile, new JSFileReplacer.IfcContent() {
+            public void write(OutputStream aOut) throws IOException {
+                DataOutputStream zOut=new DataOutputStream(aOut);
+                zOut.writeInt(INDEX_MAGIC);
+                zOut.writeInt(INDEX_VERSION);
+                zOut.writeInt(myFiles.size());
+                for (Map.Entry<String, FileRecord> zFile : myFiles.entrySet()) {
+                    zOut.writeUTF(zFile.getKey());
+                    zOut.writeLong(zFile.getValue().myModified);
+                    zOut.writeLong(zFile.getValue().mySize);
+                }//end : for
+                zOut.writeInt(myEntries.size());
+                for (Entry zEntry : myEntries.values()) {
+                    zOut.writeUTF(zEntry.myPath);
+                    zOut.writeBoolean(zEntry.myZipEntry!=null);
+                    if (zEntry.myZipEntry!=null) zOut.writeUTF(zEntry.myZipEntry);
+                    zOut.writeLong(zEntry.myModified);
+                    zOut.writeLong(zEntry.mySize);
+                    zOut.writeUTF(zEntry.myMD5);
+                    zOut.writeUTF(zEntry.myType);
+                    zOut.writeUTF((zEntry.myDisplayFormat!=null) ? zEntry.myDisplayFormat.name() : "");
+                    zOut.writeShort(zEntry.myYStart);
+                    zOut.writeShort(zEntry.myDisplayHeight);
+                }//end : for
+                zOut.flush();
+            }
+        });
+    }
+
+
+//=============================================================================
+//========================== INNER CLASSES ====================================
+//=============================================================================
+
+    /**
+     * The modification time and size of a file, as of the scan that last read it.
+     */
+    private static class FileRecord {
+        private final long myModified;
+        private final long mySize;
+
+        public FileRecord(long aModified, long aSize) {
+            myModified=aModified;
+            mySize=aSize;
+        }
+
+        public boolean equals(Object aObject) {
+            if ((aObject instanceof FileRecord)==false) return false;
+            FileRecord zOther=(FileRecord)aObject;
+            return ((zOther.myModified==myModified)&&(zOther.mySize==mySize));
+        }
+
+        public int hashCode() { return (int)(myModified ^ (myModified >>> 32) ^ (mySize * 31)); }
+    }//END INNER CLASS
+
+    /**
+     * Indexes one file (every ROM in it, for a zip file).  Each thread of the scan keeps a
+     * headless console of its own for detecting the display settings.
+     */
+    private static class IndexTask implements Callable<List<Entry>> {
+        private final static ThreadLocal<JSConsole> ourConsoles=new ThreadLocal<JSConsole>();
+
+        private final File myFile;
+        private final FileRecord myRecord;
+        private final JSDisplayCache myDisplayCache;
+        private final boolean myDetectDisplay;
+
+        public IndexTask(File aFile, FileRecord aRecord, JSDisplayCache aDisplayCache, boolean aDetectDisplay) {
+            myFile=aFile;
+            myRecord=aRecord;
+            myDisplayCache=aDisplayCache;
+            myDetectDisplay=aDetectDisplay;
+        }
+
+        public List<Entry> call() throws IOException {
+            List<Entry> zReturn=new ArrayList<Entry>();
+            long zModified=myRecord.myModified; //as of when the scan found the file, so a change made while it is read is seen next time
+            long zSize=myRecord.mySize;
+            if (hasExtension(myFile.getName(), ZIP_EXTENSION)==false) {
+                zReturn.add(index(readFile(myFile), null, zModified, zSize));
+            }//end : a ROM
+            else {
+                ZipFile zZip=new ZipFile(myFile);
+                try {
+                    Enumeration<? extends ZipEntry> zZipEntries=zZip.entries();
+                    while (zZipEntries.hasMoreElements()) {
+                        ZipEntry zZipEntry=zZipEntries.nextElement();
+                        if ((zZipEntry.isDirectory()==true)||(isROMName(zZipEntry.getName())==false)) continue;
+                        zReturn.add(index(readZipEntry(zZip, zZipEntry), zZipEntry.getName(), zModified, zSize));
+                    }//end : while
+                }//end : try
+                finally {
+                    zZip.close();
+                }
+            }//end : a zip file
+            return zReturn;
+        }
+
+        private Entry index(byte[] aImage, String aZipEntry, long aModified, long aSize) {
+            String zMD5=Cartridge.calculateMD5(aImage);
+            String zType=Cartridge.detectType(aImage, zMD5);
+            DisplayFormat zFormat=null;
+            int zYStart=0;
+            int zDisplayHeight=0;
+
+            JSDisplayCache.Entry zCached=(myDisplayCache!=null) ? myDisplayCache.get(zMD5) : null;
+            if (zCached!=null) {
+                zFormat=zCached.myDisplayFormat;
+                zYStart=zCached.myYStart;
+                zDisplayHeight=zCached.myDisplayHeight;
+            }//end : detected before
+            else if (myDetectDisplay==true) {
+                try {
+                    JSConsole zConsole=ourConsoles.get();
+                    if (zConsole==null) {
+                        zConsole=new JSConsole(null, true);
+                        ourConsoles.set(zConsole);
+                    }//end : first ROM on this thread
+                    zConsole.insertCartridge(Cartridge.create(aImage, zType));
+                    zFormat=zConsole.getDisplayFormat();
+                    zYStart=zConsole.getYStart();
+                    zDisplayHeight=zConsole.getDisplayHeight();
+                }//end : try
+                catch (JSException e) {
+                    //e.g. a type that JStella can't play...leave the display settings unknown
+                }
+            }//end : detecting
+            return new Entry(myFile.getPath(), aZipEntry, aModified, aSize, zMD5, zType, zFormat, zYStart, zDisplayHeight);
+        }
+    }//END INNER CLASS
+
+}//CLASS END
@@ -0,0 +1,195 @@
+/*
+ * VectorEnvironment.java
+ *
+ * To change this template, choose Tools | Template Manager
+ * and open the template in the editor.
+ */
+
+package jstella.runner;
+
+import java.nio.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import jstella.core.*;
+
+/**
+ * A set of consoles that are stepped together (e.g. by a program that is learning to play),
+ * whose observations are all kept in a single direct ByteBuffer.  Code that reads the
+ * observations (in Java, or in a native library, through the buffer's address) can read
+ * all of them in place, instead of copying every console's frame buffer after every step.
+ * <p>
+ * The buffer is laid out as one slot per console, getSlotSize() bytes each, one after the other:
+ * </p>
+ * <ul>
+ * <li> the frame : one byte (palette index) per pixel, row after row, for getFrameSize(n) bytes
+ *      (the rest of the FRAME_BYTES bytes is left alone)
+ * <li> the RAM : the 128 bytes of the console's RIOT RAM
+ * </ul>
+ * <p>
+ * step(...) runs the consoles on a fixed set of threads (the calling thread being one of them),
+ * each taking the next console that hasn't been stepped yet until there are none left, and
+ * returns once every console has finished.  Nothing is allocated per step.  The buffer must
+ * not be read while step(...) is running.
+ * </p>
+ * @author J.L. Allen
+ */
+public class VectorEnvironment {
+
+    /** The bytes set aside for each console's frame (the largest frame the TIA can draw). */
+    public final static int FRAME_BYTES=JSFrameBuffer.FRAME_BUFFER_SIZE;
+    /** The bytes set aside for each console's RAM. */
+    public final static int RAM_BYTES=128;
+
+    private final JSConsole[] myConsoles;
+    private final ByteBuffer myBuffer;
+    private final int mySlotSize=FRAME_BYTES + RAM_BYTES;
+    private final ByteBuffer[] myRAMViews; //each console's RAM area of myBuffer, so it can be filled with one bulk put
+    private final long[] myFrameHashes;
+    private final Throwable[] myErrors;
+
+    private final Thread[] myWorkers;
+    private final Phaser myPhaser;
+    private final AtomicInteger myNextConsole=new AtomicInteger();
+    private volatile boolean myClosed=false;
+
+    // The step in progress (written before the phaser is advanced, so the workers see them)
+    private int[] myActions=null;
+    private int myFrames=0;
+
+
+    /**
+     * Creates a vector environment.
+     * @param aConsoles the consoles, each with a cartridge inserted (they shouldn't be run by anything else)
+     * @param aThreads the number of threads to step them on, counting the thread that calls step(...)
+     */
+    public VectorEnvironment(JSConsole[] aConsoles, int aThreads) {
+        myConsoles=aConsoles.clone();
+        myBuffer=ByteBuffer.allocateDirect(myConsoles.length * mySlotSize).order(ByteOrder.nativeOrder());
+        myRAMViews=new ByteBuffer[myConsoles.length];
+        for (int i=0; i<myConsoles.length; i++) {
+            ByteBuffer zView=myBuffer.duplicate();
+            zView.position(getRAMOffset(i)).limit(getRAMOffset(i) + RAM_BYTES);
+            myRAMViews[i]=zView.slice();
+        }//end : for i loop
+        myFrameHashes=new long[myConsoles.length];
+        myErrors=new Throwable[myConsoles.length];
+
+        int zWorkers=Math.max(0, Math.min(aThreads, myConsoles.length) - 1);
+        myPhaser=new Phaser(zWorkers + 1);
+        myWorkers=new Thread[zWorkers];
+        for (int i=0; i<zWorkers; i++) {
+            myWorkers[i]=new Thread(new Runnable() {
+                public void run() { runWorker(); }
+            }, "VectorEnvironment-" + i);
+            myWorkers[i].setDaemon(true);
+            myWorkers[i].start();
+        }//end : for i loop
+    }
+
+    public VectorEnvironment(JSConsole[] aConsoles) {
+        this(aConsoles, Runtime.getRuntime().availableProcessors());
+    }
+
+
+    /**
+     * Returns the buffer that holds the observations (see the class description for the layout).
+     * @return the (direct) buffer
+     */
+    public ByteBuffer getBuffer() { return myBuffer; }
+
+    public int getConsoleCount() { return myConsoles.length; }
+    public JSConsole getConsole(int aIndex) { return myConsoles[aIndex]; }
+
+    public int getSlotSize() { return mySlotSize; }
+    public int getFrameOffset(int aIndex) { return aIndex * mySlotSize; }
+    public int getRAMOffset(int aIndex) { return (aIndex * mySlotSize) + FRAME_BYTES; }
+    /**
+     * Returns the number of bytes of the given console's frame (its display width times its display height).
+     * @param aIndex the console's index
+     * @return the frame size
+     */
+    public int getFrameSize(int aIndex) { return myConsoles[aIndex].getFrameSize(); }
+
+    /**
+     * Returns the hash of the given console's frame after the last step (see JSConsole.hashFrame(...)).
+     * @param aIndex the console's index
+     * @return the hash
+     */
+    public long getFrameHash(int aIndex) { return myFrameHashes[aIndex]; }
+
+
+    /**
+     * Runs every console for the given number of frames, and then puts their observations
+     * in the buffer.
+     * @param aActions the input (see JSConsole.stepFrames(...)) for each console, held for all of the frames;
+     * null to leave the inputs as they are
+     * @param aFrames the number of frames to run each console for
+     * @throws jstella.core.JSException if a console throws one (after every console has finished)
+     * @throws java.lang.IllegalStateException if the environment has been closed
+     */
+    public synchronized void step(int[] aActions, int aFrames) throws JSException {
+        if (myClosed==true) throw new IllegalStateException("The vector environment has been closed");
+        myActions=aActions;
+        myFrames=aFrames;
+        myNextConsole.set(0);
+
+        myPhaser.arriveAndAwaitAdvance(); //start
+        stepConsoles();
+        myPhaser.arriveAndAwaitAdvance(); //finish
+
+        myActions=null;
+        for (int i=0; i<myErrors.length; i++) {
+            Throwable zError=myErrors[i];
+            if (zError!=null) {
+                myErrors[i]=null;
+                if (zError instanceof JSException) throw (JSException)zError;
+                else if (zError instanceof RuntimeException) throw (RuntimeException)zError;
+                else throw (Error)zError;
+            }//end : console failed
+        }//end : for i loop
+    }
+
+    /**
+     * Stops the worker threads.  The environment can't be stepped after this is called.
+     */
+    public void close() {
+        myClosed=true;
+        myPhaser.forceTermination();
+    }
+
+    private void runWorker() {
+        while (true) {
+            if (myPhaser.arriveAndAwaitAdvance() < 0) break; //start (terminated)
+            stepConsoles();
+            if (myPhaser.arriveAndAwaitAdvance() < 0) break; //finish (terminated)
+        }//end : while
+    }
+
+    private void stepConsoles() {
+        int zIndex;
+        while ((zIndex=myNextConsole.getAndIncrement()) < myConsoles.length) {
+            try {
+                stepConsole(zIndex);
+            }//end : try
+            catch (Throwable e) {
+                myErrors[zIndex]=e;
+            }
+        }//end : while
+    }
+
+    private void stepConsole(int aIndex) throws JSException {
+        JSConsole zConsole=myConsoles[aIndex];
+        if (myActions!=null) zConsole.applyInput(myActions[aIndex]);
+        myFrameHashes[aIndex]=zConsole.stepFrames(myFrames, null, null, null);
+
+        int zBase=aIndex * mySlotSize;
+        int[] zFrame=zConsole.getVideo().getCurrentFrameBuffer();
+        int zFrameSize=zConsole.getFrameSize();
+        for (int i=0; i<zFrameSize; i++) {  myBuffer.put(zBase + i, (byte)zFrame[i]);  }
+
+        ByteBuffer zRAMView=myRAMViews[aIndex];
+        zRAMView.clear();
+        zConsole.getRiot().copyRAM(zRAMView);
+    }
+
+}//CLASS END